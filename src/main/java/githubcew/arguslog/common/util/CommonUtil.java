@@ -103,6 +103,40 @@ public class CommonUtil {
         pw.flush();
         return sw.toString();
     }
-}
-
 
+    /**
+     * 解析时长
+     * 支持后缀 ms、s、m、h，不带后缀按秒处理，如 500ms、10s、1m
+     *
+     * @param duration 时长字符串
+     * @return 毫秒数
+     */
+    public static long parseDuration(String duration) {
+        if (duration == null || duration.trim().isEmpty()) {
+            throw new IllegalArgumentException("时长不能为空");
+        }
+        String value = duration.trim().toLowerCase();
+        long unit = 1000L;
+        if (value.endsWith("ms")) {
+            unit = 1L;
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = 60 * 1000L;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("h")) {
+            unit = 60 * 60 * 1000L;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            long amount = Long.parseLong(value.trim());
+            if (amount <= 0) {
+                throw new IllegalArgumentException("时长必须大于0: " + duration);
+            }
+            return amount * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的时长: " + duration);
+        }
+    }
+}
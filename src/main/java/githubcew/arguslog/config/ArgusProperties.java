@@ -84,6 +84,42 @@ public class ArgusProperties {
     @ArgusProperty(description = "调用链处理线程数", modifyInRunning = true)
     private int traceMaxThreadNum = 5;
 
+    // 调用链最大并发会话数
+    @ArgusProperty(description = "调用链最大并发会话数，小于1不限制", modifyInRunning = true)
+    private int traceMaxSessions = 200;
+
+    // 单次请求调用树最大节点数
+    @ArgusProperty(description = "单次请求调用树最大节点数，超过后不再记录新节点，小于1不限制", modifyInRunning = true)
+    private int traceMaxNodes = 10000;
+
+    // 聚合调用链最大节点数
+    @ArgusProperty(description = "聚合调用链最大节点数", modifyInRunning = true)
+    private int traceAggregateMaxNodes = 2000;
+
+    // 调用链分析类缓存数量
+    @ArgusProperty(description = "调用链分析类缓存数量", modifyInRunning = true)
+    private int traceClassCacheSize = 2048;
+
+    // 调用链分析结果磁盘缓存数量
+    @ArgusProperty(description = "调用链分析结果磁盘缓存数量，小于1不缓存", modifyInRunning = true)
+    private int tracePlanCacheSize = 256;
+
+    // 调用链分析结果磁盘缓存目录
+    @ArgusProperty(description = "调用链分析结果磁盘缓存目录，为空时使用 {java.io.tmpdir}/argus/trace-plan", modifyInRunning = true)
+    private String tracePlanCacheDir = "";
+
+    // sql监控输出的完整sql最大长度
+    @ArgusProperty(description = "sql监控输出的完整sql最大长度，超过后截断，小于1不限制", modifyInRunning = true)
+    private int sqlMaxLength = 20000;
+
+    // sql统计每分钟最大指纹数量
+    @ArgusProperty(description = "sql统计每分钟最大指纹数量，超过后新的sql不再统计，下次开启统计时生效", modifyInRunning = true)
+    private int sqlStatsMaxFingerprints = 1000;
+
+    // 单次请求同一sql执行次数超过该值时提示N+1查询
+    @ArgusProperty(description = "单次请求同一sql执行次数超过该值时提示N+1查询", modifyInRunning = true)
+    private int sqlNPlusOneThreshold = 10;
+
     // jdk包装排除类集合
     @ArgusProperty(description = "jdk包装排除类集合")
     private Set<String> jdkPoxyWrapExcludeClasses;
@@ -29,6 +29,13 @@ public class ArgusCache {
      */
     private static final Map<String, ArgusMethod> uriMethodCache = new ConcurrentHashMap<>(256);
 
+    /**
+     * 接口方法索引（按调用栈帧查找接口方法）
+     * key: 类名
+     * value: 方法名 -> 方法
+     */
+    private static final Map<String, Map<String, Method>> webMethodIndex = new ConcurrentHashMap<>(64);
+
     /**
      * mq方法缓存
      * key: 方法信息
@@ -71,6 +78,16 @@ public class ArgusCache {
      */
     private static final Map<String, MonitorInfo.Sql> userSqlMonitorMethods = new ConcurrentHashMap<>(16);
 
+    /**
+     * 是否有用户监听sql，无人监听时sql拦截直接放行
+     */
+    private static volatile boolean sqlMonitored;
+
+    /**
+     * 所有sql监听用户中最小的耗时阈值（ms），低于该值的sql无需提交推送
+     */
+    private static volatile long minSqlThreshold;
+
     /**
      * 用户mq方法列表
      * key: 用户token
@@ -100,6 +117,31 @@ public class ArgusCache {
      */
     public static void addUriMethod(String uri, ArgusMethod method) {
         uriMethodCache.put(uri, method);
+        if (method != null && method.getMethod() != null) {
+            webMethodIndex.computeIfAbsent(method.getMethod().getDeclaringClass().getName(), k -> new ConcurrentHashMap<>(8))
+                    .putIfAbsent(method.getMethod().getName(), method.getMethod());
+        }
+    }
+
+    /**
+     * 根据调用栈帧的类名和方法名获取接口方法
+     *
+     * @param className  类名
+     * @param methodName 方法名
+     * @return 接口方法，不存在返回null
+     */
+    public static Method getWebMethod(String className, String methodName) {
+        Map<String, Method> methods = webMethodIndex.get(className);
+        return methods == null ? null : methods.get(methodName);
+    }
+
+    /**
+     * 是否有接口方法
+     *
+     * @return 结果
+     */
+    public static boolean hasWebMethod() {
+        return !webMethodIndex.isEmpty();
     }
 
     /**
@@ -536,6 +578,21 @@ public class ArgusCache {
         return userTokens.containsKey(token);
     }
 
+    /**
+     * token 是否存在且未过期（不依赖过期 token 的定时清理）
+     *
+     * @param token token
+     * @return 结果
+     */
+    public static boolean hasValidToken(String token) {
+        if (Objects.isNull(token) || token.isEmpty()) {
+            return false;
+        }
+        ArgusUser user = userTokens.get(token);
+        return user != null && user.getToken() != null
+                && user.getToken().getExpireTime() > System.currentTimeMillis();
+    }
+
     /**
      * 移除用户token
      *
@@ -590,6 +647,7 @@ public class ArgusCache {
 
                 // 移除用户sql
                 userSqlMonitorMethods.remove(token);
+                refreshSqlMonitored();
 
                 // 移除用户mq监听
                 userMqMonitorMethods.remove(token);
@@ -622,6 +680,7 @@ public class ArgusCache {
 
                 // 移除用户sql
                 userSqlMonitorMethods.remove(token);
+                refreshSqlMonitored();
 
                 // 移除用户mq监听
                 userMqMonitorMethods.remove(token);
@@ -646,10 +705,24 @@ public class ArgusCache {
                 .stream()
                 .filter(monitor -> monitor.getArgusMethod().getMethod().equals(monitorInfo.getArgusMethod().getMethod()))
                 .findFirst();
-        first.ifPresent(info -> userTraceMethods.get(user).remove(info));
+        first.ifPresent(info -> {
+            userTraceMethods.get(user).remove(info);
+            cancelProgressive(info);
+        });
         userTraceMethods.get(user).add(monitorInfo);
     }
 
+    /**
+     * 取消追踪信息的渐进式展开
+     *
+     * @param monitorInfo 监测信息
+     */
+    private static void cancelProgressive(MonitorInfo monitorInfo) {
+        if (monitorInfo.getTrace() != null && monitorInfo.getTrace().getProgressive() != null) {
+            monitorInfo.getTrace().getProgressive().cancel();
+        }
+    }
+
     /**
      * 获取追踪用户数量
      *
@@ -692,6 +765,22 @@ public class ArgusCache {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 获取开始方法的最小记录耗时，多个用户追踪同一方法时取最小值
+     *
+     * @param method 开始方法
+     * @return 最小记录耗时（ms），0表示全部记录
+     */
+    public static long getTraceMinTime(Method method) {
+        return userTraceMethods.values()
+                .stream()
+                .flatMap(List::stream)
+                .filter(monitor -> monitor.getArgusMethod().getMethod().equals(method))
+                .mapToLong(monitor -> monitor.getTrace().getMinTime())
+                .min()
+                .orElse(0);
+    }
+
     /**
      * 根据用户和URI获取追踪监测信息
      *
@@ -762,7 +851,13 @@ public class ArgusCache {
 
         // 移除用户监听的方法
         userTraceMethods.get(argusUser)
-                .removeIf(monitor -> monitor.getArgusMethod().getMethod().equals(argusMethod.getMethod()));
+                .removeIf(monitor -> {
+                    if (monitor.getArgusMethod().getMethod().equals(argusMethod.getMethod())) {
+                        cancelProgressive(monitor);
+                        return true;
+                    }
+                    return false;
+                });
 
         // 用户监听方法为空，则移除用户
         if (userTraceMethods.get(argusUser).isEmpty()) {
@@ -779,6 +874,7 @@ public class ArgusCache {
         if (userTraceMethods.isEmpty() || !userTraceMethods.containsKey(argusUser)) {
             return;
         }
+        userTraceMethods.get(argusUser).forEach(ArgusCache::cancelProgressive);
         userTraceMethods.get(argusUser).clear();
     }
 
@@ -806,6 +902,7 @@ public class ArgusCache {
      */
     public static void addUserSqlMonitor(String token, MonitorInfo.Sql SqlMonitor) {
         userSqlMonitorMethods.put(token, SqlMonitor);
+        refreshSqlMonitored();
     }
 
     /**
@@ -817,6 +914,38 @@ public class ArgusCache {
             return;
         }
         userSqlMonitorMethods.remove(token);
+        refreshSqlMonitored();
+    }
+
+    /**
+     * 是否有用户监听SQL
+     * @return 结果
+     */
+    public static boolean hasSqlMonitor() {
+        return sqlMonitored;
+    }
+
+    /**
+     * 获取所有sql监听用户中最小的耗时阈值
+     * @return 阈值（ms）
+     */
+    public static long getMinSqlThreshold() {
+        return minSqlThreshold;
+    }
+
+    /**
+     * 按当前监听用户刷新sql监听标志和最小阈值（加锁保证并发增删后标志与最终状态一致）
+     */
+    private static void refreshSqlMonitored() {
+        synchronized (userSqlMonitorMethods) {
+            long min = Long.MAX_VALUE;
+            for (MonitorInfo.Sql sql : userSqlMonitorMethods.values()) {
+                long threshold = sql.getThreshold() == null ? 0 : sql.getThreshold();
+                min = Math.min(min, threshold);
+            }
+            minSqlThreshold = userSqlMonitorMethods.isEmpty() ? 0 : min;
+            sqlMonitored = !userSqlMonitorMethods.isEmpty();
+        }
     }
 
     /**
@@ -12,6 +12,7 @@ import githubcew.arguslog.core.cmd.mq.MqCmd;
 import githubcew.arguslog.core.cmd.spring.IocCmd;
 import githubcew.arguslog.core.cmd.sql.SqlCmd;
 import githubcew.arguslog.core.cmd.system.*;
+import githubcew.arguslog.core.cmd.trace.ProfileCmd;
 import githubcew.arguslog.core.cmd.trace.RevertCmd;
 import githubcew.arguslog.core.cmd.trace.TraceCmd;
 import org.springframework.core.annotation.Order;
@@ -62,6 +63,7 @@ public class ArgusCommandRegistry implements ArgusConfigurer {
         // 调用链命令
         this.commandManager.register(TraceCmd.class);
         this.commandManager.register(RevertCmd.class);
+        this.commandManager.register(ProfileCmd.class);
 
         // 代码相关命令
         this.commandManager.register(JadCmd.class);
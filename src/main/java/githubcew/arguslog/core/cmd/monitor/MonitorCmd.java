@@ -55,7 +55,7 @@ public class MonitorCmd extends BaseCommand {
 
 
     @CommandLine.Parameters(
-            description = "监听接口目标参数， 可选：param,methodParam,result,time,header,ip,url,api,type,method",
+            description = "监听接口目标参数， 可选：param,methodParam,result,time,header,ip,url,api,type,method,sql",
             index = "1",
             arity = "0..*",
             paramLabel = "targets"
@@ -64,7 +64,7 @@ public class MonitorCmd extends BaseCommand {
 
 
     private final Set<String> MONITOR_TARGETS = new HashSet<>(Arrays.asList(
-            "header", "ip", "param", "methodParam", "result", "time", "url", "api", "method", "type"));
+            "header", "ip", "param", "methodParam", "result", "time", "url", "api", "method", "type", "sql"));
 
     /**
      * 执行逻辑
@@ -211,6 +211,7 @@ public class MonitorCmd extends BaseCommand {
         monitorInfo.setMethodParam(false);
         monitorInfo.setResult(true);
         monitorInfo.setTime(true);
+        monitorInfo.setSql(true);
     }
 
     /**
@@ -239,6 +240,7 @@ public class MonitorCmd extends BaseCommand {
         monitorInfo.setTime(true);
         monitorInfo.setType(true);
         monitorInfo.setMethod(true);
+        monitorInfo.setSql(true);
     }
 
     /**
@@ -265,6 +267,7 @@ public class MonitorCmd extends BaseCommand {
         monitorInfo.setApi(targetSet.contains("api"));
         monitorInfo.setType(targetSet.contains("type"));
         monitorInfo.setMethod(targetSet.contains("method"));
+        monitorInfo.setSql(targetSet.contains("sql"));
     }
 
 
@@ -1,11 +1,21 @@
 package githubcew.arguslog.core.cmd.sql;
 
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
+import githubcew.arguslog.core.ArgusManager;
 import githubcew.arguslog.core.cache.ArgusCache;
 import githubcew.arguslog.core.cmd.BaseCommand;
+import githubcew.arguslog.monitor.LatencyHistogram;
 import githubcew.arguslog.monitor.MonitorInfo;
+import githubcew.arguslog.monitor.sql.ConnectionPoolRegistry;
+import githubcew.arguslog.monitor.sql.SqlStatsRegistry;
 import githubcew.arguslog.web.ArgusUserContext;
 import picocli.CommandLine;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -21,6 +31,31 @@ import java.util.List;
 )
 public class SqlCmd extends BaseCommand {
 
+    /**
+     * 排行中sql指纹最大输出长度
+     */
+    private static final int MAX_FINGERPRINT_LENGTH = 300;
+
+    /**
+     * 排行中每条sql最多输出的dao方法数
+     */
+    private static final int MAX_DAO_METHODS = 5;
+
+    /**
+     * 连接池统计输出的调用方数量
+     */
+    private static final int MAX_POOL_CALLERS = 10;
+
+    /**
+     * 未归还连接最多输出的数量
+     */
+    private static final int MAX_ACTIVE_CONNECTIONS = 20;
+
+    /**
+     * 未归还连接调用栈最多输出的行数
+     */
+    private static final int MAX_STACK_DEPTH = 10;
+
     @CommandLine.Option(
             names = {"-t", "--threshold"},
             description = "sql 输出耗时阈值（ms）"
@@ -57,9 +92,63 @@ public class SqlCmd extends BaseCommand {
     )
     private List<String> methodNames;
 
+    @CommandLine.Option(
+            names = {"--top"},
+            description = "按sql指纹统计并输出排行前N条，首次执行时开启统计",
+            arity = "1",
+            paramLabel = "N"
+    )
+    private Integer top;
+
+    @CommandLine.Option(
+            names = {"--by"},
+            description = "排行排序方式：total(总耗时，默认) avg p99 max count errors rows fetch(结果集读取耗时)",
+            arity = "1",
+            paramLabel = "order"
+    )
+    private String order = "total";
+
+    @CommandLine.Option(
+            names = {"--window"},
+            description = "排行统计窗口，如 5m，默认 5m，最长 10m",
+            arity = "1",
+            paramLabel = "window"
+    )
+    private String window = "5m";
+
+    @CommandLine.Option(
+            names = {"--reset"},
+            description = "停止sql统计和连接池统计并清空统计数据",
+            arity = "0",
+            fallbackValue = "true"
+    )
+    private boolean reset;
+
+    @CommandLine.Option(
+            names = {"--pool"},
+            description = "输出连接池统计（获取等待、持有耗时，持有最久和未归还的连接），首次执行时开启统计",
+            arity = "0",
+            fallbackValue = "true"
+    )
+    private boolean pool;
+
     @Override
     protected Integer execute() throws Exception {
 
+        if (reset) {
+            SqlStatsRegistry.stop();
+            ConnectionPoolRegistry.stop();
+            return OK_CODE;
+        }
+        if (pool) {
+            showPool();
+            return OK_CODE;
+        }
+        if (top != null) {
+            showTop();
+            return OK_CODE;
+        }
+
         if (clear) {
             removeSqlMonitor();
         } else {
@@ -78,4 +167,177 @@ public class SqlCmd extends BaseCommand {
     private void removeSqlMonitor () {
         ArgusCache.removeUserSqlMonitor(ArgusUserContext.getCurrentUserToken());
     }
+
+    /**
+     * 输出sql统计排行
+     */
+    private void showTop () {
+        if (top < 1) {
+            throw new RuntimeException("--top 必须大于0");
+        }
+        if (!SqlStatsRegistry.ORDERS.contains(order)) {
+            throw new RuntimeException("不支持的排序方式： " + order);
+        }
+        long windowMs;
+        try {
+            windowMs = CommonUtil.parseDuration(window);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        if (windowMs > SqlStatsRegistry.SLOT_MS * SqlStatsRegistry.SLOT_COUNT) {
+            throw new RuntimeException("统计窗口不能超过 10m");
+        }
+
+        if (!SqlStatsRegistry.isRecording()) {
+            ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+            SqlStatsRegistry.start(argusProperties.getSqlStatsMaxFingerprints());
+            picocliOutput.out("sql统计已开启，执行 sql --reset 停止");
+            return;
+        }
+
+        List<SqlStatsRegistry.Summary> summaries = SqlStatsRegistry.top(top, order, windowMs);
+        StringBuilder sb = new StringBuilder();
+        sb.append("SQL TOP ").append(top).append(" by ").append(order)
+                .append(" (window ").append(window).append(")\n");
+        sb.append(String.format("%-4s%-10s%-12s%-10s%-10s%-10s%-8s%-10s%-10s%n",
+                "#", "count", "total(ms)", "avg(ms)", "p99(ms)", "max(ms)", "errors", "rows", "fetch(ms)"));
+        int rank = 0;
+        for (SqlStatsRegistry.Summary summary : summaries) {
+            sb.append(String.format("%-4d%-10d%-12.1f%-10.1f%-10.1f%-10.1f%-8d%-10d%-10.1f%n",
+                    ++rank, summary.getCount(), summary.getTotalTime(), summary.getAvgTime(),
+                    summary.getP99Time(), summary.getMaxTime(), summary.getErrors(), summary.getRows(),
+                    summary.getFetchTime()));
+            sb.append("    ").append(abbreviate(summary.getFingerprint(), MAX_FINGERPRINT_LENGTH)).append("\n");
+            if (!summary.getDaoMethods().isEmpty()) {
+                sb.append("    dao => ");
+                Iterator<String> iterator = summary.getDaoMethods().iterator();
+                for (int i = 0; i < MAX_DAO_METHODS && iterator.hasNext(); i++) {
+                    sb.append(i == 0 ? "" : ", ").append(iterator.next());
+                }
+                sb.append("\n");
+            }
+        }
+        if (summaries.isEmpty()) {
+            sb.append("暂无sql统计数据\n");
+        }
+        long dropped = SqlStatsRegistry.droppedCount();
+        if (dropped > 0) {
+            sb.append("dropped ").append(dropped).append(" (超过指纹数量上限未统计)\n");
+        }
+        long discarded = ContextUtil.getBean(ArgusManager.class).getMonitorSender().getDiscardedCount();
+        if (discarded > 0) {
+            sb.append("discarded ").append(discarded).append(" (推送队列已满未推送)\n");
+        }
+        picocliOutput.out(sb.toString());
+    }
+
+    /**
+     * 输出连接池统计
+     */
+    private void showPool () {
+        if (!ConnectionPoolRegistry.isRecording()) {
+            ConnectionPoolRegistry.start();
+            picocliOutput.out("连接池统计已开启，执行 sql --reset 停止");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("POOL (since ")
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(ConnectionPoolRegistry.getStartTime())))
+                .append(")\n");
+        sb.append(String.format("%-8s%-10s%-12s%-10s%-10s%-10s%n",
+                "", "count", "total(ms)", "avg(ms)", "p99(ms)", "max(ms)"));
+        appendHistogram(sb, "wait", ConnectionPoolRegistry.getWaitHistogram());
+        appendHistogram(sb, "hold", ConnectionPoolRegistry.getHoldHistogram());
+        List<ConnectionPoolRegistry.Lease> active = ConnectionPoolRegistry.getActive();
+        sb.append("active => ").append(active.size())
+                .append(", failed => ").append(ConnectionPoolRegistry.getFailedCount()).append("\n");
+
+        sb.append("\ncallers:\n");
+        sb.append(String.format("%-10s%-14s%-14s%-14s%-14s%-8s%s%n",
+                "count", "wait avg(ms)", "wait max(ms)", "hold avg(ms)", "hold max(ms)", "failed", "caller"));
+        for (ConnectionPoolRegistry.CallerStat stat : ConnectionPoolRegistry.getCallers(MAX_POOL_CALLERS)) {
+            sb.append(String.format("%-10d%-14.1f%-14d%-14.1f%-14d%-8d%s%n",
+                    stat.getWait().getCount(), stat.getWait().getAvg(), stat.getWait().getMax(),
+                    stat.getHold().getAvg(), stat.getHold().getMax(), stat.getFailed(), stat.getCaller()));
+        }
+
+        sb.append("\nlongest held:\n");
+        for (ConnectionPoolRegistry.Lease lease : ConnectionPoolRegistry.getLongestHeld()) {
+            appendLease(sb, lease);
+        }
+
+        sb.append("\nactive connections:\n");
+        for (int i = 0; i < active.size() && i < MAX_ACTIVE_CONNECTIONS; i++) {
+            ConnectionPoolRegistry.Lease lease = active.get(i);
+            appendLease(sb, lease);
+            int depth = 0;
+            for (StackTraceElement element : lease.getStack()) {
+                if (depth >= MAX_STACK_DEPTH) {
+                    break;
+                }
+                if (isInternalFrame(element.getClassName())) {
+                    continue;
+                }
+                sb.append("        at ").append(element).append("\n");
+                depth++;
+            }
+        }
+        if (active.size() > MAX_ACTIVE_CONNECTIONS) {
+            sb.append("    ... ").append(active.size() - MAX_ACTIVE_CONNECTIONS).append(" more\n");
+        }
+        picocliOutput.out(sb.toString());
+    }
+
+    /**
+     * 追加耗时直方图统计
+     *
+     * @param sb        输出
+     * @param name      名称
+     * @param histogram 直方图
+     */
+    private static void appendHistogram (StringBuilder sb, String name, LatencyHistogram histogram) {
+        sb.append(String.format("%-8s%-10d%-12d%-10.1f%-10d%-10d%n",
+                name, histogram.getCount(), histogram.getTotal(), histogram.getAvg(),
+                histogram.percentile(0.99), histogram.getMax()));
+    }
+
+    /**
+     * 追加连接信息
+     *
+     * @param sb    输出
+     * @param lease 连接
+     */
+    private static void appendLease (StringBuilder sb, ConnectionPoolRegistry.Lease lease) {
+        sb.append("    hold ").append(lease.getHoldTime()).append("ms")
+                .append(" wait ").append(lease.getWaitTime()).append("ms")
+                .append(" [").append(lease.getThreadName()).append("] ")
+                .append(lease.getCaller()).append("\n");
+    }
+
+    /**
+     * 是否为 Argus 和代理的调用栈
+     *
+     * @param className 类名
+     * @return 结果
+     */
+    private static boolean isInternalFrame (String className) {
+        return className.startsWith("githubcew.arguslog.")
+                || className.startsWith("com.sun.proxy.")
+                || className.startsWith("jdk.proxy")
+                || className.startsWith("java.lang.reflect.")
+                || className.startsWith("sun.reflect.")
+                || className.startsWith("jdk.internal.reflect.");
+    }
+
+    /**
+     * 截断过长的文本
+     *
+     * @param text 文本
+     * @param max  最大长度
+     * @return 截断后的文本
+     */
+    private static String abbreviate (String text, int max) {
+        return text.length() > max ? text.substring(0, max) + "..." : text;
+    }
 }
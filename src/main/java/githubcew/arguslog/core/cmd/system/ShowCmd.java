@@ -7,6 +7,10 @@ import githubcew.arguslog.core.anno.ArgusProperty;
 import githubcew.arguslog.core.cache.ArgusCache;
 import githubcew.arguslog.core.cmd.BaseCommand;
 import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.trace.TraceEnhanceManager;
+import githubcew.arguslog.monitor.trace.asm.TracePlanCache;
+import githubcew.arguslog.monitor.trace.buddy.TraceSwitch;
+import githubcew.arguslog.web.TraceSession;
 import picocli.CommandLine;
 
 import java.lang.reflect.Field;
@@ -30,7 +34,7 @@ public class ShowCmd extends BaseCommand {
 
     @CommandLine.Parameters(
             index = "0",
-            description = "变量名，配置信息：config",
+            description = "变量名，配置信息：config，调用链会话：trace",
             arity = "0..1",
             defaultValue = "config",
             paramLabel = "config"
@@ -45,6 +49,10 @@ public class ShowCmd extends BaseCommand {
         if (variable.equals("config")) {
             picocliOutput.out(String.join("\n", getConfig()));
         }
+        // 调用链会话
+        else if (variable.equals("trace")) {
+            picocliOutput.out(String.join("\n", getTraceSessionInfo()));
+        }
         else {
             throw new RuntimeException("不支持的操作类型： " + variable);
         }
@@ -116,6 +124,29 @@ public class ShowCmd extends BaseCommand {
     }
 
 
+    /**
+     * 获取调用链会话统计信息
+     *
+     * @return 统计信息列表
+     */
+    private List<String> getTraceSessionInfo() {
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        int maxSessions = argusProperties.getTraceMaxSessions();
+        List<String> lines = new ArrayList<>();
+        lines.add(padRight("active", 12) + TraceSession.activeCount());
+        lines.add(padRight("peak", 12) + TraceSession.peakCount());
+        lines.add(padRight("opened", 12) + TraceSession.openedCount());
+        lines.add(padRight("rejected", 12) + TraceSession.rejectedCount());
+        lines.add(padRight("limit", 12) + (maxSessions > 0 ? String.valueOf(maxSessions) : "unlimited"));
+        lines.add(padRight("dropped", 12) + TraceSession.droppedCount());
+        lines.add(padRight("pruned", 12) + TraceSession.prunedCount());
+        lines.add(padRight("woven", 12) + TraceEnhanceManager.wovenClassCount());
+        lines.add(padRight("switchOn", 12) + TraceSwitch.onCount());
+        lines.add(padRight("planHit", 12) + TracePlanCache.hitCount());
+        lines.add(padRight("planMiss", 12) + TracePlanCache.missCount());
+        return lines;
+    }
+
     /**
      * 将字段信息格式化为支持换行的多行文本
      * 处理长文本的自动换行，并保持表格格式对齐
@@ -0,0 +1,126 @@
+package githubcew.arguslog.core.cmd.trace;
+
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.core.cmd.BaseCommand;
+import githubcew.arguslog.monitor.ArgusMethod;
+import githubcew.arguslog.monitor.profile.ProfileManager;
+import githubcew.arguslog.monitor.profile.ProfileSession;
+import githubcew.arguslog.web.ArgusUserContext;
+import picocli.CommandLine;
+
+import java.util.Objects;
+
+/**
+ * 接口采样分析
+ * <div>
+ *   按间隔采样处理指定接口请求的线程栈，结束后输出热点方法和热点方法树，不增强字节码。
+ * </div>
+ *
+ * @author chenenwei
+ */
+@CommandLine.Command(
+        name = "profile",
+        description = "采样分析接口热点方法（不增强字节码）",
+        mixinStandardHelpOptions = true,
+        version = "1.0")
+public class ProfileCmd extends BaseCommand {
+
+    /**
+     * 默认采样时长
+     */
+    private static final String DEFAULT_DURATION = "30s";
+
+    /**
+     * 默认采样间隔
+     */
+    private static final String DEFAULT_INTERVAL = "10ms";
+
+    /**
+     * 最长采样时长（ms）
+     */
+    private static final long MAX_DURATION = 10 * 60 * 1000L;
+
+    @CommandLine.Parameters(
+            index = "0",
+            description = "接口路径",
+            arity = "0..1",
+            paramLabel = "path"
+    )
+    private String path;
+
+    @CommandLine.Option(
+            names = {"-d", "--duration"},
+            description = "采样时长，如 30s，默认 30s，最长 10m",
+            arity = "1",
+            paramLabel = "duration"
+    )
+    private String duration = DEFAULT_DURATION;
+
+    @CommandLine.Option(
+            names = {"-i", "--interval"},
+            description = "采样间隔，如 10ms，默认 10ms",
+            arity = "1",
+            paramLabel = "interval"
+    )
+    private String interval = DEFAULT_INTERVAL;
+
+    @CommandLine.Option(
+            names = {"-full"},
+            description = "显示全限定类名",
+            arity = "0",
+            fallbackValue = "true"
+    )
+    private boolean showFullClassName;
+
+    @CommandLine.Option(
+            names = {"-s", "--stop"},
+            description = "提前结束采样并输出结果",
+            arity = "0",
+            fallbackValue = "true"
+    )
+    private boolean stop;
+
+    /**
+     * 执行逻辑
+     * @return 状态码
+     * @throws Exception 异常
+     */
+    @Override
+    protected Integer execute() throws Exception {
+        String token = ArgusUserContext.getCurrentUserToken();
+        if (stop) {
+            if (!ProfileManager.stop(token)) {
+                throw new RuntimeException("没有正在进行的采样");
+            }
+            return OK_CODE;
+        }
+
+        if (Objects.isNull(path)) {
+            throw new RuntimeException(ERROR_PATH_EMPTY);
+        }
+        ArgusMethod method = ArgusCache.getUriMethod(path);
+        if (Objects.isNull(method)) {
+            throw new RuntimeException(ERROR_PATH_NOT_FOUND);
+        }
+
+        long durationMs;
+        long intervalMs;
+        try {
+            durationMs = CommonUtil.parseDuration(duration);
+            intervalMs = CommonUtil.parseDuration(interval);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        if (durationMs > MAX_DURATION) {
+            throw new RuntimeException("采样时长不能超过 10m");
+        }
+        if (intervalMs >= durationMs) {
+            throw new RuntimeException("采样间隔必须小于采样时长");
+        }
+
+        ProfileManager.start(new ProfileSession(token, path, method.getMethod(), intervalMs, durationMs, showFullClassName));
+        picocliOutput.out("profiling " + path + " for " + durationMs + "ms, interval " + intervalMs + "ms");
+        return OK_CODE;
+    }
+}
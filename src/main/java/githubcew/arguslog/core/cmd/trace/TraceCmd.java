@@ -1,5 +1,6 @@
 package githubcew.arguslog.core.cmd.trace;
 
+import githubcew.arguslog.common.util.CommonUtil;
 import githubcew.arguslog.common.util.ContextUtil;
 import githubcew.arguslog.config.ArgusProperties;
 import githubcew.arguslog.core.cache.ArgusCache;
@@ -8,15 +9,16 @@ import githubcew.arguslog.core.cmd.ColorWrapper;
 import githubcew.arguslog.monitor.ArgusMethod;
 import githubcew.arguslog.monitor.MonitorInfo;
 import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.trace.ProgressiveTrace;
 import githubcew.arguslog.monitor.trace.TraceEnhanceManager;
+import githubcew.arguslog.monitor.trace.TraceLineIndex;
 import githubcew.arguslog.monitor.trace.asm.AsmMethodCallExtractor;
 import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
 import githubcew.arguslog.web.ArgusUserContext;
 import picocli.CommandLine;
 
 import java.util.*;
-import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author chenenwei
@@ -29,6 +31,11 @@ import java.util.stream.Collectors;
         version = "1.0")
 public class TraceCmd extends BaseCommand {
 
+    /**
+     * --top 未指定窗口时的默认窗口（ms）
+     */
+    private static final long DEFAULT_TOP_WINDOW = 60 * 1000L;
+
     @CommandLine.Parameters(
             index = "0",
             description = "接口路径",
@@ -85,6 +92,46 @@ public class TraceCmd extends BaseCommand {
     )
     private boolean showFullClassName;
 
+    @CommandLine.Option(
+            names = {"--aggregate"},
+            description = "聚合窗口，如 10s，窗口内的请求合并为一棵统计调用树输出，不能与 --slow、--top 同时使用",
+            arity = "1",
+            paramLabel = "window"
+    )
+    private String aggregate;
+
+    @CommandLine.Option(
+            names = {"--progressive"},
+            description = "渐进式追踪，先增强入口方法的直接调用，耗时超过阈值的方法在执行后再逐层增强",
+            arity = "0",
+            fallbackValue = "true"
+    )
+    private boolean progressive;
+
+    @CommandLine.Option(
+            names = {"--min-time"},
+            description = "丢弃耗时低于该值的子调用（连续相同调用按合并后的总耗时），如 5ms，耗时计入父方法",
+            arity = "1",
+            paramLabel = "time"
+    )
+    private String minTime;
+
+    @CommandLine.Option(
+            names = {"--slow"},
+            description = "只输出耗时不低于该值的请求，如 300ms",
+            arity = "1",
+            paramLabel = "time"
+    )
+    private String slow;
+
+    @CommandLine.Option(
+            names = {"--top"},
+            description = "每个窗口输出耗时最大的 K 个请求，如 5/1m",
+            arity = "1",
+            paramLabel = "K/window"
+    )
+    private String top;
+
     /**
      * 执行逻辑
      * @return 状态码
@@ -135,6 +182,57 @@ public class TraceCmd extends BaseCommand {
             throw new RuntimeException(ERROR_PATH_NOT_FOUND);
         }
 
+        // 聚合窗口
+        long aggregateWindow = 0;
+        if (!Objects.isNull(aggregate)) {
+            try {
+                aggregateWindow = CommonUtil.parseDuration(aggregate);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+
+        // 最小记录耗时
+        long minRecordTime = 0;
+        if (!Objects.isNull(minTime)) {
+            try {
+                minRecordTime = CommonUtil.parseDuration(minTime);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+
+        // 慢请求阈值
+        long slowThreshold = 0;
+        if (!Objects.isNull(slow)) {
+            try {
+                slowThreshold = CommonUtil.parseDuration(slow);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+
+        // 窗口内耗时前 K 的请求
+        int topCount = 0;
+        long topWindow = 0;
+        if (!Objects.isNull(top)) {
+            int index = top.indexOf('/');
+            try {
+                topCount = Integer.parseInt((index < 0 ? top : top.substring(0, index)).trim());
+                topWindow = index < 0 ? DEFAULT_TOP_WINDOW : CommonUtil.parseDuration(top.substring(index + 1));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("无效的 --top: " + top + "，格式为 K/窗口，如 5/1m");
+            }
+            if (topCount <= 0) {
+                throw new RuntimeException("无效的 --top: " + top + "，K 必须大于0");
+            }
+        }
+
+        // 聚合模式按窗口输出统计树，不输出单个请求
+        if (aggregateWindow > 0 && (slowThreshold > 0 || topCount > 0)) {
+            throw new RuntimeException("--aggregate 不能与 --slow、--top 同时使用");
+        }
+
         ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
         Set<String> includePackages = new HashSet<>(1);
         Set<String> excludePackages = new HashSet<>(argusProperties.getTraceDefaultExcludePackages());
@@ -182,7 +280,7 @@ public class TraceCmd extends BaseCommand {
                     includePackages,
                     excludePackages,
                     skipClasses,
-                    maxDepth);
+                    progressive ? 1 : maxDepth);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage());
         }
@@ -192,27 +290,37 @@ public class TraceCmd extends BaseCommand {
             throw new RuntimeException("调用链方法过多,请缩小包的范围");
         }
 
-        // 继承方法
-        Map<String, List<MethodCallInfo>> extendMethods = methodCallInfos.stream()
-                .filter(MethodCallInfo::isInherited)
-                .collect(Collectors.groupingBy(MethodCallInfo::getActualDefinedClass));
-
-        // 非继承方法
-        Map<String, List<MethodCallInfo>> nonExtendMethods = methodCallInfos.stream()
-                .filter(call -> !call.isInherited())
-                .collect(Collectors.groupingBy(MethodCallInfo::getSubCalledClass));
-
-        // 继承方法重定义类
-        redefine(argusMethod.getSignature(), extendMethods, argusProperties.getTraceMaxThreadNum());
-
-        // 非继承方法重定义类
-        redefine(argusMethod.getSignature(), nonExtendMethods, argusProperties.getTraceMaxThreadNum());
+        // 重定义类（继承方法和非继承方法一次完成）
+        Map<Class<?>, List<String>> classMethods = TraceEnhanceManager.groupByEnhanceClass(methodCallInfos);
+        redefine(argusMethod.getSignature(), classMethods);
+
+        // 渐进式追踪，调用信息在展开时追加
+        ProgressiveTrace progressiveTrace = null;
+        TraceLineIndex lineIndex;
+        if (progressive) {
+            Set<MethodCallInfo> concurrentCalls = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            concurrentCalls.addAll(methodCallInfos);
+            methodCallInfos = concurrentCalls;
+            lineIndex = new TraceLineIndex(methodCallInfos);
+            progressiveTrace = new ProgressiveTrace(argusMethod.getSignature(), includePackages, excludePackages,
+                    threshold, maxDepth, argusProperties.getTraceMaxEnhancedClassNum(), methodCallInfos, lineIndex, classMethods);
+        } else {
+            lineIndex = sharedLineIndex(argusMethod, methodCallInfos);
+        }
 
         String user = ArgusUserContext.getCurrentUserToken();
 
         MonitorInfo monitorInfo = new MonitorInfo();
         monitorInfo.setArgusMethod(argusMethod);
-        monitorInfo.setTrace(new MonitorInfo.Trace(threshold, maxDepth, method.getMethod(),  methodCallInfos, showFullClassName));
+        MonitorInfo.Trace trace = new MonitorInfo.Trace(threshold, maxDepth, method.getMethod(),  methodCallInfos, showFullClassName);
+        trace.setAggregateWindow(aggregateWindow);
+        trace.setMinTime(minRecordTime);
+        trace.setSlowThreshold(slowThreshold);
+        trace.setTop(topCount);
+        trace.setTopWindow(topWindow);
+        trace.setProgressive(progressiveTrace);
+        trace.setLineIndex(lineIndex);
+        monitorInfo.setTrace(trace);
         ArgusCache.addUserTraceMethod(user, monitorInfo);
 
         if (skipClasses.size() > 0) {
@@ -220,44 +328,48 @@ public class TraceCmd extends BaseCommand {
         }
     }
 
+    /**
+     * 获取行号索引，其它用户追踪同一接口且调用信息相同时共用索引，输出时可共用渲染结果
+     *
+     * @param argusMethod 接口方法
+     * @param methodCallInfos 方法调用信息
+     * @return 行号索引
+     */
+    private TraceLineIndex sharedLineIndex(ArgusMethod argusMethod, Set<MethodCallInfo> methodCallInfos) {
+        for (String token : ArgusCache.getTraceUsersByMethod(argusMethod)) {
+            MonitorInfo monitorInfo = ArgusCache.getTraceMonitorByUser(token, argusMethod.getMethod());
+            if (Objects.isNull(monitorInfo) || Objects.isNull(monitorInfo.getTrace())) {
+                continue;
+            }
+            MonitorInfo.Trace other = monitorInfo.getTrace();
+            if (other.getProgressive() == null && other.getLineIndex() != null
+                    && methodCallInfos.equals(other.getMethodCalls())) {
+                return other.getLineIndex();
+            }
+        }
+        return new TraceLineIndex(methodCallInfos);
+    }
+
     /**
      * 重定义方法
+     * <div>
+     *   所有类的增强在一次批量重转换中完成，避免每个类单独触发一次 JVM 停顿。
+     * </div>
      *
      * @param methodKey 监听方法唯一标识
-     * @param methods   方法映射表
+     * @param classMethods 类 -> 方法名列表
      */
-    private void redefine(String methodKey, Map<String, List<MethodCallInfo>> methods, int maxTraceThread) {
+    private void redefine(String methodKey, Map<Class<?>, List<String>> classMethods) {
 
-        if (methods.isEmpty()) {
+        if (classMethods.isEmpty()) {
             return;
         }
-        int threadNum = Math.min(methods.size(), maxTraceThread);
-        ExecutorService executorService = Executors.newFixedThreadPool(threadNum);
-        CountDownLatch latch = new CountDownLatch(methods.size());
-        methods.forEach((className, callInfos) -> executorService.submit(() -> {
-            try {
-                Class<?> aClass = Class.forName(className.replace("/", "."));
-                List<String> methodNames = callInfos.stream()
-                        .map(MethodCallInfo::getCalledMethod)
-                        .collect(Collectors.toList());
-
-                TraceEnhanceManager.enhanceMethods(methodKey, aClass, methodNames);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            finally {
-                latch.countDown();
-            }
-        }));
-        try {
-            latch.await(30, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            executorService.shutdownNow();
 
+        try {
+            TraceEnhanceManager.enhanceMethods(methodKey, classMethods);
+        } catch (Exception e) {
             TraceEnhanceManager.revertClassWithKey(methodKey);
-            throw new RuntimeException("方法增强超时");
-
+            throw new RuntimeException("方法增强失败：" + e.getMessage());
         }
     }
 }
@@ -14,6 +14,7 @@ import githubcew.arguslog.core.cmd.monitor.RemoveCmd;
 import githubcew.arguslog.core.cmd.mq.MqCmd;
 import githubcew.arguslog.core.cmd.sql.SqlCmd;
 import githubcew.arguslog.core.cmd.system.*;
+import githubcew.arguslog.core.cmd.trace.ProfileCmd;
 import githubcew.arguslog.core.cmd.trace.RevertCmd;
 import githubcew.arguslog.core.cmd.trace.TraceCmd;
 import org.slf4j.Logger;
@@ -390,7 +391,8 @@ public class ArgusPermissionConfigure {
     private Set<String> trace () {
         return new HashSet<>(Arrays.asList(
                 new TraceCmd().getCmd(),
-                new RevertCmd().getCmd()
+                new RevertCmd().getCmd(),
+                new ProfileCmd().getCmd()
         ));
     }
 
@@ -0,0 +1,194 @@
+package githubcew.arguslog.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图
+ * <div>
+ *   对数分桶（每个 2 的幂区间再均分 8 个子桶），相对误差约 12.5%，内存固定，记录无锁。
+ *   用于统计调用链、SQL 等耗时的百分位数。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class LatencyHistogram {
+
+    /**
+     * 每个 2 的幂区间的子桶位数
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * 每个 2 的幂区间的子桶数
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets;
+
+    /**
+     * 实际桶数量，超过可追踪最大值的记录落入最后一个桶
+     */
+    private final int bucketCount;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 构造方法，覆盖整个 long 非负区间
+     */
+    public LatencyHistogram() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param highestTrackableValue 可追踪最大值，超过的记录仍计入次数、总和与最大值
+     */
+    public LatencyHistogram(long highestTrackableValue) {
+        this.bucketCount = indexOf(Math.max(highestTrackableValue, SUB_BUCKET_COUNT)) + 1;
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param value 耗时
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(Math.min(indexOf(value), bucketCount - 1));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 记录多次耗时（只知道总耗时和最大耗时，如合并的连续调用）
+     * <div>
+     *   最大耗时记录一次，其余次数按剩余耗时的平均值记录，次数、总和与最大值准确。
+     * </div>
+     *
+     * @param total    总耗时
+     * @param times    次数
+     * @param maxValue 最大耗时
+     */
+    public void recordRepeated(long total, long times, long maxValue) {
+        if (times <= 1) {
+            record(total);
+            return;
+        }
+        if (total < 0) {
+            total = 0;
+        }
+        long maxOne = Math.min(Math.max(maxValue, 0), total);
+        long restAvg = (total - maxOne) / (times - 1);
+        buckets.incrementAndGet(Math.min(indexOf(maxOne), bucketCount - 1));
+        buckets.addAndGet(Math.min(indexOf(restAvg), bucketCount - 1), times - 1);
+        count.addAndGet(times);
+        this.total.addAndGet(total);
+        max.accumulateAndGet(maxOne, Math::max);
+    }
+
+    /**
+     * 合并另一个直方图
+     *
+     * @param other 直方图
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < other.bucketCount; i++) {
+            long c = other.buckets.get(i);
+            if (c > 0) {
+                buckets.addAndGet(Math.min(i, bucketCount - 1), c);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * 获取百分位数（桶上界）
+     *
+     * @param percentile 百分位，如 0.99
+     * @return 耗时
+     */
+    public long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return i == bucketCount - 1 ? max.get() : Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 获取平均值
+     *
+     * @return 平均值
+     */
+    public double getAvg() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * 计算值所在桶
+     *
+     * @param value 值
+     * @return 桶下标
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    /**
+     * 计算桶上界
+     *
+     * @param index 桶下标
+     * @return 上界
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exp = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKET_COUNT;
+        long lower = (1L << exp) + ((long) sub << (exp - SUB_BUCKET_BITS));
+        long width = 1L << (exp - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+}
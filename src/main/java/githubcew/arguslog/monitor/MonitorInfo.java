@@ -1,5 +1,7 @@
 package githubcew.arguslog.monitor;
 
+import githubcew.arguslog.monitor.trace.ProgressiveTrace;
+import githubcew.arguslog.monitor.trace.TraceLineIndex;
 import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
 import lombok.Data;
 
@@ -65,6 +67,11 @@ public class MonitorInfo {
      */
     private boolean method;
 
+    /**
+     * 请求 SQL 汇总和 N+1 查询
+     */
+    private boolean sql;
+
     private Trace trace;
 
     private Date date;
@@ -95,6 +102,51 @@ public class MonitorInfo {
          * 是否显示完整类名
          */
         private boolean showFullClassName;
+
+        /**
+         * 聚合窗口（ms），0表示逐请求输出
+         */
+        private long aggregateWindow;
+
+        /**
+         * 渐进式追踪，null表示一次性增强全部调用链
+         */
+        private ProgressiveTrace progressive;
+
+        /**
+         * 行号索引
+         */
+        private TraceLineIndex lineIndex;
+
+        /**
+         * 最小记录耗时（ms），低于该值的子调用在记录时丢弃，0表示全部记录
+         */
+        private long minTime;
+
+        /**
+         * 慢请求阈值（ms），大于0时只输出根节点耗时不低于该值的请求
+         */
+        private long slowThreshold;
+
+        /**
+         * 每个窗口保留耗时最大的请求数，0表示不保留
+         */
+        private int top;
+
+        /**
+         * 保留窗口（ms）
+         */
+        private long topWindow;
+
+        /**
+         * 是否只输出保留的请求（慢请求和窗口内耗时前 K 的请求）
+         *
+         * @return 结果
+         */
+        public boolean isTailBased() {
+            return slowThreshold > 0 || top > 0;
+        }
+
         /**
          * 构造方法
          */
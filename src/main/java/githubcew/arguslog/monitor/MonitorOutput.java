@@ -1,5 +1,6 @@
 package githubcew.arguslog.monitor;
 
+import githubcew.arguslog.monitor.sql.RequestSqlSummary;
 import lombok.Data;
 
 /**
@@ -39,4 +40,9 @@ public class MonitorOutput {
      * web 请求信息
      */
     private WebRequestInfo webRequestInfo;
+
+    /**
+     * 请求 SQL 汇总
+     */
+    private RequestSqlSummary sqlSummary;
 }
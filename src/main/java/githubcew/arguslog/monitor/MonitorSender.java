@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 监控发送器
@@ -20,8 +21,14 @@ public class MonitorSender {
     private ArgusProperties argusProperties;
     private ThreadPoolExecutor scheduler;
 
+    // 定时触发器，只负责按时把任务投递到线程池
+    private volatile ScheduledExecutorService timer;
+
     private volatile boolean isStarted = false;
 
+    // 队列已满时被丢弃的可丢弃任务数
+    private final LongAdder discarded = new LongAdder();
+
 
     /**
      * 初始化方法
@@ -37,7 +44,7 @@ public class MonitorSender {
                 60L,
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(argusProperties.getMaxWaitQueueSize()),
-                new ThreadPoolExecutor.CallerRunsPolicy()
+                this::rejected
         );
         isStarted = true;
     }
@@ -50,6 +57,25 @@ public class MonitorSender {
         scheduler.execute(task);
     }
 
+    /**
+     * 提交可丢弃的监控任务，队列已满时直接丢弃并计数，不在调用线程执行
+     * @param task 任务
+     * @return 是否提交成功
+     */
+    public boolean offer(Runnable task) {
+        DiscardableTask discardable = new DiscardableTask(task);
+        scheduler.execute(discardable);
+        return !discardable.discarded;
+    }
+
+    /**
+     * 获取队列已满时被丢弃的任务数
+     * @return 丢弃数
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
     /**
      * 提交有返回值的监控任务
      * @param task 任务
@@ -60,14 +86,80 @@ public class MonitorSender {
         return scheduler.submit(task);
     }
 
+    /**
+     * 按固定周期提交监控任务
+     * @param task 任务
+     * @param period 周期
+     * @param unit 时间单位
+     * @return  ScheduledFuture，可用于取消
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        return getTimer().scheduleAtFixedRate(() -> submit(task), period, period, unit);
+    }
+
+    /**
+     * 获取定时触发器
+     * @return  ScheduledExecutorService
+     */
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            synchronized (this) {
+                if (timer == null) {
+                    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "[Argus-Sender-Timer]");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * 拒绝策略：可丢弃任务直接丢弃，其余任务由调用线程执行
+     * @param task 任务
+     * @param executor 线程池
+     */
+    private void rejected(Runnable task, ThreadPoolExecutor executor) {
+        if (task instanceof DiscardableTask) {
+            ((DiscardableTask) task).discarded = true;
+            discarded.increment();
+            return;
+        }
+        if (!executor.isShutdown()) {
+            task.run();
+        }
+    }
+
     /**
      * 获取线程池状态信息
      * @return  String
      */
     public String getPoolStatus() {
-        return String.format("活跃线程: %d, 队列大小: %d, 完成任务: %d",
+        return String.format("活跃线程: %d, 队列大小: %d, 完成任务: %d, 丢弃任务: %d",
                 scheduler.getActiveCount(),
                 scheduler.getQueue().size(),
-                scheduler.getCompletedTaskCount());
+                scheduler.getCompletedTaskCount(),
+                discarded.sum());
+    }
+
+    /**
+     * 可丢弃任务，队列已满时不占用调用线程
+     */
+    private static class DiscardableTask implements Runnable {
+
+        private final Runnable task;
+
+        private boolean discarded;
+
+        DiscardableTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
     }
 }
\ No newline at end of file
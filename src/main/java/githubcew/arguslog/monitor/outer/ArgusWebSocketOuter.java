@@ -4,16 +4,20 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import githubcew.arguslog.common.util.CommonUtil;
 import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
 import githubcew.arguslog.core.account.ArgusUser;
 import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.core.cmd.ColorWrapper;
 import githubcew.arguslog.core.cmd.ExecuteResult;
 import githubcew.arguslog.monitor.MonitorInfo;
 import githubcew.arguslog.monitor.MonitorOutput;
 import githubcew.arguslog.monitor.WebRequestInfo;
+import githubcew.arguslog.monitor.sql.RequestSqlSummary;
 import githubcew.arguslog.web.socket.ArgusSocketHandler;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -71,6 +75,7 @@ public class ArgusWebSocketOuter implements Outer {
                 || monitorInfo.isResult() || monitorInfo.isTime()
                 || monitorInfo.isUrl() || monitorInfo.isApi()
                 || monitorInfo.isMethod() || monitorInfo.isType()
+                || monitorInfo.isSql()
                 ;
         if (!hasContent) {
             return false;
@@ -120,10 +125,52 @@ public class ArgusWebSocketOuter implements Outer {
             appendValue(wrapper.getBuilder(), objectMapper, monitorOutput.getTime());
             wrapper.append(" ms").concat();
         }
+        // 请求sql汇总
+        if (monitorInfo.isSql() && monitorOutput.getSqlSummary() != null) {
+            appendSqlSummary(wrapper, monitorOutput.getSqlSummary(), monitorInfo);
+        }
 
         return true;
     }
 
+    /**
+     * 输出请求 SQL 汇总和 N+1 查询
+     *
+     * @param wrapper     wrapper
+     * @param summary     SQL 汇总
+     * @param monitorInfo 监听信息
+     */
+    private void appendSqlSummary(OutputWrapper wrapper, RequestSqlSummary summary, MonitorInfo monitorInfo) {
+        wrapper.append("sql => ")
+                .append(summary.getCount() + " queries, "
+                        + summary.getTotalTime() + " ms, "
+                        + summary.getDistinctCount() + " distinct")
+                .concat();
+        if (summary.getConnectionCount() > 0) {
+            wrapper.append("pool => ")
+                    .append(summary.getConnectionCount() + " connections, wait "
+                            + summary.getConnectionWaitTime() + " ms, hold "
+                            + summary.getConnectionHoldTime() + " ms")
+                    .concat();
+        }
+
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        List<Map.Entry<String, RequestSqlSummary.FingerprintCount>> nPlusOne =
+                summary.getNPlusOne(argusProperties.getSqlNPlusOneThreshold());
+        Method method = monitorInfo.getArgusMethod() == null ? null : monitorInfo.getArgusMethod().getMethod();
+        String caller = method == null ? "" : method.getDeclaringClass().getSimpleName() + "." + method.getName() + "()";
+        for (Map.Entry<String, RequestSqlSummary.FingerprintCount> entry : nPlusOne) {
+            RequestSqlSummary.FingerprintCount count = entry.getValue();
+            wrapper.append(ColorWrapper.red("N+1 => "))
+                    .append((count.getDao() == null ? "Unknown" : count.getDao() + "()")
+                            + " x" + count.getCount()
+                            + " [" + count.getTotalTime() + "ms]"
+                            + " in " + caller)
+                    .concat();
+            wrapper.append("       ").startCopy().append(entry.getKey()).endCopy().concat();
+        }
+    }
+
     /**
      * 构建异常输出
      *
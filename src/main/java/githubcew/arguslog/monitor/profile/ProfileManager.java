@@ -0,0 +1,279 @@
+package githubcew.arguslog.monitor.profile;
+
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.core.ArgusManager;
+import githubcew.arguslog.core.account.ArgusUser;
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.core.cmd.ExecuteResult;
+import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.trace.flame.FlameGraphStore;
+import githubcew.arguslog.web.socket.ArgusSocketHandler;
+import org.springframework.util.AntPathMatcher;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 采样分析管理
+ * <div>
+ *   {@link githubcew.arguslog.web.filter.ArgusTraceRequestFilter} 在有采样会话时登记处理匹配接口请求的线程，
+ *   采样线程按会话间隔一次性获取这些线程的栈（一次 {@link ThreadMXBean#getThreadInfo(long[], int)} 调用），
+ *   开销只与采样间隔和在途请求数有关，与方法调用次数无关，也不需要增强字节码。
+ * </div>
+ * <div>
+ *   没有采样会话时过滤器只读取一次 volatile 标记。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ProfileManager {
+
+    /**
+     * 线程栈最大深度
+     */
+    private static final int MAX_STACK_DEPTH = 512;
+
+    /**
+     * 热点方法树中显示节点的最小占比（%）
+     */
+    private static final double MIN_PERCENT = 1.0;
+
+    /**
+     * 热点方法数
+     */
+    private static final int TOP_METHODS = 10;
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    /**
+     * 采样会话, key: 用户token
+     */
+    private static final Map<String, ProfileSession> sessions = new ConcurrentHashMap<>(4);
+
+    /**
+     * 正在处理匹配请求的线程, key: 线程, value: 匹配的会话
+     */
+    private static final Map<Thread, List<ProfileSession>> requestThreads = new ConcurrentHashMap<>(16);
+
+    /**
+     * 是否有采样会话
+     */
+    private static volatile boolean active;
+
+    /**
+     * 采样线程
+     */
+    private static ScheduledExecutorService sampler;
+
+    /**
+     * 是否有采样会话
+     *
+     * @return 结果
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 请求开始，登记匹配采样会话的线程
+     *
+     * @param path 请求路径（不含上下文路径）
+     */
+    public static void requestStarted(String path) {
+        if (path == null) {
+            return;
+        }
+        List<ProfileSession> matched = null;
+        for (ProfileSession session : sessions.values()) {
+            if (PATH_MATCHER.match(session.getUri(), path)) {
+                if (matched == null) {
+                    matched = new ArrayList<>(1);
+                }
+                matched.add(session);
+            }
+        }
+        if (matched != null) {
+            requestThreads.put(Thread.currentThread(), matched);
+        }
+    }
+
+    /**
+     * 请求结束，移除线程登记
+     */
+    public static void requestEnded() {
+        if (!requestThreads.isEmpty()) {
+            requestThreads.remove(Thread.currentThread());
+        }
+    }
+
+    /**
+     * 开始采样，同一用户已有的会话被取消
+     *
+     * @param session 会话
+     */
+    public static synchronized void start(ProfileSession session) {
+        ScheduledExecutorService executor = getSampler();
+        // 先登记新会话再取消旧会话，避免唯一会话被替换时清空在途请求的线程登记
+        ProfileSession old = sessions.put(session.getToken(), session);
+        active = true;
+        if (old != null) {
+            cancel(old);
+            rebind(old, session);
+        }
+        session.setSampleFuture(executor.scheduleAtFixedRate(() -> sample(session),
+                session.getInterval(), session.getInterval(), TimeUnit.MILLISECONDS));
+        session.setFinishFuture(executor.schedule(() -> finish(session),
+                session.getDuration(), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 提前结束用户的采样并输出结果
+     *
+     * @param token 用户token
+     * @return 是否有正在进行的采样
+     */
+    public static synchronized boolean stop(String token) {
+        ProfileSession session = sessions.get(token);
+        if (session == null) {
+            return false;
+        }
+        session.getFinishFuture().cancel(false);
+        getSampler().execute(() -> finish(session));
+        return true;
+    }
+
+    /**
+     * 获取用户正在进行的采样
+     *
+     * @param token 用户token
+     * @return 会话，没有返回null
+     */
+    public static ProfileSession getSession(String token) {
+        return sessions.get(token);
+    }
+
+    /**
+     * 采样一次
+     *
+     * @param session 会话
+     */
+    private static void sample(ProfileSession session) {
+        session.tick();
+        List<Long> threadIds = new ArrayList<>();
+        for (Map.Entry<Thread, List<ProfileSession>> entry : requestThreads.entrySet()) {
+            if (entry.getValue().contains(session)) {
+                threadIds.add(entry.getKey().getId());
+            }
+        }
+        if (threadIds.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[threadIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = threadIds.get(i);
+        }
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(ids, MAX_STACK_DEPTH)) {
+            if (threadInfo != null) {
+                session.addSample(threadInfo.getStackTrace());
+            }
+        }
+    }
+
+    /**
+     * 结束采样并输出结果（在采样线程上执行，保证最后一次采样已完成）
+     *
+     * @param session 会话
+     */
+    private static void finish(ProfileSession session) {
+        synchronized (ProfileManager.class) {
+            if (!sessions.remove(session.getToken(), session)) {
+                return;
+            }
+            cancel(session);
+        }
+
+        ArgusManager argusManager = ContextUtil.getBean(ArgusManager.class);
+        argusManager.getMonitorSender().submit(() -> {
+            FlameGraphStore.putProfile(session.getUri(), session.toFlameGraph());
+            ArgusUser user = ArgusCache.getUserToken(session.getToken());
+            if (Objects.isNull(user) || !user.getSession().isOpen()) {
+                return;
+            }
+            String output = "Argus PROFILE: \n"
+                    + "uri => " + OutputWrapper.wrapperCopy(session.getUri())
+                    + "\nmethod => " + (session.getMethod() == null ? "" : CommonUtil.generateSignature(session.getMethod()))
+                    + "\nduration => " + (System.currentTimeMillis() - session.getStartTime()) + "ms"
+                    + ", interval => " + session.getInterval() + "ms"
+                    + "\nsamples => " + session.getSamples() + " (ticks: " + session.getTicks() + ")"
+                    + "\n" + session.render(MIN_PERCENT, TOP_METHODS);
+            ArgusSocketHandler argusSocketHandler = ContextUtil.getBean(ArgusSocketHandler.class);
+            argusSocketHandler.send(user.getSession(), OutputWrapper.formatOutput(ExecuteResult.success(output)));
+        });
+    }
+
+    /**
+     * 在途请求从旧会话转到新会话（接口相同时），接口不同时移除旧会话
+     *
+     * @param old     旧会话
+     * @param session 新会话
+     */
+    private static void rebind(ProfileSession old, ProfileSession session) {
+        boolean sameUri = old.getUri().equals(session.getUri());
+        for (Thread thread : requestThreads.keySet()) {
+            requestThreads.computeIfPresent(thread, (t, matched) -> {
+                if (!matched.contains(old)) {
+                    return matched;
+                }
+                // 复制后替换，采样线程可能正在读取原列表
+                List<ProfileSession> rebound = new ArrayList<>(matched.size());
+                for (ProfileSession s : matched) {
+                    if (s != old) {
+                        rebound.add(s);
+                    } else if (sameUri) {
+                        rebound.add(session);
+                    }
+                }
+                return rebound.isEmpty() ? null : rebound;
+            });
+        }
+    }
+
+    /**
+     * 取消会话的采样和结束任务
+     *
+     * @param session 会话
+     */
+    private static void cancel(ProfileSession session) {
+        if (session.getSampleFuture() != null) {
+            session.getSampleFuture().cancel(false);
+        }
+        if (session.getFinishFuture() != null) {
+            session.getFinishFuture().cancel(false);
+        }
+        active = !sessions.isEmpty();
+        if (!active) {
+            requestThreads.clear();
+        }
+    }
+
+    /**
+     * 获取采样线程
+     *
+     * @return ScheduledExecutorService
+     */
+    private static synchronized ScheduledExecutorService getSampler() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "[Argus-Profiler]");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return sampler;
+    }
+}
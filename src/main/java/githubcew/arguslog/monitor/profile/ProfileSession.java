@@ -0,0 +1,346 @@
+package githubcew.arguslog.monitor.profile;
+
+import githubcew.arguslog.monitor.trace.flame.FlameGraph;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 采样分析会话
+ * <div>
+ *   一个用户对一个接口的一次采样。每次采样取正在处理该接口请求的线程栈，
+ *   从接口方法（找不到时从追踪过滤器之后）开始按调用路径合并为热点方法树，节点记录采样次数和自身采样次数。
+ * </div>
+ * <div>
+ *   采样在采样线程上串行执行，输出在会话结束后进行。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ProfileSession {
+
+    /**
+     * 追踪过滤器类名，栈中该帧之前的容器帧不计入
+     */
+    private static final String FILTER_CLASS = "githubcew.arguslog.web.filter.ArgusTraceRequestFilter";
+
+    /**
+     * 用户token
+     */
+    private final String token;
+
+    /**
+     * 接口路径
+     */
+    private final String uri;
+
+    /**
+     * 接口方法
+     */
+    private final Method method;
+
+    /**
+     * 采样间隔（ms）
+     */
+    private final long interval;
+
+    /**
+     * 采样时长（ms）
+     */
+    private final long duration;
+
+    /**
+     * 是否显示全类名
+     */
+    private final boolean showFullClassName;
+
+    /**
+     * 开始时间
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 热点方法树根节点
+     */
+    private final ProfileNode root = new ProfileNode("all");
+
+    /**
+     * 采样任务
+     */
+    private volatile ScheduledFuture<?> sampleFuture;
+
+    /**
+     * 结束任务
+     */
+    private volatile ScheduledFuture<?> finishFuture;
+
+    /**
+     * 采样轮数
+     */
+    private long ticks;
+
+    /**
+     * 采集到的线程栈数
+     */
+    private long samples;
+
+    /**
+     * 构造方法
+     *
+     * @param token             用户token
+     * @param uri               接口路径
+     * @param method            接口方法
+     * @param interval          采样间隔（ms）
+     * @param duration          采样时长（ms）
+     * @param showFullClassName 是否显示全类名
+     */
+    public ProfileSession(String token, String uri, Method method, long interval, long duration, boolean showFullClassName) {
+        this.token = token;
+        this.uri = uri;
+        this.method = method;
+        this.interval = interval;
+        this.duration = duration;
+        this.showFullClassName = showFullClassName;
+    }
+
+    /**
+     * 记录一轮采样
+     */
+    void tick() {
+        ticks++;
+    }
+
+    /**
+     * 记录一个线程栈
+     *
+     * @param stackTrace 线程栈（栈顶在前）
+     */
+    void addSample(StackTraceElement[] stackTrace) {
+        if (stackTrace == null || stackTrace.length == 0) {
+            return;
+        }
+        samples++;
+        int start = startIndex(stackTrace);
+        ProfileNode node = root;
+        node.samples++;
+        for (int i = start; i >= 0; i--) {
+            node = node.child(frameName(stackTrace[i]));
+            node.samples++;
+        }
+        node.self++;
+    }
+
+    /**
+     * 查找开始帧：最外层的接口方法帧，找不到时为追踪过滤器之后的帧
+     *
+     * @param stackTrace 线程栈
+     * @return 开始帧下标
+     */
+    private int startIndex(StackTraceElement[] stackTrace) {
+        int filterIndex = -1;
+        for (int i = stackTrace.length - 1; i >= 0; i--) {
+            StackTraceElement element = stackTrace[i];
+            if (method != null
+                    && element.getClassName().equals(method.getDeclaringClass().getName())
+                    && element.getMethodName().equals(method.getName())) {
+                return i;
+            }
+            if (filterIndex < 0 && element.getClassName().equals(FILTER_CLASS)) {
+                filterIndex = i;
+            }
+        }
+        return filterIndex > 0 ? filterIndex - 1 : stackTrace.length - 1;
+    }
+
+    /**
+     * 帧名称
+     *
+     * @param element 栈帧
+     * @return 类名.方法名
+     */
+    private String frameName(StackTraceElement element) {
+        String className = element.getClassName();
+        if (!showFullClassName) {
+            className = className.substring(className.lastIndexOf('.') + 1);
+        }
+        return className + "." + element.getMethodName();
+    }
+
+    /**
+     * 输出热点方法（按自身采样数）和热点方法树
+     *
+     * @param minPercent 树中显示节点的最小占比（%）
+     * @param topMethods 热点方法数
+     * @return 文本
+     */
+    public String render(double minPercent, int topMethods) {
+        StringBuilder sb = new StringBuilder();
+        long total = Math.max(1, root.samples);
+
+        // 热点方法
+        Map<String, Long> selfCounts = new HashMap<>();
+        Deque<ProfileNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ProfileNode node = stack.pop();
+            if (node.self > 0) {
+                selfCounts.merge(node.name, node.self, Long::sum);
+            }
+            node.children.values().forEach(stack::push);
+        }
+        sb.append("hot methods => \n");
+        selfCounts.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                .limit(topMethods)
+                .forEach(entry -> sb.append("  ").append(percent(entry.getValue(), total))
+                        .append("  ").append(entry.getKey())
+                        .append(" (").append(entry.getValue()).append(")\n"));
+
+        // 热点方法树
+        sb.append("tree => \n");
+        long minSamples = (long) Math.ceil(total * minPercent / 100);
+        Deque<Object[]> frames = new ArrayDeque<>();
+        for (ProfileNode child : sortedChildren(root, minSamples)) {
+            frames.push(new Object[]{child, ""});
+        }
+        while (!frames.isEmpty()) {
+            Object[] frame = frames.pop();
+            ProfileNode node = (ProfileNode) frame[0];
+            String prefix = (String) frame[1];
+            sb.append(prefix).append(node.name)
+                    .append(" [").append(percent(node.samples, total))
+                    .append(" ").append(node.samples);
+            if (node.self > 0) {
+                sb.append(" self=").append(node.self);
+            }
+            sb.append("]\n");
+            for (ProfileNode child : sortedChildren(node, minSamples)) {
+                frames.push(new Object[]{child, prefix + "  "});
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 采样数不低于下限的子节点，按采样数升序（入栈后从大到小输出）
+     *
+     * @param node       节点
+     * @param minSamples 最小采样数
+     * @return 子节点
+     */
+    private static List<ProfileNode> sortedChildren(ProfileNode node, long minSamples) {
+        List<ProfileNode> children = new ArrayList<>();
+        for (ProfileNode child : node.children.values()) {
+            if (child.samples >= minSamples) {
+                children.add(child);
+            }
+        }
+        children.sort(Comparator.comparingLong(child -> child.samples));
+        return children;
+    }
+
+    /**
+     * 百分比
+     *
+     * @param value 值
+     * @param total 总数
+     * @return 文本
+     */
+    private static String percent(long value, long total) {
+        return String.format("%5.1f%%", value * 100.0 / total);
+    }
+
+    /**
+     * 转换为火焰图（帧宽度为采样数）
+     *
+     * @return 火焰图
+     */
+    public FlameGraph toFlameGraph() {
+        FlameGraph graph = new FlameGraph();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        for (ProfileNode child : root.children.values()) {
+            stack.push(new Object[]{graph.getRoot(), child});
+        }
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            ProfileNode node = (ProfileNode) item[1];
+            FlameGraph.Frame frame = ((FlameGraph.Frame) item[0]).child(node.name, false);
+            frame.addSelf(node.self);
+            for (ProfileNode child : node.children.values()) {
+                stack.push(new Object[]{frame, child});
+            }
+        }
+        return graph;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public ScheduledFuture<?> getSampleFuture() {
+        return sampleFuture;
+    }
+
+    public void setSampleFuture(ScheduledFuture<?> sampleFuture) {
+        this.sampleFuture = sampleFuture;
+    }
+
+    public ScheduledFuture<?> getFinishFuture() {
+        return finishFuture;
+    }
+
+    public void setFinishFuture(ScheduledFuture<?> finishFuture) {
+        this.finishFuture = finishFuture;
+    }
+
+    /**
+     * 热点方法树节点
+     */
+    private static class ProfileNode {
+
+        private final String name;
+
+        private long samples;
+
+        private long self;
+
+        private final Map<String, ProfileNode> children = new LinkedHashMap<>();
+
+        ProfileNode(String name) {
+            this.name = name;
+        }
+
+        ProfileNode child(String name) {
+            return children.computeIfAbsent(name, ProfileNode::new);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package githubcew.arguslog.monitor.sql;
+
+import githubcew.arguslog.monitor.LatencyHistogram;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接池统计
+ * <div>
+ *   统计 {@code DataSource.getConnection()} 的获取等待耗时和连接从获取到 {@code close()} 的持有耗时，
+ *   按调用方（DAO 方法，识别不到时为 Web 请求方法）聚合，并保存持有最久的连接和当前未归还的连接（含获取时的调用栈），
+ *   用于排查连接池耗尽。开启后才记录。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ConnectionPoolRegistry {
+
+    /**
+     * 耗时直方图可追踪最大值（ms）
+     */
+    private static final long HISTOGRAM_MAX_MS = 60 * 60 * 1000L;
+
+    /**
+     * 保存的持有最久连接数量
+     */
+    public static final int LONGEST_HELD_SIZE = 10;
+
+    /**
+     * 调用方最大数量
+     */
+    private static final int MAX_CALLERS = 1000;
+
+    /**
+     * 连接序号
+     */
+    private static final AtomicLong ID = new AtomicLong();
+
+    /**
+     * 当前未归还的连接, key: 序号
+     */
+    private static final Map<Long, Lease> ACTIVE = new ConcurrentHashMap<>(64);
+
+    /**
+     * 按调用方统计, key: 调用方
+     */
+    private static final Map<String, CallerStat> CALLERS = new ConcurrentHashMap<>(64);
+
+    /**
+     * 持有最久的连接（按持有耗时倒序）
+     */
+    private static final List<Lease> LONGEST_HELD = new ArrayList<>(LONGEST_HELD_SIZE + 1);
+
+    /**
+     * 获取失败次数（如连接池等待超时）
+     */
+    private static final LongAdder FAILED = new LongAdder();
+
+    /**
+     * 获取等待耗时
+     */
+    private static volatile LatencyHistogram waitHistogram = new LatencyHistogram(HISTOGRAM_MAX_MS);
+
+    /**
+     * 持有耗时
+     */
+    private static volatile LatencyHistogram holdHistogram = new LatencyHistogram(HISTOGRAM_MAX_MS);
+
+    /**
+     * 是否正在统计
+     */
+    private static volatile boolean recording;
+
+    /**
+     * 开始统计时间
+     */
+    private static volatile long startTime;
+
+    private ConnectionPoolRegistry() {
+    }
+
+    /**
+     * 开始统计
+     */
+    public static void start() {
+        startTime = System.currentTimeMillis();
+        recording = true;
+    }
+
+    /**
+     * 停止统计并清空数据
+     */
+    public static void stop() {
+        recording = false;
+        ACTIVE.clear();
+        CALLERS.clear();
+        synchronized (LONGEST_HELD) {
+            LONGEST_HELD.clear();
+        }
+        FAILED.reset();
+        waitHistogram = new LatencyHistogram(HISTOGRAM_MAX_MS);
+        holdHistogram = new LatencyHistogram(HISTOGRAM_MAX_MS);
+    }
+
+    /**
+     * 是否正在统计
+     *
+     * @return 结果
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * 记录获取到连接
+     *
+     * @param wait    获取等待耗时（ms）
+     * @param context 调用上下文
+     * @param stack   获取连接时的调用栈
+     * @return 连接租约，未统计时返回 null
+     */
+    public static Lease acquired(long wait, DaoMethodDetector.CallContext context, StackTraceElement[] stack) {
+        if (!recording) {
+            return null;
+        }
+        waitHistogram.record(wait);
+        Lease lease = new Lease(ID.incrementAndGet(), callerOf(context), wait, stack);
+        CallerStat stat = callerStat(lease.caller);
+        if (stat != null) {
+            stat.wait.record(wait);
+        }
+        ACTIVE.put(lease.id, lease);
+        return lease;
+    }
+
+    /**
+     * 记录获取连接失败
+     *
+     * @param wait    获取等待耗时（ms）
+     * @param context 调用上下文
+     */
+    public static void failed(long wait, DaoMethodDetector.CallContext context) {
+        if (!recording) {
+            return;
+        }
+        waitHistogram.record(wait);
+        FAILED.increment();
+        CallerStat stat = callerStat(callerOf(context));
+        if (stat != null) {
+            stat.wait.record(wait);
+            stat.failed.increment();
+        }
+    }
+
+    /**
+     * 记录连接归还
+     *
+     * @param lease 连接租约
+     */
+    public static void released(Lease lease) {
+        // 停止后重新开始的统计不包含之前获取的连接
+        if (ACTIVE.remove(lease.id) == null) {
+            return;
+        }
+        lease.holdTime = System.currentTimeMillis() - lease.acquireTime;
+        holdHistogram.record(lease.holdTime);
+        CallerStat stat = CALLERS.get(lease.caller);
+        if (stat != null) {
+            stat.hold.record(lease.holdTime);
+        }
+        synchronized (LONGEST_HELD) {
+            int size = LONGEST_HELD.size();
+            if (size < LONGEST_HELD_SIZE || lease.holdTime > LONGEST_HELD.get(size - 1).holdTime) {
+                int index = 0;
+                while (index < size && LONGEST_HELD.get(index).holdTime >= lease.holdTime) {
+                    index++;
+                }
+                LONGEST_HELD.add(index, lease);
+                if (LONGEST_HELD.size() > LONGEST_HELD_SIZE) {
+                    LONGEST_HELD.remove(LONGEST_HELD_SIZE);
+                }
+            }
+        }
+    }
+
+    public static long getStartTime() {
+        return startTime;
+    }
+
+    public static LatencyHistogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    public static LatencyHistogram getHoldHistogram() {
+        return holdHistogram;
+    }
+
+    public static long getFailedCount() {
+        return FAILED.sum();
+    }
+
+    /**
+     * 获取当前未归还的连接，按持有时间倒序
+     *
+     * @return 连接
+     */
+    public static List<Lease> getActive() {
+        List<Lease> leases = new ArrayList<>(ACTIVE.values());
+        leases.sort(Comparator.comparingLong(Lease::getAcquireTime));
+        return leases;
+    }
+
+    /**
+     * 获取持有最久的连接（已归还）
+     *
+     * @return 连接
+     */
+    public static List<Lease> getLongestHeld() {
+        synchronized (LONGEST_HELD) {
+            return new ArrayList<>(LONGEST_HELD);
+        }
+    }
+
+    /**
+     * 获取调用方统计，按等待总耗时倒序
+     *
+     * @param top 数量
+     * @return 统计
+     */
+    public static List<CallerStat> getCallers(int top) {
+        List<CallerStat> stats = new ArrayList<>(CALLERS.values());
+        stats.sort(Comparator.comparingLong((CallerStat s) -> s.wait.getTotal()).reversed());
+        return stats.size() > top ? new ArrayList<>(stats.subList(0, top)) : stats;
+    }
+
+    /**
+     * 获取调用方统计项，超过数量上限时返回 null
+     *
+     * @param caller 调用方
+     * @return 统计项
+     */
+    private static CallerStat callerStat(String caller) {
+        CallerStat stat = CALLERS.get(caller);
+        if (stat == null && CALLERS.size() < MAX_CALLERS) {
+            stat = CALLERS.computeIfAbsent(caller, CallerStat::new);
+        }
+        return stat;
+    }
+
+    /**
+     * 获取调用方名称
+     *
+     * @param context 调用上下文
+     * @return DAO 方法，识别不到时为 Web 请求方法
+     */
+    private static String callerOf(DaoMethodDetector.CallContext context) {
+        if (context.getDaoInfo() != null && !context.getDaoInfo().isUnknown()) {
+            return context.getDaoInfo().getFullMethodName();
+        }
+        Method webMethod = context.getWebMethod();
+        if (webMethod != null) {
+            return webMethod.getDeclaringClass().getSimpleName() + "." + webMethod.getName();
+        }
+        return DaoMethodDetector.MethodInfo.UNKNOWN.getFullMethodName();
+    }
+
+    /**
+     * 连接租约（一次获取到归还）
+     */
+    public static class Lease {
+
+        private final long id;
+
+        private final String caller;
+
+        private final String threadName;
+
+        private final long acquireTime;
+
+        private final long waitTime;
+
+        private final StackTraceElement[] stack;
+
+        private volatile long holdTime;
+
+        Lease(long id, String caller, long waitTime, StackTraceElement[] stack) {
+            this.id = id;
+            this.caller = caller;
+            this.threadName = Thread.currentThread().getName();
+            this.acquireTime = System.currentTimeMillis();
+            this.waitTime = waitTime;
+            this.stack = stack;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getAcquireTime() {
+            return acquireTime;
+        }
+
+        public long getWaitTime() {
+            return waitTime;
+        }
+
+        public StackTraceElement[] getStack() {
+            return stack;
+        }
+
+        /**
+         * 持有耗时，未归还时为当前已持有时间
+         *
+         * @return 耗时（ms）
+         */
+        public long getHoldTime() {
+            return ACTIVE.containsKey(id) ? System.currentTimeMillis() - acquireTime : holdTime;
+        }
+    }
+
+    /**
+     * 单个调用方的统计
+     */
+    public static class CallerStat {
+
+        private final String caller;
+
+        private final LatencyHistogram wait = new LatencyHistogram(HISTOGRAM_MAX_MS);
+
+        private final LatencyHistogram hold = new LatencyHistogram(HISTOGRAM_MAX_MS);
+
+        private final LongAdder failed = new LongAdder();
+
+        CallerStat(String caller) {
+            this.caller = caller;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        public LatencyHistogram getWait() {
+            return wait;
+        }
+
+        public LatencyHistogram getHold() {
+            return hold;
+        }
+
+        public long getFailed() {
+            return failed.sum();
+        }
+    }
+}
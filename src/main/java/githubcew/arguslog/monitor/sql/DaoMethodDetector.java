@@ -65,6 +65,17 @@ public class DaoMethodDetector {
      */
     private static final Map<String, String> PROXY_TO_INTERFACE_CACHE = new ConcurrentHashMap<>();
 
+    /**
+     * 调用栈帧类分类缓存的最大数量
+     */
+    private static final int MAX_FRAME_CLASSES = 4096;
+
+    /**
+     * 调用栈帧类分类缓存，避免每次检测都对同一个类做包名/后缀匹配和代理解析。
+     * <p>键：类全限定名；值：分类结果。</p>
+     */
+    private static final Map<String, FrameClass> FRAME_CLASSES = new ConcurrentHashMap<>(256);
+
     static {
         // 默认排除常见框架内部类
         EXCLUDE_PACKAGES.addAll(Arrays.asList(
@@ -97,21 +108,7 @@ public class DaoMethodDetector {
      * @return 检测到的方法信息，若未识别则返回 {@link MethodInfo#UNKNOWN}
      */
     public static MethodInfo detect() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-
-        // 策略1：优先查找Mapper/Repository接口方法
-        MethodInfo mapperMethod = findMapperOrRepositoryMethod(stackTrace);
-        if (!mapperMethod.isUnknown()) {
-            return mapperMethod;
-        }
-
-        // 策略2：查找Service层方法（降级方案）
-        MethodInfo serviceMethod = findServiceMethod(stackTrace);
-        if (!serviceMethod.isUnknown()) {
-            return serviceMethod;
-        }
-
-        return MethodInfo.UNKNOWN;
+        return detectContext().getDaoInfo();
     }
 
     /**
@@ -123,73 +120,99 @@ public class DaoMethodDetector {
      * @return 匹配到的 Web 请求方法，若未找到则返回 {@code null}
      */
     public static Method detectWebRequest() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        List<ArgusMethod> methods = ArgusCache.getMethods();
-        for (ArgusMethod argusMethod : methods) {
-            String signature = argusMethod.getMethod().getDeclaringClass().getName() + "." + argusMethod.getMethod().getName();
-            Optional<StackTraceElement> first = Arrays.stream(stackTrace)
-                    .filter(stackTraceElement -> (stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName()).equals(signature))
-                    .findFirst();
-            if (first.isPresent()) {
-                return argusMethod.getMethod();
-            }
-        }
-        return null;
+        return detectContext().getWebMethod();
     }
 
     /**
-     * 在调用栈中查找 Mapper 或 Repository 接口方法。
+     * 一次遍历调用栈，同时检测 DAO/Service 方法和 Web 请求入口方法。
+     * <div>
+     * <ul>
+     *   <li>只获取一次调用栈，每帧的类按 {@link #classify(String)} 分类并缓存，重复出现的类不再做包名/后缀匹配和代理解析；</li>
+     *   <li>Mapper/Repository 方法和 Web 入口方法都找到后立即停止遍历；</li>
+     *   <li>Service 方法只在没有 Mapper/Repository 方法时作为降级结果。</li>
+     * </ul>
+     * </div>
      *
-     * @param stackTrace 当前线程的调用栈
-     * @return 识别到的 Mapper/Repository 方法信息，若未找到则返回 {@link MethodInfo#UNKNOWN}
+     * @return 调用上下文
      */
-    private static MethodInfo findMapperOrRepositoryMethod(StackTraceElement[] stackTrace) {
-        for (int i = 3; i < stackTrace.length; i++) {
+    public static CallContext detectContext() {
+        return detectContext(new Throwable().getStackTrace());
+    }
+
+    /**
+     * 按已获取的调用栈检测调用上下文，调用方还需要调用栈时避免重复获取
+     *
+     * @param stackTrace 调用栈，第一帧为获取调用栈的方法
+     * @return 调用上下文
+     */
+    public static CallContext detectContext(StackTraceElement[] stackTrace) {
+        MethodInfo daoInfo = null;
+        MethodInfo serviceInfo = null;
+        Method webMethod = null;
+        boolean needWeb = ArgusCache.hasWebMethod();
+
+        // 跳过当前方法帧
+        for (int i = 1; i < stackTrace.length; i++) {
             StackTraceElement element = stackTrace[i];
             String className = element.getClassName();
             String methodName = element.getMethodName();
 
-            // 跳过框架类和代理类
-            if (isExcludedClass(className)) {
-                continue;
+            if (needWeb && webMethod == null) {
+                webMethod = ArgusCache.getWebMethod(className, methodName);
             }
 
-            String targetClassName = className;
-            // 如果是代理类，尝试解析真实接口
-            if (ProxyUtil.isProxyClass(className)) {
-                targetClassName = resolveProxyInterfaceDynamic(className);
+            if (daoInfo == null) {
+                FrameClass frameClass = classify(className);
+                if (frameClass.kind == FrameClass.MAPPER) {
+                    daoInfo = new MethodInfo(frameClass.targetClassName, methodName, frameClass.simpleClassName);
+                } else if (frameClass.kind == FrameClass.SERVICE && serviceInfo == null && isBusinessMethod(methodName)) {
+                    serviceInfo = new MethodInfo(className, methodName, frameClass.simpleClassName);
+                }
             }
 
-            // 检查是否是Mapper/Repository接口
-            if (isMapperOrRepositoryInterface(targetClassName)) {
-                return new MethodInfo(targetClassName, methodName, getSimpleClassName(targetClassName));
+            if (daoInfo != null && (!needWeb || webMethod != null)) {
+                break;
             }
         }
-        return MethodInfo.UNKNOWN;
+
+        if (daoInfo == null) {
+            daoInfo = serviceInfo != null ? serviceInfo : MethodInfo.UNKNOWN;
+        }
+        return new CallContext(daoInfo, webMethod);
     }
 
     /**
-     * 在调用栈中查找 Service 层方法（作为降级方案）。
+     * 对调用栈帧的类分类，结果按类名缓存。
      *
-     * @param stackTrace 当前线程的调用栈
-     * @return 识别到的 Service 方法信息，若未找到则返回 {@link MethodInfo#UNKNOWN}
+     * @param className 类全限定名
+     * @return 分类结果
      */
-    private static MethodInfo findServiceMethod(StackTraceElement[] stackTrace) {
-        for (int i = 3; i < stackTrace.length; i++) {
-            StackTraceElement element = stackTrace[i];
-            String className = element.getClassName();
-            String methodName = element.getMethodName();
+    private static FrameClass classify(String className) {
+        FrameClass frameClass = FRAME_CLASSES.get(className);
+        if (frameClass != null) {
+            return frameClass;
+        }
 
-            if (isExcludedClass(className) || ProxyUtil.isProxyClass(className)) {
-                continue;
-            }
+        if (isExcludedClass(className)) {
+            frameClass = FrameClass.SKIP;
+        } else if (ProxyUtil.isProxyClass(className)) {
+            // 代理类：解析到 Mapper/Repository 接口才有效，不参与 Service 降级
+            String targetClassName = resolveProxyInterfaceDynamic(className);
+            frameClass = isMapperOrRepositoryInterface(targetClassName)
+                    ? new FrameClass(FrameClass.MAPPER, targetClassName)
+                    : FrameClass.SKIP;
+        } else if (isMapperOrRepositoryInterface(className)) {
+            frameClass = new FrameClass(FrameClass.MAPPER, className);
+        } else if (isServiceClass(className)) {
+            frameClass = new FrameClass(FrameClass.SERVICE, className);
+        } else {
+            frameClass = FrameClass.SKIP;
+        }
 
-            // 检查是否是Service层方法
-            if (isServiceLayerMethod(className, methodName)) {
-                return new MethodInfo(className, methodName, getSimpleClassName(className));
-            }
+        if (FRAME_CLASSES.size() < MAX_FRAME_CLASSES) {
+            FRAME_CLASSES.put(className, frameClass);
         }
-        return MethodInfo.UNKNOWN;
+        return frameClass;
     }
 
     /**
@@ -293,15 +316,31 @@ public class DaoMethodDetector {
     private static boolean isServiceLayerMethod(String className, String methodName) {
         if (className == null) return false;
 
+        return isServiceClass(className) && isBusinessMethod(methodName);
+    }
+
+    /**
+     * 判断是否为 Service 层的类。
+     *
+     * @param className 类全限定名
+     * @return {@code true} 如果是 Service 层类，否则 {@code false}
+     */
+    private static boolean isServiceClass(String className) {
         String simpleName = getSimpleClassName(className);
-        boolean isServiceClass = simpleName.endsWith("Service") ||
+        return simpleName.endsWith("Service") ||
                 simpleName.endsWith("ServiceImpl") ||
                 className.contains(".service.");
+    }
 
-        boolean isBusinessMethod = INCLUDE_METHOD_PREFIXES.stream()
-                .anyMatch(prefix -> methodName.toLowerCase().startsWith(prefix));
-
-        return isServiceClass && isBusinessMethod;
+    /**
+     * 判断方法名是否符合业务方法前缀。
+     *
+     * @param methodName 方法名
+     * @return {@code true} 如果符合，否则 {@code false}
+     */
+    private static boolean isBusinessMethod(String methodName) {
+        String lowerName = methodName.toLowerCase();
+        return INCLUDE_METHOD_PREFIXES.stream().anyMatch(lowerName::startsWith);
     }
 
     /**
@@ -343,6 +382,7 @@ public class DaoMethodDetector {
      */
     public static void addExcludePackage(String packageName) {
         EXCLUDE_PACKAGES.add(packageName.endsWith(".") ? packageName : packageName + ".");
+        FRAME_CLASSES.clear();
     }
 
     /**
@@ -495,4 +535,78 @@ public class DaoMethodDetector {
             return getFullMethodName();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 一次调用栈检测的结果：DAO 方法和 Web 请求入口方法。
+     */
+    public static class CallContext {
+
+        private final MethodInfo daoInfo;
+
+        private final Method webMethod;
+
+        /**
+         * 构造方法。
+         *
+         * @param daoInfo   DAO 方法信息
+         * @param webMethod Web 请求入口方法（可能为 null）
+         */
+        public CallContext(MethodInfo daoInfo, Method webMethod) {
+            this.daoInfo = daoInfo;
+            this.webMethod = webMethod;
+        }
+
+        /**
+         * 获取 DAO 方法信息。
+         *
+         * @return DAO 方法信息，未识别时为 {@link MethodInfo#UNKNOWN}
+         */
+        public MethodInfo getDaoInfo() {
+            return daoInfo;
+        }
+
+        /**
+         * 获取 Web 请求入口方法。
+         *
+         * @return Web 请求入口方法，未找到时为 {@code null}
+         */
+        public Method getWebMethod() {
+            return webMethod;
+        }
+    }
+
+    /**
+     * 调用栈帧类的分类结果。
+     */
+    private static class FrameClass {
+
+        /**
+         * 跳过（框架类、未识别的代理类、普通类）
+         */
+        static final int SKIP_KIND = 0;
+
+        /**
+         * Mapper/Repository 类
+         */
+        static final int MAPPER = 1;
+
+        /**
+         * Service 层类
+         */
+        static final int SERVICE = 2;
+
+        static final FrameClass SKIP = new FrameClass(SKIP_KIND, "");
+
+        final int kind;
+
+        final String targetClassName;
+
+        final String simpleClassName;
+
+        FrameClass(int kind, String targetClassName) {
+            this.kind = kind;
+            this.targetClassName = targetClassName;
+            this.simpleClassName = getSimpleClassName(targetClassName);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package githubcew.arguslog.monitor.sql;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单次请求的 SQL 汇总
+ * <div>
+ *   请求线程执行的 SQL 按指纹计数，请求结束时输出执行次数、总耗时、不同指纹数，
+ *   同一指纹在一次请求中执行次数超过阈值时判定为 N+1 查询；同时记录请求获取数据库连接的次数、等待耗时和持有耗时。
+ *   只由请求线程写入，输出前复制快照；监测方法的输出取方法开始和结束之间的差量（{@link #since}）。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class RequestSqlSummary {
+
+    /**
+     * 执行次数
+     */
+    private int count;
+
+    /**
+     * 总耗时（ns），按纳秒累计，避免大量亚毫秒 SQL 逐条取整后丢失
+     */
+    private long totalNanos;
+
+    /**
+     * 获取连接次数
+     */
+    private int connectionCount;
+
+    /**
+     * 获取连接等待总耗时（ms）
+     */
+    private long connectionWaitTime;
+
+    /**
+     * 连接持有总耗时（ms）
+     */
+    private long connectionHoldTime;
+
+    /**
+     * 按指纹统计, key: 指纹, value: 统计
+     */
+    private final Map<String, FingerprintCount> fingerprints;
+
+    /**
+     * 构造方法
+     */
+    public RequestSqlSummary() {
+        this.fingerprints = new LinkedHashMap<>(16);
+    }
+
+    /**
+     * 复制构造
+     *
+     * @param other 原汇总
+     */
+    private RequestSqlSummary(RequestSqlSummary other) {
+        this.count = other.count;
+        this.totalNanos = other.totalNanos;
+        this.connectionCount = other.connectionCount;
+        this.connectionWaitTime = other.connectionWaitTime;
+        this.connectionHoldTime = other.connectionHoldTime;
+        this.fingerprints = new LinkedHashMap<>(other.fingerprints.size());
+        other.fingerprints.forEach((fingerprint, c) -> this.fingerprints.put(fingerprint, new FingerprintCount(c)));
+    }
+
+    /**
+     * 记录一次 SQL 执行
+     *
+     * @param sql     SQL 模板
+     * @param nanos   耗时（ns）
+     * @param daoInfo DAO 方法信息
+     */
+    public void record(String sql, long nanos, DaoMethodDetector.MethodInfo daoInfo) {
+        count++;
+        totalNanos += nanos;
+        FingerprintCount fingerprintCount = fingerprints.computeIfAbsent(SqlFingerprint.of(sql), k -> new FingerprintCount());
+        fingerprintCount.count++;
+        fingerprintCount.totalNanos += nanos;
+        if (fingerprintCount.dao == null && daoInfo != null && !daoInfo.isUnknown()) {
+            fingerprintCount.dao = daoInfo.getFullMethodName();
+        }
+    }
+
+    /**
+     * 记录一次获取连接
+     *
+     * @param waitTime 等待耗时（ms）
+     */
+    public void recordConnection(long waitTime) {
+        connectionCount++;
+        connectionWaitTime += waitTime;
+    }
+
+    /**
+     * 记录一次连接归还
+     *
+     * @param holdTime 持有耗时（ms）
+     */
+    public void recordConnectionHold(long holdTime) {
+        connectionHoldTime += holdTime;
+    }
+
+    /**
+     * 复制快照
+     *
+     * @return 快照
+     */
+    public RequestSqlSummary snapshot() {
+        return new RequestSqlSummary(this);
+    }
+
+    /**
+     * 计算相对基线新增的部分（方法开始时的快照到当前）
+     *
+     * @param baseline 基线快照，为 null 时返回全部
+     * @return 差量，没有新增 SQL 和连接时返回 null
+     */
+    public RequestSqlSummary since(RequestSqlSummary baseline) {
+        RequestSqlSummary delta = new RequestSqlSummary(this);
+        if (baseline != null) {
+            delta.count -= baseline.count;
+            delta.totalNanos -= baseline.totalNanos;
+            delta.connectionCount -= baseline.connectionCount;
+            delta.connectionWaitTime -= baseline.connectionWaitTime;
+            delta.connectionHoldTime -= baseline.connectionHoldTime;
+            baseline.fingerprints.forEach((fingerprint, before) -> {
+                FingerprintCount c = delta.fingerprints.get(fingerprint);
+                if (c == null) {
+                    return;
+                }
+                c.count -= before.count;
+                c.totalNanos -= before.totalNanos;
+                if (c.count <= 0) {
+                    delta.fingerprints.remove(fingerprint);
+                }
+            });
+        }
+        return delta.count == 0 && delta.connectionCount == 0 ? null : delta;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 总耗时（ms）
+     *
+     * @return 耗时
+     */
+    public long getTotalTime() {
+        return totalNanos / 1_000_000;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public long getConnectionWaitTime() {
+        return connectionWaitTime;
+    }
+
+    public long getConnectionHoldTime() {
+        return connectionHoldTime;
+    }
+
+    /**
+     * 不同指纹数
+     *
+     * @return 数量
+     */
+    public int getDistinctCount() {
+        return fingerprints.size();
+    }
+
+    /**
+     * 获取 N+1 查询（执行次数超过阈值的指纹），按次数倒序
+     *
+     * @param threshold 阈值
+     * @return 指纹和统计
+     */
+    public List<Map.Entry<String, FingerprintCount>> getNPlusOne(int threshold) {
+        List<Map.Entry<String, FingerprintCount>> result = new ArrayList<>();
+        for (Map.Entry<String, FingerprintCount> entry : fingerprints.entrySet()) {
+            if (entry.getValue().count > threshold) {
+                result.add(entry);
+            }
+        }
+        result.sort((a, b) -> Integer.compare(b.getValue().count, a.getValue().count));
+        return result;
+    }
+
+    /**
+     * 单个指纹的统计
+     */
+    public static class FingerprintCount {
+
+        private int count;
+
+        private long totalNanos;
+
+        private String dao;
+
+        FingerprintCount() {
+        }
+
+        FingerprintCount(FingerprintCount other) {
+            this.count = other.count;
+            this.totalNanos = other.totalNanos;
+            this.dao = other.dao;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * 总耗时（ms）
+         *
+         * @return 耗时
+         */
+        public long getTotalTime() {
+            return totalNanos / 1_000_000;
+        }
+
+        /**
+         * 首次执行该 SQL 的 DAO 方法
+         *
+         * @return DAO 方法，未识别时为 null
+         */
+        public String getDao() {
+            return dao;
+        }
+    }
+}
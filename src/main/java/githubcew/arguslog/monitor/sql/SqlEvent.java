@@ -0,0 +1,212 @@
+package githubcew.arguslog.monitor.sql;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQL 执行事件
+ * <div>
+ *   JDBC 线程执行完 SQL 后只采集 SQL 模板、参数快照、耗时和调用上下文，封装为事件交给异步线程；
+ *   按用户条件过滤、参数绑定、格式化和推送都在异步线程完成，不占用业务线程。
+ *   批量执行（{@code executeBatch}）合并为一个事件，记录批量条数和前几条参数（或 SQL）样本。
+ *   查询事件在结果集关闭时由 JDBC 线程补充读取耗时和行数（{@link #fetched}）后再发布，发布后不再修改。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class SqlEvent {
+
+    /**
+     * SQL 模板（含 ? 占位符）
+     */
+    private final String sql;
+
+    /**
+     * 参数快照
+     */
+    private final SqlParameterBuffer parameters;
+
+    /**
+     * 执行耗时（ms）
+     */
+    private final long time;
+
+    /**
+     * Web 请求入口方法（可能为 null）
+     */
+    private final Method webMethod;
+
+    /**
+     * DAO 方法信息
+     */
+    private final DaoMethodDetector.MethodInfo daoInfo;
+
+    /**
+     * 执行异常（查询含读取结果集时的异常），成功时为 null
+     */
+    private Throwable error;
+
+    /**
+     * 是否为查询（有结果集）
+     */
+    private boolean query;
+
+    /**
+     * 结果集读取耗时（ms）
+     */
+    private long fetchTime;
+
+    /**
+     * 结果集读取行数
+     */
+    private long rows;
+
+    /**
+     * 批量执行的条数，非批量为 0
+     */
+    private final int batchSize;
+
+    /**
+     * 批量执行的参数样本（PreparedStatement 批量，前几条）
+     */
+    private final List<SqlParameterBuffer> batchParameters;
+
+    /**
+     * 批量执行的 SQL 样本（Statement 批量，前几条）
+     */
+    private final List<String> batchSqls;
+
+    /**
+     * 构造方法
+     *
+     * @param sql        SQL 模板
+     * @param parameters 当前参数（复制为快照，之后语句复用不影响事件）
+     * @param time       耗时（ms）
+     * @param webMethod  Web 请求入口方法
+     * @param daoInfo    DAO 方法信息
+     * @param error      执行异常
+     */
+    public SqlEvent(String sql, SqlParameterBuffer parameters, long time,
+                    Method webMethod, DaoMethodDetector.MethodInfo daoInfo, Throwable error) {
+        this(sql, parameters, time, webMethod, daoInfo, error, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * 构造方法（批量执行）
+     *
+     * @param sql             SQL 模板（Statement 批量为第一条 SQL）
+     * @param parameters      当前参数
+     * @param time            耗时（ms）
+     * @param webMethod       Web 请求入口方法
+     * @param daoInfo         DAO 方法信息
+     * @param error           执行异常
+     * @param batchSize       批量条数
+     * @param batchParameters 批量参数样本（已是快照）
+     * @param batchSqls       批量 SQL 样本（已是快照）
+     */
+    public SqlEvent(String sql, SqlParameterBuffer parameters, long time,
+                    Method webMethod, DaoMethodDetector.MethodInfo daoInfo, Throwable error,
+                    int batchSize, List<SqlParameterBuffer> batchParameters, List<String> batchSqls) {
+        this.sql = sql;
+        this.parameters = parameters.snapshot();
+        this.time = time;
+        this.webMethod = webMethod;
+        this.daoInfo = daoInfo;
+        this.error = error;
+        this.batchSize = batchSize;
+        this.batchParameters = batchParameters;
+        this.batchSqls = batchSqls;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public SqlParameterBuffer getParameters() {
+        return parameters;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Method getWebMethod() {
+        return webMethod;
+    }
+
+    public DaoMethodDetector.MethodInfo getDaoInfo() {
+        return daoInfo;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * 补充结果集读取信息（结果集关闭时调用）
+     *
+     * @param fetchTime 读取耗时（ms）
+     * @param rows      读取行数
+     * @param error     读取异常，成功时为 null
+     */
+    public void fetched(long fetchTime, long rows, Throwable error) {
+        this.query = true;
+        this.fetchTime = fetchTime;
+        this.rows = rows;
+        if (this.error == null) {
+            this.error = error;
+        }
+    }
+
+    public boolean isQuery() {
+        return query;
+    }
+
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 总耗时（执行 + 读取结果集）
+     *
+     * @return 耗时（ms）
+     */
+    public long getTotalTime() {
+        return time + fetchTime;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public List<SqlParameterBuffer> getBatchParameters() {
+        return batchParameters;
+    }
+
+    public List<String> getBatchSqls() {
+        return batchSqls;
+    }
+
+    /**
+     * 是否批量执行
+     *
+     * @return 结果
+     */
+    public boolean isBatch() {
+        return batchSize > 0;
+    }
+
+    /**
+     * 是否执行出错
+     *
+     * @return 结果
+     */
+    public boolean isError() {
+        return error != null;
+    }
+}
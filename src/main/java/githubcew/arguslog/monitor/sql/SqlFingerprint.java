@@ -0,0 +1,247 @@
+package githubcew.arguslog.monitor.sql;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL 指纹
+ * <div>
+ *   将 SQL 归一化为指纹，同一类 SQL 得到相同的指纹，用于聚合统计：
+ *   <ul>
+ *     <li>字符串、数字字面量替换为 {@code ?}</li>
+ *     <li>只含占位符的列表（如 {@code IN (?, ?, ?)}）合并为 {@code (?+)}，连续的多组值（如批量 {@code VALUES}）合并为一组</li>
+ *     <li>去掉注释，词之间的连续空白合并为一个空格，运算符两侧和左括号前后的空白去掉，关键字和标识符转小写（引号内的标识符保持原样）</li>
+ *   </ul>
+ *   SQL 模板通常固定，指纹按原始 SQL 缓存，只在首次出现时计算。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class SqlFingerprint {
+
+    /**
+     * 指纹缓存最大数量
+     */
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    /**
+     * 列表合并后的占位
+     */
+    private static final String LIST = "(?+)";
+
+    /**
+     * 指纹缓存, key: 原始 SQL, value: 指纹
+     */
+    private static final Map<String, String> FINGERPRINTS = new ConcurrentHashMap<>(256);
+
+    private SqlFingerprint() {
+    }
+
+    /**
+     * 获取 SQL 指纹
+     *
+     * @param sql SQL
+     * @return 指纹
+     */
+    public static String of(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String fingerprint = FINGERPRINTS.get(sql);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        fingerprint = collapseLists(normalize(sql));
+        if (FINGERPRINTS.size() < MAX_CACHE_SIZE) {
+            FINGERPRINTS.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 替换字面量、去掉注释、合并空白
+     *
+     * @param sql SQL
+     * @return 归一化后的 SQL
+     */
+    private static String normalize(String sql) {
+        int length = sql.length();
+        StringBuilder out = new StringBuilder(length);
+        boolean space = false;
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+                space = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space = true;
+                continue;
+            }
+
+            // 只保留词之间（含右括号与词之间）的空白，运算符和左括号两侧的空白去掉（a = ? 与 a=? 指纹相同）
+            if (space && out.length() > 0 && isWordChar(c)
+                    && (isWordChar(out.charAt(out.length() - 1)) || out.charAt(out.length() - 1) == ')')) {
+                out.append(' ');
+            }
+            space = false;
+
+            if (c == '\'') {
+                i = skipString(sql, i);
+                out.append('?');
+            } else if (c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isWordEnd(out)) {
+                i++;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else {
+                out.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 合并只含占位符的列表
+     *
+     * @param sql 归一化后的 SQL
+     * @return 指纹
+     */
+    private static String collapseLists(String sql) {
+        if (sql.indexOf('(') < 0) {
+            return sql;
+        }
+        int length = sql.length();
+        StringBuilder out = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            int end = c == '(' ? listEnd(sql, i) : -1;
+            if (end < 0) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            out.append(LIST);
+            i = end;
+            // 连续的多组值合并为一组
+            int next;
+            while ((next = nextList(sql, i)) > 0) {
+                i = next;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 判断从 start 开始是否为只含占位符的列表
+     *
+     * @param sql   SQL
+     * @param start 左括号位置
+     * @return 列表结束位置（右括号之后），不是列表返回 -1
+     */
+    private static int listEnd(String sql, int start) {
+        int length = sql.length();
+        boolean expectValue = true;
+        for (int i = start + 1; i < length; i++) {
+            char c = sql.charAt(i);
+            if (expectValue && c == '?') {
+                expectValue = false;
+            } else if (!expectValue && c == ',') {
+                expectValue = true;
+            } else if (!expectValue && c == ')') {
+                return i + 1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 判断 start 之后是否紧跟 {@code , (?, ...)}
+     *
+     * @param sql   SQL
+     * @param start 位置
+     * @return 下一组列表结束位置，没有返回 -1
+     */
+    private static int nextList(String sql, int start) {
+        int i = start;
+        int length = sql.length();
+        if (i >= length || sql.charAt(i) != ',') {
+            return -1;
+        }
+        i++;
+        return i < length && sql.charAt(i) == '(' ? listEnd(sql, i) : -1;
+    }
+
+    /**
+     * 跳过字符串字面量
+     *
+     * @param sql   SQL
+     * @param start 开始引号位置
+     * @return 结束引号之后的位置
+     */
+    private static int skipString(String sql, int start) {
+        int length = sql.length();
+        int i = start + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '\'') {
+                if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    /**
+     * 输出末尾是否为标识符（数字是标识符的一部分，如 t1）
+     *
+     * @param out 输出
+     * @return 结果
+     */
+    private static boolean isWordEnd(StringBuilder out) {
+        if (out.length() == 0) {
+            return false;
+        }
+        char last = out.charAt(out.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    /**
+     * 是否为词的字符（词之间的空白需要保留）
+     *
+     * @param c 字符
+     * @return 结果
+     */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '?' || c == '*'
+                || c == '\'' || c == '"' || c == '`';
+    }
+}
@@ -0,0 +1,402 @@
+package githubcew.arguslog.monitor.sql;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLXML;
+import java.util.Arrays;
+
+/**
+ * SQL 参数缓冲
+ * <div>
+ *   按参数索引（从1开始）寻址的可扩容数组，记录 {@code PreparedStatement} 当前设置的参数：
+ *   <ul>
+ *     <li>整数、浮点数、布尔值以类型标记 + {@code long} 原样保存，不装箱，格式化时才转为对象</li>
+ *     <li>大字段不保存原对象：超过 {@link #PREVIEW_CHARS} 的字符串只保存前缀，超过 {@link #PREVIEW_BYTES} 的 byte[] 只保存前缀字节，
+ *     流和 LOB（{@link InputStream}、{@link Reader}、{@link Blob}、{@link Clob}、{@link SQLXML}）只保存类型和长度，
+ *     避免 Statement 缓存或复用期间持有大对象</li>
+ *     <li>与 JDBC 一致，参数在再次设置、{@code clearParameters} 或关闭 Statement 前保留，重复执行时不必重新记录；
+ *     执行后只通过 {@link #releasePreviews()} 释放大字段前缀，数组复用</li>
+ *   </ul>
+ *   Statement 不会被多线程并发使用，缓冲不加锁；交给异步线程前通过 {@link #snapshot()} 复制。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class SqlParameterBuffer {
+
+    /**
+     * 空参数（Statement 没有参数）
+     */
+    public static final SqlParameterBuffer EMPTY = new SqlParameterBuffer(0);
+
+    /**
+     * 字符串参数保存的最大字符数
+     */
+    public static final int PREVIEW_CHARS = 1024;
+
+    /**
+     * byte[] 参数保存的最大字节数
+     */
+    public static final int PREVIEW_BYTES = 64;
+
+    /**
+     * 初始容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final byte UNSET = 0;
+
+    private static final byte NULL = 1;
+
+    private static final byte LONG = 2;
+
+    private static final byte DOUBLE = 3;
+
+    private static final byte FLOAT = 4;
+
+    private static final byte BOOLEAN = 5;
+
+    private static final byte OBJECT = 6;
+
+    /**
+     * 参数类型, 下标: 参数索引
+     */
+    private byte[] types;
+
+    /**
+     * 基本类型参数值（浮点数为 bit 值）
+     */
+    private long[] primitives;
+
+    /**
+     * 对象参数值
+     */
+    private Object[] objects;
+
+    /**
+     * 已设置的最大参数索引
+     */
+    private int maxIndex;
+
+    /**
+     * 是否有带前缀的大字段预览
+     */
+    private boolean hasPreviewHead;
+
+    /**
+     * 构造方法
+     */
+    public SqlParameterBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    private SqlParameterBuffer(int capacity) {
+        this.types = new byte[capacity + 1];
+        this.primitives = new long[capacity + 1];
+        this.objects = new Object[capacity + 1];
+    }
+
+    /**
+     * 设置 NULL
+     *
+     * @param index 参数索引
+     */
+    public void setNull(int index) {
+        set(index, NULL, 0, null);
+    }
+
+    /**
+     * 设置整数（byte、short、int、long）
+     *
+     * @param index 参数索引
+     * @param value 值
+     */
+    public void setLong(int index, long value) {
+        set(index, LONG, value, null);
+    }
+
+    /**
+     * 设置 double
+     *
+     * @param index 参数索引
+     * @param value 值
+     */
+    public void setDouble(int index, double value) {
+        set(index, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * 设置 float
+     *
+     * @param index 参数索引
+     * @param value 值
+     */
+    public void setFloat(int index, float value) {
+        set(index, FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    /**
+     * 设置布尔值
+     *
+     * @param index 参数索引
+     * @param value 值
+     */
+    public void setBoolean(int index, boolean value) {
+        set(index, BOOLEAN, value ? 1 : 0, null);
+    }
+
+    /**
+     * 设置对象，大字段转为预览
+     *
+     * @param index 参数索引
+     * @param value 值
+     */
+    public void setObject(int index, Object value) {
+        if (value == null) {
+            setNull(index);
+            return;
+        }
+        set(index, OBJECT, 0, previewOf(value));
+    }
+
+    /**
+     * 设置流参数（只保存类型和长度）
+     *
+     * @param index  参数索引
+     * @param stream 流
+     * @param length 声明的长度，未知时为 -1
+     */
+    public void setStream(int index, Object stream, long length) {
+        if (stream == null) {
+            setNull(index);
+            return;
+        }
+        set(index, OBJECT, 0, new Preview(typeOf(stream), length, null));
+    }
+
+    /**
+     * 参数是否已设置
+     *
+     * @param index 参数索引
+     * @return 结果
+     */
+    public boolean isSet(int index) {
+        return index > 0 && index <= maxIndex && types[index] != UNSET;
+    }
+
+    /**
+     * 获取参数值（基本类型装箱，大字段为 {@link Preview}）
+     *
+     * @param index 参数索引
+     * @return 参数值，未设置或 NULL 返回 null
+     */
+    public Object get(int index) {
+        if (!isSet(index)) {
+            return null;
+        }
+        switch (types[index]) {
+            case LONG:
+                return primitives[index];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitives[index]);
+            case BOOLEAN:
+                return primitives[index] != 0;
+            case OBJECT:
+                return objects[index];
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 是否没有设置任何参数
+     *
+     * @return 结果
+     */
+    public boolean isEmpty() {
+        return maxIndex == 0;
+    }
+
+    /**
+     * 参数数量（已设置的最大参数索引）
+     *
+     * @return 数量
+     */
+    public int size() {
+        return maxIndex;
+    }
+
+    /**
+     * 重置，释放对象参数的引用，数组保留复用
+     */
+    public void clear() {
+        if (maxIndex == 0) {
+            return;
+        }
+        Arrays.fill(types, 1, maxIndex + 1, UNSET);
+        Arrays.fill(objects, 1, maxIndex + 1, null);
+        maxIndex = 0;
+        hasPreviewHead = false;
+    }
+
+    /**
+     * 释放大字段预览的前缀（快照已交给事件），只保留类型和长度，参数仍视为已设置
+     */
+    public void releasePreviews() {
+        if (!hasPreviewHead) {
+            return;
+        }
+        for (int i = 1; i <= maxIndex; i++) {
+            if (objects[i] instanceof Preview) {
+                Preview preview = (Preview) objects[i];
+                if (preview.head != null) {
+                    objects[i] = new Preview(preview.type, preview.length, null);
+                }
+            }
+        }
+        hasPreviewHead = false;
+    }
+
+    /**
+     * 复制快照（容量与已设置的参数数一致）
+     *
+     * @return 快照，没有参数时返回 {@link #EMPTY}
+     */
+    public SqlParameterBuffer snapshot() {
+        if (maxIndex == 0) {
+            return EMPTY;
+        }
+        SqlParameterBuffer snapshot = new SqlParameterBuffer(maxIndex);
+        System.arraycopy(types, 1, snapshot.types, 1, maxIndex);
+        System.arraycopy(primitives, 1, snapshot.primitives, 1, maxIndex);
+        System.arraycopy(objects, 1, snapshot.objects, 1, maxIndex);
+        snapshot.maxIndex = maxIndex;
+        return snapshot;
+    }
+
+    /**
+     * 设置参数
+     *
+     * @param index     参数索引
+     * @param type      类型
+     * @param primitive 基本类型值
+     * @param object    对象值
+     */
+    private void set(int index, byte type, long primitive, Object object) {
+        if (index < 1) {
+            return;
+        }
+        if (index >= types.length) {
+            int capacity = Math.max(index + 1, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        types[index] = type;
+        primitives[index] = primitive;
+        objects[index] = object;
+        if (object instanceof Preview && ((Preview) object).head != null) {
+            hasPreviewHead = true;
+        }
+        if (index > maxIndex) {
+            maxIndex = index;
+        }
+    }
+
+    /**
+     * 大字段转为预览，其他对象原样返回
+     *
+     * @param value 值
+     * @return 值或预览
+     */
+    private static Object previewOf(Object value) {
+        if (value instanceof String) {
+            String text = (String) value;
+            return text.length() > PREVIEW_CHARS
+                    ? new Preview("String", text.length(), text.substring(0, PREVIEW_CHARS)) : text;
+        }
+        if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            return bytes.length > PREVIEW_BYTES
+                    ? new Preview("byte[]", bytes.length, Arrays.copyOf(bytes, PREVIEW_BYTES)) : bytes;
+        }
+        if (value instanceof InputStream || value instanceof Reader
+                || value instanceof Blob || value instanceof Clob || value instanceof SQLXML) {
+            // 读取 LOB 长度可能访问数据库，长度记为未知
+            return new Preview(typeOf(value), -1, null);
+        }
+        return value;
+    }
+
+    /**
+     * 获取大字段类型名
+     *
+     * @param value 值
+     * @return 类型名
+     */
+    private static String typeOf(Object value) {
+        if (value instanceof InputStream) {
+            return "InputStream";
+        }
+        if (value instanceof Reader) {
+            return "Reader";
+        }
+        if (value instanceof NClob) {
+            return "NClob";
+        }
+        if (value instanceof Clob) {
+            return "Clob";
+        }
+        if (value instanceof Blob) {
+            return "Blob";
+        }
+        if (value instanceof SQLXML) {
+            return "SQLXML";
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    /**
+     * 大字段预览
+     */
+    public static class Preview {
+
+        /**
+         * 类型名
+         */
+        private final String type;
+
+        /**
+         * 长度（字符串为字符数，其他为字节数），未知时为 -1
+         */
+        private final long length;
+
+        /**
+         * 前缀（字符串为 String，byte[] 为 byte[]），流和 LOB 为 null
+         */
+        private final Object head;
+
+        Preview(String type, long length, Object head) {
+            this.type = type;
+            this.length = length;
+            this.head = head;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public Object getHead() {
+            return head;
+        }
+    }
+}
@@ -83,6 +83,7 @@ public class SqlParameterFormatter {
      *   <li>数字类型 → 直接输出（保留精度，去除无意义尾零）</li>
      *   <li>日期时间 → 按配置格式化并单引号包裹</li>
      *   <li>byte[] → BLOB 表示（可配置是否显示内容）</li>
+ *   <li>大字段预览（{@link SqlParameterBuffer.Preview}）→ 前缀加长度，流和 LOB 显示类型和长度</li>
      *   <li>数组/集合 → 转换为 SQL 元组形式 {@code (val1, val2, ...)}</li>
      *   <li>枚举 → 使用 {@code name()} 并单引号包裹</li>
      *   <li>其他类型 → 尝试解析为数字，否则转为字符串并转义</li>
@@ -138,6 +139,11 @@ public class SqlParameterFormatter {
             return formatBlobParam((byte[]) param);
         }
 
+        // 大字段预览
+        if (paramType == SqlParameterBuffer.Preview.class) {
+            return formatPreviewParam((SqlParameterBuffer.Preview) param);
+        }
+
         // 数组和集合
         if (paramType.isArray()) {
             return formatArrayParam(param);
@@ -262,6 +268,33 @@ public class SqlParameterFormatter {
         }
     }
 
+    /**
+     * 格式化大字段预览。
+     * <ul>
+     *   <li>字符串 → 前缀加字符数，如 {@code 'abc...'(20000 chars)}</li>
+     *   <li>byte[] → 同 BLOB 表示，长度为原始字节数</li>
+     *   <li>流和 LOB → 类型加长度，如 {@code <InputStream>(1024)}，长度未知时只显示类型</li>
+     * </ul>
+     *
+     * @param preview 预览
+     * @return 格式化后的字符串
+     */
+    private String formatPreviewParam(SqlParameterBuffer.Preview preview) {
+        Object head = preview.getHead();
+        if (head instanceof String) {
+            return "'" + escapeSql((String) head) + "...'(" + preview.getLength() + " chars)";
+        }
+        if (head instanceof byte[]) {
+            if (!showBlobContent) {
+                return "<BLOB>(" + preview.getLength() + " bytes)";
+            }
+            byte[] bytes = (byte[]) head;
+            return "x'" + bytesToHex(Arrays.copyOf(bytes, Math.min(bytes.length, maxBlobPreviewLength)))
+                    + "...' (" + preview.getLength() + " bytes)";
+        }
+        return "<" + preview.getType() + ">" + (preview.getLength() >= 0 ? "(" + preview.getLength() + ")" : "");
+    }
+
     /**
      * 格式化 Java 数组参数。
      * <p>转换为 SQL 元组形式：{@code (val1, val2, ...)}，空数组返回 {@code NULL}。</p>
@@ -0,0 +1,208 @@
+package githubcew.arguslog.monitor.sql;
+
+/**
+ * SQL 占位符绑定器，将 SQL 模板中的 {@code ?} 占位符替换为格式化后的参数值。
+ * <div>
+ * 单次遍历 SQL，按词法跳过不会出现占位符的区域：
+ * <ul>
+ *   <li>单引号字符串（支持 {@code ''} 和反斜杠转义）</li>
+ *   <li>双引号、反引号标识符</li>
+ *   <li>{@code --} 行注释和块注释</li>
+ *   <li>PostgreSQL 美元符引用字符串（{@code $$...$$}、{@code $tag$...$tag$}）</li>
+ *   <li>PostgreSQL JSON 运算符 {@code ?|}、{@code ?&}，以及 JDBC 转义 {@code ??}（输出为 {@code ?}）</li>
+ * </ul>
+ * 第 N 个占位符绑定索引为 N 的参数，未设置的参数保留 {@code ?}；参数值直接追加，不做正则替换。
+ * 结果写入预分配容量的 {@link StringBuilder}，超过最大长度时截断。
+ * </div>
+ *
+ * <h2>线程安全性</h2>
+ * <p>本类无状态，是线程安全的。</p>
+ *
+ * @author chenenwei
+ */
+public class SqlPlaceholderBinder {
+
+    /**
+     * 截断后追加的提示
+     */
+    private static final String TRUNCATED = " ...(truncated)";
+
+    private SqlPlaceholderBinder() {
+    }
+
+    /**
+     * 绑定参数
+     *
+     * @param sql       SQL 模板（含 ? 占位符）
+     * @param params    参数缓冲（索引从1开始）
+     * @param formatter 参数格式化器
+     * @param maxLength 结果最大长度，小于1不限制
+     * @return 绑定后的 SQL
+     */
+    public static String bind(String sql, SqlParameterBuffer params, SqlParameterFormatter formatter, int maxLength) {
+        if (sql == null) {
+            return null;
+        }
+        int limit = maxLength < 1 ? Integer.MAX_VALUE : maxLength;
+        if (params.isEmpty()) {
+            return sql.length() > limit ? sql.substring(0, limit) + TRUNCATED : sql;
+        }
+
+        int length = sql.length();
+        StringBuilder out = new StringBuilder((int) Math.min((long) length + params.size() * 16L, limit));
+        int index = 0;
+        int i = 0;
+        // 已复制到 out 的位置
+        int copied = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            switch (c) {
+                case '\'':
+                    i = skipQuoted(sql, i, '\'', true);
+                    break;
+                case '"':
+                case '`':
+                    i = skipQuoted(sql, i, c, false);
+                    break;
+                case '-':
+                    if (i + 1 < length && sql.charAt(i + 1) == '-') {
+                        int end = sql.indexOf('\n', i + 2);
+                        i = end < 0 ? length : end + 1;
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '/':
+                    if (i + 1 < length && sql.charAt(i + 1) == '*') {
+                        int end = sql.indexOf("*/", i + 2);
+                        i = end < 0 ? length : end + 2;
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '$':
+                    i = skipDollarQuoted(sql, i);
+                    break;
+                case '?':
+                    char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+                    if (next == '|' || next == '&') {
+                        // PostgreSQL JSON 运算符
+                        i += 2;
+                        break;
+                    }
+                    if (next == '?') {
+                        // JDBC 转义的 ?，输出一个 ?
+                        if (!append(out, sql, copied, i + 1, limit)) {
+                            return out.append(TRUNCATED).toString();
+                        }
+                        i += 2;
+                        copied = i;
+                        break;
+                    }
+                    index++;
+                    if (params.isSet(index)) {
+                        if (!append(out, sql, copied, i, limit)
+                                || !append(out, formatter.formatParameter(params.get(index)), limit)) {
+                            return out.append(TRUNCATED).toString();
+                        }
+                        copied = i + 1;
+                    }
+                    i++;
+                    break;
+                default:
+                    i++;
+            }
+        }
+        if (!append(out, sql, copied, length, limit)) {
+            return out.append(TRUNCATED).toString();
+        }
+        return out.toString();
+    }
+
+    /**
+     * 跳过引号包裹的内容
+     *
+     * @param sql       SQL
+     * @param start     开始引号位置
+     * @param quote     引号
+     * @param backslash 是否支持反斜杠转义
+     * @return 结束引号之后的位置
+     */
+    private static int skipQuoted(String sql, int start, char quote, boolean backslash) {
+        int length = sql.length();
+        int i = start + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (backslash && c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                // 连续两个引号是转义
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    /**
+     * 跳过 PostgreSQL 美元符引用字符串，不是引用字符串时只跳过 {@code $}
+     *
+     * @param sql   SQL
+     * @param start {@code $} 位置
+     * @return 引用字符串之后的位置
+     */
+    private static int skipDollarQuoted(String sql, int start) {
+        int length = sql.length();
+        int i = start + 1;
+        if (i < length && Character.isJavaIdentifierStart(sql.charAt(i)) && sql.charAt(i) != '$') {
+            i++;
+            while (i < length && Character.isJavaIdentifierPart(sql.charAt(i)) && sql.charAt(i) != '$') {
+                i++;
+            }
+        }
+        if (i >= length || sql.charAt(i) != '$') {
+            return start + 1;
+        }
+        String tag = sql.substring(start, i + 1);
+        int end = sql.indexOf(tag, i + 1);
+        return end < 0 ? length : end + tag.length();
+    }
+
+    /**
+     * 追加 SQL 片段
+     *
+     * @param out   输出
+     * @param sql   SQL
+     * @param from  开始位置
+     * @param to    结束位置（不含）
+     * @param limit 最大长度
+     * @return 未超出最大长度返回 true
+     */
+    private static boolean append(StringBuilder out, String sql, int from, int to, int limit) {
+        int remaining = limit - out.length();
+        if (to - from > remaining) {
+            out.append(sql, from, from + Math.max(remaining, 0));
+            return false;
+        }
+        out.append(sql, from, to);
+        return true;
+    }
+
+    /**
+     * 追加参数值
+     *
+     * @param out   输出
+     * @param value 参数值
+     * @param limit 最大长度
+     * @return 未超出最大长度返回 true
+     */
+    private static boolean append(StringBuilder out, String value, int limit) {
+        return append(out, value, 0, value.length(), limit);
+    }
+}
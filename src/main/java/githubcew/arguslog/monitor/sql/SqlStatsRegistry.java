@@ -0,0 +1,352 @@
+package githubcew.arguslog.monitor.sql;
+
+import githubcew.arguslog.monitor.LatencyHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL 统计
+ * <div>
+ *   按 SQL 指纹聚合执行次数、执行耗时分布、结果集读取耗时、错误数、影响（读取）行数和调用的 DAO 方法。
+ *   统计按分钟分片（环形保存最近 {@link #SLOT_COUNT} 个分片），查询时合并窗口内的分片，实现滑动窗口。
+ *   记录无锁：分片内按指纹的统计项使用原子计数和 {@link LatencyHistogram}，开启后适合在压测期间常驻。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class SqlStatsRegistry {
+
+    /**
+     * 分片时长（ms）
+     */
+    public static final long SLOT_MS = 60 * 1000L;
+
+    /**
+     * 分片数量，即最大统计窗口（分钟）
+     */
+    public static final int SLOT_COUNT = 10;
+
+    /**
+     * 耗时直方图可追踪最大值（µs）
+     */
+    private static final long HISTOGRAM_MAX_US = 60 * 60 * 1000_000L;
+
+    /**
+     * 每个指纹记录的 DAO 方法最大数量
+     */
+    private static final int MAX_DAO_METHODS = 5;
+
+    /**
+     * 排序方式
+     */
+    public static final List<String> ORDERS = Collections.unmodifiableList(
+            Arrays.asList("total", "avg", "p99", "max", "count", "errors", "rows", "fetch"));
+
+    /**
+     * 分片
+     */
+    private static final AtomicReferenceArray<Slot> SLOTS = new AtomicReferenceArray<>(SLOT_COUNT);
+
+    /**
+     * 超过指纹数量上限未记录的次数
+     */
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    /**
+     * 是否正在统计
+     */
+    private static volatile boolean recording;
+
+    /**
+     * 每个分片的最大指纹数量
+     */
+    private static volatile int maxFingerprints = 1000;
+
+    private SqlStatsRegistry() {
+    }
+
+    /**
+     * 开始统计
+     *
+     * @param maxFingerprints 每个分片的最大指纹数量
+     */
+    public static void start(int maxFingerprints) {
+        SqlStatsRegistry.maxFingerprints = Math.max(maxFingerprints, 1);
+        recording = true;
+    }
+
+    /**
+     * 停止统计并清空数据
+     */
+    public static void stop() {
+        recording = false;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            SLOTS.set(i, null);
+        }
+        DROPPED.set(0);
+    }
+
+    /**
+     * 是否正在统计
+     *
+     * @return 结果
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * 超过指纹数量上限未记录的次数
+     *
+     * @return 次数
+     */
+    public static long droppedCount() {
+        return DROPPED.get();
+    }
+
+    /**
+     * 记录一次 SQL 执行
+     *
+     * @param sql     SQL 模板
+     * @param execNanos  执行耗时（ns）
+     * @param fetchNanos 结果集读取耗时（ns），非查询为 0
+     * @param daoInfo   DAO 方法信息
+     * @param error     是否出错
+     * @param rows      影响行数（查询为读取行数），未知时小于0
+     */
+    public static void record(String sql, long execNanos, long fetchNanos, DaoMethodDetector.MethodInfo daoInfo, boolean error, long rows) {
+        if (!recording) {
+            return;
+        }
+        String fingerprint = SqlFingerprint.of(sql);
+        Slot slot = currentSlot(System.currentTimeMillis() / SLOT_MS);
+        SqlStat stat = slot.stats.get(fingerprint);
+        if (stat == null) {
+            if (slot.stats.size() >= maxFingerprints) {
+                DROPPED.incrementAndGet();
+                return;
+            }
+            stat = slot.stats.computeIfAbsent(fingerprint, k -> new SqlStat());
+        }
+        stat.record(execNanos, fetchNanos, daoInfo, error, rows);
+    }
+
+    /**
+     * 获取窗口内的统计排行
+     *
+     * @param top    数量
+     * @param order  排序方式，见 {@link #ORDERS}
+     * @param window 窗口（ms）
+     * @return 排行
+     */
+    public static List<Summary> top(int top, String order, long window) {
+        long epoch = System.currentTimeMillis() / SLOT_MS;
+        long slots = Math.min(Math.max((window + SLOT_MS - 1) / SLOT_MS, 1), SLOT_COUNT);
+
+        Map<String, Summary> merged = new HashMap<>();
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            Slot slot = SLOTS.get(i);
+            if (slot == null || slot.epoch <= epoch - slots || slot.epoch > epoch) {
+                continue;
+            }
+            slot.stats.forEach((fingerprint, stat) ->
+                    merged.computeIfAbsent(fingerprint, Summary::new).merge(stat));
+        }
+
+        List<Summary> summaries = new ArrayList<>(merged.values());
+        summaries.sort(comparatorOf(order).reversed());
+        return summaries.size() > top ? new ArrayList<>(summaries.subList(0, top)) : summaries;
+    }
+
+    /**
+     * 获取当前分片，分片过期时替换为新分片
+     *
+     * @param epoch 当前分片序号
+     * @return 分片
+     */
+    private static Slot currentSlot(long epoch) {
+        int index = (int) (epoch % SLOT_COUNT);
+        while (true) {
+            Slot slot = SLOTS.get(index);
+            if (slot != null && slot.epoch == epoch) {
+                return slot;
+            }
+            Slot fresh = new Slot(epoch);
+            if (SLOTS.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * 获取排序比较器
+     *
+     * @param order 排序方式
+     * @return 比较器
+     */
+    private static Comparator<Summary> comparatorOf(String order) {
+        switch (order) {
+            case "avg":
+                return Comparator.comparingDouble(s -> s.histogram.getAvg());
+            case "p99":
+                return Comparator.comparingLong(s -> s.histogram.percentile(0.99));
+            case "max":
+                return Comparator.comparingLong(s -> s.histogram.getMax());
+            case "count":
+                return Comparator.comparingLong(s -> s.histogram.getCount());
+            case "errors":
+                return Comparator.comparingLong(s -> s.errors);
+            case "rows":
+                return Comparator.comparingLong(s -> s.rows);
+            case "fetch":
+                return Comparator.comparingLong(s -> s.fetchNanos);
+            default:
+                return Comparator.comparingLong(s -> s.histogram.getTotal());
+        }
+    }
+
+    /**
+     * 分片
+     */
+    private static class Slot {
+
+        private final long epoch;
+
+        private final Map<String, SqlStat> stats = new ConcurrentHashMap<>(64);
+
+        Slot(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * 单个指纹在一个分片内的统计
+     */
+    private static class SqlStat {
+
+        /**
+         * 执行耗时（µs），亚毫秒的执行不会取整为 0
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram(HISTOGRAM_MAX_US);
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        /**
+         * 结果集读取耗时（ns），按纳秒累计，避免大量亚毫秒读取逐条取整后丢失
+         */
+        private final LongAdder fetchNanos = new LongAdder();
+
+        private final Set<String> daoMethods = ConcurrentHashMap.newKeySet(MAX_DAO_METHODS);
+
+        void record(long execNanos, long fetchNanos, DaoMethodDetector.MethodInfo daoInfo, boolean error, long rows) {
+            histogram.record(execNanos / 1000);
+            if (fetchNanos > 0) {
+                this.fetchNanos.add(fetchNanos);
+            }
+            if (error) {
+                errors.increment();
+            }
+            if (rows > 0) {
+                this.rows.add(rows);
+            }
+            if (daoInfo != null && !daoInfo.isUnknown() && daoMethods.size() < MAX_DAO_METHODS) {
+                daoMethods.add(daoInfo.getFullMethodName());
+            }
+        }
+    }
+
+    /**
+     * 窗口内单个指纹的汇总
+     */
+    public static class Summary {
+
+        private final String fingerprint;
+
+        private final LatencyHistogram histogram = new LatencyHistogram(HISTOGRAM_MAX_US);
+
+        private final Set<String> daoMethods = new LinkedHashSet<>();
+
+        private long errors;
+
+        private long rows;
+
+        private long fetchNanos;
+
+        Summary(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void merge(SqlStat stat) {
+            histogram.merge(stat.histogram);
+            errors += stat.errors.sum();
+            rows += stat.rows.sum();
+            fetchNanos += stat.fetchNanos.sum();
+            daoMethods.addAll(stat.daoMethods);
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * 执行耗时直方图（µs）
+         *
+         * @return 直方图
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        /**
+         * 执行总耗时（ms），展示时才由微秒换算，下同
+         *
+         * @return 耗时
+         */
+        public double getTotalTime() {
+            return histogram.getTotal() / 1000.0;
+        }
+
+        public double getAvgTime() {
+            return histogram.getAvg() / 1000.0;
+        }
+
+        public double getP99Time() {
+            return histogram.percentile(0.99) / 1000.0;
+        }
+
+        public double getMaxTime() {
+            return histogram.getMax() / 1000.0;
+        }
+
+        public Set<String> getDaoMethods() {
+            return daoMethods;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * 结果集读取总耗时（ms），展示时才由纳秒换算
+         *
+         * @return 耗时
+         */
+        public double getFetchTime() {
+            return fetchNanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.monitor.sql.ConnectionPoolRegistry;
+import githubcew.arguslog.monitor.sql.SqlEvent;
+import githubcew.arguslog.monitor.sql.SqlStatsRegistry;
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 监控 {@link Connection}
+ * <div>
+ *   委托原始 Connection，有用户监听 SQL、开启了 SQL 统计或有用户监听接口时，
+ *   {@code createStatement}、{@code prepareStatement}、{@code prepareCall} 返回监控 Statement，否则返回原始 Statement，不产生拦截开销；
+ *   记录了获取时间的连接在首次 {@code close()} 时记录持有耗时；
+ *   关闭时完成各 Statement 未关闭结果集的查询（只关闭连接、由驱动或连接池关闭 Statement 时查询不丢失）。其他方法直接调用原始 Connection。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ArgusConnection implements Connection {
+
+    private final Connection delegate;
+
+    /**
+     * SQL 事件发布
+     */
+    private final Consumer<SqlEvent> publisher;
+
+    /**
+     * 获取时间，未记录时为 0
+     */
+    private final long acquireTime;
+
+    /**
+     * 连接池统计的连接租约，未统计时为 null
+     */
+    private final ConnectionPoolRegistry.Lease lease;
+
+    /**
+     * 获取连接的线程，只在该线程上关闭时计入请求的连接持有耗时
+     */
+    private final Thread owner;
+
+    /**
+     * 是否已记录持有耗时（{@code abort} 可能在其他线程调用）
+     */
+    private final AtomicBoolean released;
+
+    /**
+     * 有未关闭结果集查询的 Statement
+     */
+    private final List<ArgusStatement<?>> queryStatements = new ArrayList<>(4);
+
+    /**
+     * 构造方法
+     *
+     * @param delegate    原始 Connection
+     * @param publisher   SQL 事件发布
+     * @param acquireTime 获取时间，未记录时为 0
+     * @param lease       连接池统计的连接租约，未统计时为 null
+     */
+    ArgusConnection(Connection delegate, Consumer<SqlEvent> publisher, long acquireTime, ConnectionPoolRegistry.Lease lease) {
+        this.delegate = delegate;
+        this.publisher = publisher;
+        this.acquireTime = acquireTime;
+        this.lease = lease;
+        this.owner = Thread.currentThread();
+        this.released = new AtomicBoolean(acquireTime == 0);
+    }
+
+    /**
+     * 是否需要拦截 SQL（有用户监听 SQL、开启了 SQL 统计或当前线程在监听方法中）
+     *
+     * @return 结果
+     */
+    static boolean isIntercepted() {
+        return ArgusCache.hasSqlMonitor() || SqlStatsRegistry.isRecording() || ArgusRequestContext.inMonitoredMethod();
+    }
+
+    Consumer<SqlEvent> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * 登记有未关闭结果集查询的 Statement
+     *
+     * @param statement Statement
+     */
+    void queryStarted(ArgusStatement<?> statement) {
+        if (!queryStatements.contains(statement)) {
+            queryStatements.add(statement);
+        }
+    }
+
+    /**
+     * Statement 已关闭，不再登记
+     *
+     * @param statement Statement
+     */
+    void statementClosed(ArgusStatement<?> statement) {
+        queryStatements.remove(statement);
+    }
+
+    /**
+     * 完成各 Statement 未关闭结果集的查询
+     */
+    private void finishQueries() {
+        if (queryStatements.isEmpty()) {
+            return;
+        }
+        for (ArgusStatement<?> statement : queryStatements) {
+            statement.finishQuery();
+        }
+        queryStatements.clear();
+    }
+
+    /**
+     * 获取原始 Connection
+     *
+     * @return 原始 Connection
+     */
+    public Connection getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return statement(delegate.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return statement(delegate.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return statement(delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepared(delegate.prepareStatement(sql), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return prepared(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return prepared(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepared(delegate.prepareStatement(sql, autoGeneratedKeys), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return prepared(delegate.prepareStatement(sql, columnIndexes), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return prepared(delegate.prepareStatement(sql, columnNames), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return callable(delegate.prepareCall(sql), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return callable(delegate.prepareCall(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return callable(delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    /**
+     * 包装 Statement，无人监听且未开启统计时返回原始 Statement
+     *
+     * @param statement 原始 Statement
+     * @return Statement
+     */
+    private Statement statement(Statement statement) {
+        return statement == null || !isIntercepted() ? statement : new ArgusStatement<>(statement, this, null);
+    }
+
+    /**
+     * 包装 PreparedStatement，无人监听且未开启统计时返回原始 PreparedStatement
+     *
+     * @param statement 原始 PreparedStatement
+     * @param sql       SQL 模板
+     * @return PreparedStatement
+     */
+    private PreparedStatement prepared(PreparedStatement statement, String sql) {
+        return statement == null || !isIntercepted() ? statement : new ArgusPreparedStatement<>(statement, this, sql);
+    }
+
+    /**
+     * 包装 CallableStatement，无人监听且未开启统计时返回原始 CallableStatement
+     *
+     * @param statement 原始 CallableStatement
+     * @param sql       SQL 模板
+     * @return CallableStatement
+     */
+    private CallableStatement callable(CallableStatement statement, String sql) {
+        return statement == null || !isIntercepted() ? statement : new ArgusCallableStatement(statement, this, sql);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        finishQueries();
+        try {
+            delegate.close();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 释放连接：记录持有耗时并归还连接池统计的租约（只执行一次）
+     */
+    private void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        if (Thread.currentThread() == owner) {
+            ArgusRequestContext.recordConnectionHold(System.currentTimeMillis() - acquireTime);
+        }
+        if (lease != null) {
+            ConnectionPoolRegistry.released(lease);
+        }
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return delegate.nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        delegate.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return delegate.getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        delegate.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        delegate.rollback();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return delegate.getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        delegate.setReadOnly(readOnly);
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return delegate.isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        delegate.setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return delegate.getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        delegate.setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return delegate.getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return delegate.getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        delegate.setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        delegate.setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return delegate.getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return delegate.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return delegate.setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        delegate.rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        delegate.releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return delegate.createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return delegate.createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return delegate.createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return delegate.createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return delegate.isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        delegate.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        delegate.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return delegate.getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return delegate.getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return delegate.createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return delegate.createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        delegate.setSchema(schema);
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return delegate.getSchema();
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        // 连接被强制关闭后不会再调用 close()
+        try {
+            delegate.abort(executor);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        delegate.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return delegate.getNetworkTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
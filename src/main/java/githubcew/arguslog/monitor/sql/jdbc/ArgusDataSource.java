@@ -0,0 +1,139 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import githubcew.arguslog.monitor.sql.ConnectionPoolRegistry;
+import githubcew.arguslog.monitor.sql.DaoMethodDetector;
+import githubcew.arguslog.monitor.sql.SqlEvent;
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 监控 {@link DataSource}
+ * <div>
+ *   委托原始 DataSource，{@code getConnection()} 返回 {@link ArgusConnection}；
+ *   开启连接池统计或有用户监听接口时记录获取等待耗时，开启连接池统计时还记录调用方和获取连接的调用栈。
+ *   其他方法直接调用原始 DataSource。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ArgusDataSource implements DataSource {
+
+    private final DataSource delegate;
+
+    /**
+     * SQL 事件发布
+     */
+    private final Consumer<SqlEvent> publisher;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate  原始 DataSource
+     * @param publisher SQL 事件发布（在 JDBC 线程调用，需异步处理）
+     */
+    public ArgusDataSource(DataSource delegate, Consumer<SqlEvent> publisher) {
+        this.delegate = delegate;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(delegate::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(() -> delegate.getConnection(username, password));
+    }
+
+    /**
+     * 获取连接并记录等待耗时
+     *
+     * @param call 获取连接
+     * @return 连接
+     * @throws SQLException 获取异常
+     */
+    private Connection connect(JdbcCall<Connection> call) throws SQLException {
+        boolean recording = ConnectionPoolRegistry.isRecording();
+        if (!recording && !ArgusRequestContext.inMonitoredMethod()) {
+            return new ArgusConnection(call.call(), publisher, 0, null);
+        }
+
+        // 调用栈只获取一次，用于检测调用方和记录未归还连接的获取位置
+        StackTraceElement[] stack = recording ? new Throwable().getStackTrace() : null;
+        DaoMethodDetector.CallContext context = recording ? DaoMethodDetector.detectContext(stack) : null;
+        long start = System.currentTimeMillis();
+        Connection connection;
+        try {
+            connection = call.call();
+        } catch (SQLException | RuntimeException e) {
+            // 连接池等待超时等
+            if (recording) {
+                ConnectionPoolRegistry.failed(System.currentTimeMillis() - start, context);
+            }
+            throw e;
+        }
+        long acquireTime = System.currentTimeMillis();
+        long wait = acquireTime - start;
+        ArgusRequestContext.recordConnection(wait);
+        ConnectionPoolRegistry.Lease lease = recording
+                ? ConnectionPoolRegistry.acquired(wait, context, stack) : null;
+        return new ArgusConnection(connection, publisher, acquireTime, lease);
+    }
+
+    /**
+     * 获取原始 DataSource
+     *
+     * @return 原始 DataSource
+     */
+    public DataSource getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
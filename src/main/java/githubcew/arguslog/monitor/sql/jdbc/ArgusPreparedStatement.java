@@ -0,0 +1,411 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import githubcew.arguslog.monitor.sql.SqlParameterBuffer;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * 监控 {@link PreparedStatement}
+ * <div>
+ *   在 {@link ArgusStatement} 基础上，{@code setXXX(index, value)} 时按类型记录参数到 {@link SqlParameterBuffer}（基本类型不装箱，大字段只保存预览），
+ *   {@code addBatch()} 时保存参数样本，无参的 {@code execute*} 按 SQL 模板采集监控信息；参数在 {@code clearParameters} 或关闭时清空，执行后只释放大字段前缀。
+ * </div>
+ *
+ * @param <T> PreparedStatement 类型
+ * @author chenenwei
+ */
+public class ArgusPreparedStatement<T extends PreparedStatement> extends ArgusStatement<T> implements PreparedStatement {
+
+    /**
+     * 当前参数
+     */
+    private final SqlParameterBuffer params = new SqlParameterBuffer();
+
+    /**
+     * 构造方法
+     *
+     * @param delegate   原始 PreparedStatement
+     * @param connection 创建 Statement 的连接
+     * @param sql        SQL 模板（含 ? 占位符）
+     */
+    ArgusPreparedStatement(T delegate, ArgusConnection connection, String sql) {
+        super(delegate, connection, sql);
+    }
+
+    @Override
+    SqlParameterBuffer parameters() {
+        return params;
+    }
+
+    @Override
+    void releaseParameters() {
+        params.releasePreviews();
+    }
+
+    @Override
+    void resetParameters() {
+        params.clear();
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        return resultSet(invokeExecute(null, false, delegate::executeQuery));
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return invokeExecute(null, false, delegate::executeUpdate);
+    }
+
+    @Override
+    public long executeLargeUpdate() throws SQLException {
+        return invokeExecute(null, false, delegate::executeLargeUpdate);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return invokeExecute(null, false, delegate::execute);
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        addBatchSample(null);
+        delegate.addBatch();
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        resetParameters();
+        delegate.clearParameters();
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        params.setNull(parameterIndex);
+        delegate.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        params.setBoolean(parameterIndex, x);
+        delegate.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        params.setLong(parameterIndex, x);
+        delegate.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        params.setLong(parameterIndex, x);
+        delegate.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        params.setLong(parameterIndex, x);
+        delegate.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        params.setLong(parameterIndex, x);
+        delegate.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        params.setFloat(parameterIndex, x);
+        delegate.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        params.setDouble(parameterIndex, x);
+        delegate.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        params.setStream(parameterIndex, x, length);
+        delegate.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        params.setStream(parameterIndex, x, length);
+        delegate.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        params.setStream(parameterIndex, x, length);
+        delegate.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        params.setStream(parameterIndex, reader, length);
+        delegate.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setArray(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return delegate.getMetaData();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        params.setNull(parameterIndex);
+        delegate.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setURL(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return delegate.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        params.setObject(parameterIndex, value);
+        delegate.setNString(parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        params.setStream(parameterIndex, value, length);
+        delegate.setNCharacterStream(parameterIndex, value, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        params.setObject(parameterIndex, value);
+        delegate.setNClob(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        params.setStream(parameterIndex, reader, length);
+        delegate.setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        params.setStream(parameterIndex, inputStream, length);
+        delegate.setBlob(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        params.setStream(parameterIndex, reader, length);
+        delegate.setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        params.setObject(parameterIndex, xmlObject);
+        delegate.setSQLXML(parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        params.setStream(parameterIndex, x, length);
+        delegate.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        params.setStream(parameterIndex, x, length);
+        delegate.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        params.setStream(parameterIndex, reader, length);
+        delegate.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        params.setStream(parameterIndex, x, -1);
+        delegate.setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        params.setStream(parameterIndex, x, -1);
+        delegate.setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        params.setStream(parameterIndex, reader, -1);
+        delegate.setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        params.setStream(parameterIndex, value, -1);
+        delegate.setNCharacterStream(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        params.setStream(parameterIndex, reader, -1);
+        delegate.setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        params.setStream(parameterIndex, inputStream, -1);
+        delegate.setBlob(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        params.setStream(parameterIndex, reader, -1);
+        delegate.setNClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+        params.setObject(parameterIndex, x);
+        delegate.setObject(parameterIndex, x, targetSqlType);
+    }
+}
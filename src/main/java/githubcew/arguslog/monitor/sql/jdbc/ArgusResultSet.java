@@ -0,0 +1,1442 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * 监控 {@link ResultSet}
+ * <div>
+ *   委托查询返回的原始 ResultSet，累计 {@code next()} 和取值（{@code getXXX}）的读取耗时、读取行数，
+ *   {@code close()} 时完成查询的统计和推送。其他方法直接调用原始 ResultSet。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ArgusResultSet implements ResultSet {
+
+    private final ResultSet delegate;
+
+    /**
+     * 执行查询的 Statement
+     */
+    private final ArgusStatement<?> statement;
+
+    /**
+     * 查询跟踪
+     */
+    private final ArgusStatement<?>.QueryTracker query;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate  原始 ResultSet
+     * @param statement 执行查询的 Statement
+     * @param query     查询跟踪
+     */
+    ArgusResultSet(ResultSet delegate, ArgusStatement<?> statement, ArgusStatement<?>.QueryTracker query) {
+        this.delegate = delegate;
+        this.statement = statement;
+        this.query = query;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            boolean next = delegate.next();
+            if (next) {
+                query.addRow();
+            }
+            return next;
+        } catch (SQLException | RuntimeException e) {
+            query.setError(e);
+            throw e;
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            delegate.close();
+        } finally {
+            query.finish();
+        }
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return delegate.wasNull();
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getString(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBoolean(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getByte(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getShort(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInt(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getLong(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFloat(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDouble(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBigDecimal(columnIndex, scale);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBytes(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDate(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTime(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTimestamp(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAsciiStream(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUnicodeStream(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBinaryStream(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getString(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBoolean(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getByte(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getShort(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInt(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getLong(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFloat(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDouble(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBigDecimal(columnLabel, scale);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBytes(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDate(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTime(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTimestamp(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAsciiStream(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUnicodeStream(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBinaryStream(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWarnings();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCursorName();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getMetaData();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        return delegate.findColumn(columnLabel);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCharacterStream(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCharacterStream(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBigDecimal(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBigDecimal(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return delegate.isBeforeFirst();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return delegate.isAfterLast();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return delegate.isFirst();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        return delegate.isLast();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        delegate.beforeFirst();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        delegate.afterLast();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return delegate.first();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return delegate.last();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRow();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        return delegate.absolute(row);
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        return delegate.relative(rows);
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        return delegate.previous();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFetchDirection();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFetchSize();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getType();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getConcurrency();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return delegate.rowUpdated();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return delegate.rowInserted();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return delegate.rowDeleted();
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        delegate.updateNull(columnIndex);
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        delegate.updateBoolean(columnIndex, x);
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        delegate.updateByte(columnIndex, x);
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        delegate.updateShort(columnIndex, x);
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        delegate.updateInt(columnIndex, x);
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        delegate.updateLong(columnIndex, x);
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        delegate.updateFloat(columnIndex, x);
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        delegate.updateDouble(columnIndex, x);
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        delegate.updateBigDecimal(columnIndex, x);
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        delegate.updateString(columnIndex, x);
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        delegate.updateBytes(columnIndex, x);
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        delegate.updateDate(columnIndex, x);
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        delegate.updateTime(columnIndex, x);
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        delegate.updateTimestamp(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        delegate.updateObject(columnIndex, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        delegate.updateObject(columnIndex, x);
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        delegate.updateNull(columnLabel);
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        delegate.updateBoolean(columnLabel, x);
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        delegate.updateByte(columnLabel, x);
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        delegate.updateShort(columnLabel, x);
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        delegate.updateInt(columnLabel, x);
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        delegate.updateLong(columnLabel, x);
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        delegate.updateFloat(columnLabel, x);
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        delegate.updateDouble(columnLabel, x);
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        delegate.updateBigDecimal(columnLabel, x);
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        delegate.updateString(columnLabel, x);
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        delegate.updateBytes(columnLabel, x);
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        delegate.updateDate(columnLabel, x);
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        delegate.updateTime(columnLabel, x);
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        delegate.updateTimestamp(columnLabel, x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        delegate.updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        delegate.updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, int length) throws SQLException {
+        delegate.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        delegate.updateObject(columnLabel, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        delegate.updateObject(columnLabel, x);
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        delegate.insertRow();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        delegate.updateRow();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        delegate.deleteRow();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        delegate.refreshRow();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        delegate.cancelRowUpdates();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        delegate.moveToInsertRow();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        delegate.moveToCurrentRow();
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnIndex, map);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRef(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBlob(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getClob(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getArray(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnLabel, map);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRef(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBlob(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getClob(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getArray(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDate(columnIndex, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getDate(columnLabel, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTime(columnIndex, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTime(columnLabel, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTimestamp(columnIndex, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTimestamp(columnLabel, cal);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getURL(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getURL(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        delegate.updateRef(columnIndex, x);
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        delegate.updateRef(columnLabel, x);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        delegate.updateBlob(columnIndex, x);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        delegate.updateBlob(columnLabel, x);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        delegate.updateClob(columnIndex, x);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        delegate.updateClob(columnLabel, x);
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        delegate.updateArray(columnIndex, x);
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        delegate.updateArray(columnLabel, x);
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRowId(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRowId(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        delegate.updateRowId(columnIndex, x);
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        delegate.updateRowId(columnLabel, x);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHoldability();
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String nString) throws SQLException {
+        delegate.updateNString(columnIndex, nString);
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String nString) throws SQLException {
+        delegate.updateNString(columnLabel, nString);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
+        delegate.updateNClob(columnIndex, nClob);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob nClob) throws SQLException {
+        delegate.updateNClob(columnLabel, nClob);
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNClob(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNClob(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getSQLXML(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getSQLXML(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML xmlObject) throws SQLException {
+        delegate.updateSQLXML(columnIndex, xmlObject);
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML xmlObject) throws SQLException {
+        delegate.updateSQLXML(columnLabel, xmlObject);
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNString(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNString(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNCharacterStream(columnIndex);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getNCharacterStream(columnLabel);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        delegate.updateNCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        delegate.updateNCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        delegate.updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        delegate.updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        delegate.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        delegate.updateBlob(columnIndex, inputStream, length);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        delegate.updateBlob(columnLabel, inputStream, length);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader, long length) throws SQLException {
+        delegate.updateClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader, long length) throws SQLException {
+        delegate.updateClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader, long length) throws SQLException {
+        delegate.updateNClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader, long length) throws SQLException {
+        delegate.updateNClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        delegate.updateNCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        delegate.updateNCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        delegate.updateAsciiStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        delegate.updateBinaryStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        delegate.updateCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream) throws SQLException {
+        delegate.updateBlob(columnIndex, inputStream);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream) throws SQLException {
+        delegate.updateBlob(columnLabel, inputStream);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader) throws SQLException {
+        delegate.updateClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader) throws SQLException {
+        delegate.updateClob(columnLabel, reader);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader) throws SQLException {
+        delegate.updateNClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader) throws SQLException {
+        delegate.updateNClob(columnLabel, reader);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnIndex, type);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getObject(columnLabel, type);
+        } finally {
+            query.addFetchTime(start);
+        }
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+        delegate.updateObject(columnIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+        delegate.updateObject(columnLabel, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, SQLType targetSqlType) throws SQLException {
+        delegate.updateObject(columnIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, SQLType targetSqlType) throws SQLException {
+        delegate.updateObject(columnLabel, x, targetSqlType);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,648 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.monitor.sql.DaoMethodDetector;
+import githubcew.arguslog.monitor.sql.SqlEvent;
+import githubcew.arguslog.monitor.sql.SqlParameterBuffer;
+import githubcew.arguslog.monitor.sql.SqlStatsRegistry;
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 监控 {@link Statement}
+ * <div>
+ *   委托原始 Statement，在 {@code execute*}（含批量和 large 方法）时：
+ *   <ul>
+ *     <li>获取调用上下文（Web 请求方法、DAO 方法，PreparedStatement 首次执行时获取，Statement 每次执行时获取）</li>
+ *     <li>记录执行耗时，采集 SQL 模板、参数快照为 {@link SqlEvent}（批量执行合并为一个事件，保存前 {@link #BATCH_SAMPLE_SIZE} 条样本）</li>
+ *     <li>查询返回 {@link ArgusResultSet}，统计和推送延迟到结果集关闭，计入读取耗时和行数</li>
+ *   </ul>
+ *   其他方法直接调用原始 Statement。Statement 不会被多线程并发使用，状态不加锁。
+ * </div>
+ *
+ * @param <T> Statement 类型
+ * @author chenenwei
+ */
+public class ArgusStatement<T extends Statement> implements Statement {
+
+    /**
+     * 批量执行保留的样本数量
+     */
+    static final int BATCH_SAMPLE_SIZE = 3;
+
+    protected final T delegate;
+
+    /**
+     * 创建 Statement 的连接
+     */
+    private final ArgusConnection connection;
+
+    /**
+     * SQL 模板，Statement 为 null
+     */
+    private final String sql;
+
+    /**
+     * 调用上下文（DAO 方法、Web 请求入口方法）
+     */
+    private DaoMethodDetector.CallContext callContext;
+
+    /**
+     * 未关闭结果集的查询
+     */
+    private QueryTracker query;
+
+    /**
+     * 批量条数
+     */
+    private int batchSize;
+
+    /**
+     * 批量参数样本
+     */
+    private List<SqlParameterBuffer> batchParams = new ArrayList<>(BATCH_SAMPLE_SIZE);
+
+    /**
+     * 批量 SQL 样本
+     */
+    private List<String> batchSqls = new ArrayList<>(BATCH_SAMPLE_SIZE);
+
+    /**
+     * 构造方法
+     *
+     * @param delegate   原始 Statement
+     * @param connection 创建 Statement 的连接
+     * @param sql        SQL 模板（含 ? 占位符），Statement 为 null
+     */
+    ArgusStatement(T delegate, ArgusConnection connection, String sql) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.sql = sql;
+    }
+
+    /**
+     * 当前参数，Statement 没有参数
+     *
+     * @return 参数
+     */
+    SqlParameterBuffer parameters() {
+        return SqlParameterBuffer.EMPTY;
+    }
+
+    /**
+     * 执行后释放大字段预览（参数快照已交给事件），参数在再次设置或 {@code clearParameters} 前保持有效
+     */
+    void releaseParameters() {
+    }
+
+    /**
+     * 清空参数（{@code clearParameters}、关闭 Statement 时）
+     */
+    void resetParameters() {
+    }
+
+    /**
+     * 执行 SQL 并采集监控信息
+     *
+     * @param executeSql 执行的 SQL，PreparedStatement 为 null
+     * @param batch      是否批量执行
+     * @param call       执行原始方法
+     * @param <R>        结果类型
+     * @return 执行结果
+     * @throws SQLException 执行异常
+     */
+    <R> R invokeExecute(String executeSql, boolean batch, JdbcCall<R> call) throws SQLException {
+        // 监听和统计已取消
+        if (!ArgusConnection.isIntercepted()) {
+            // 完成上一次的查询，避免之后的结果集使用过期的查询信息
+            finishQuery();
+            releaseParameters();
+            if (batch) {
+                clearBatchSamples();
+            }
+            return call.call();
+        }
+
+        // 执行的 SQL：Statement 和 execute(sql) 从参数获取，Statement 批量取第一条
+        String sql;
+        if (executeSql != null) {
+            sql = executeSql;
+        } else if (batch && this.sql == null) {
+            sql = batchSqls.isEmpty() ? "" : batchSqls.get(0);
+        } else {
+            sql = this.sql;
+        }
+
+        // PreparedStatement 的调用上下文只检测一次，Statement 每次执行的 SQL 可能来自不同调用方
+        DaoMethodDetector.CallContext context = callContext;
+        if (context == null) {
+            context = DaoMethodDetector.detectContext();
+            if (this.sql != null) {
+                callContext = context;
+            }
+        }
+
+        // 再次执行时驱动会关闭上一次的结果集
+        finishQuery();
+
+        long start = System.nanoTime();
+        R result = null;
+        Throwable error = null;
+        try {
+            result = call.call();
+        } catch (Throwable e) {
+            error = e;
+            throw e; // 重新抛出异常，不影响业务
+        } finally {
+            long execNanos = System.nanoTime() - start;
+            long time = execNanos / 1_000_000;
+            SqlEvent event = null;
+            if (ArgusCache.hasSqlMonitor()) {
+                event = batch
+                        ? new SqlEvent(sql, parameters(), time, context.getWebMethod(), context.getDaoInfo(), error,
+                                batchSize, batchParams, batchSqls)
+                        : new SqlEvent(sql, parameters(), time, context.getWebMethod(), context.getDaoInfo(), error);
+            }
+            releaseParameters();
+            if (batch) {
+                // 执行后驱动会清空批量，样本已交给事件，换新列表
+                batchSize = 0;
+                batchParams = new ArrayList<>(BATCH_SAMPLE_SIZE);
+                batchSqls = new ArrayList<>(BATCH_SAMPLE_SIZE);
+            }
+            if (error == null && (result instanceof ResultSet || Boolean.TRUE.equals(result))) {
+                // 查询的统计和推送延迟到结果集关闭，计入读取耗时和行数
+                query = new QueryTracker(sql, execNanos, context, event);
+                connection.queryStarted(this);
+            } else {
+                complete(sql, execNanos, 0, context, error, error == null ? rowsOf(result) : -1, event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 包装查询的结果集
+     *
+     * @param resultSet 原始结果集
+     * @return 结果集
+     */
+    ResultSet resultSet(ResultSet resultSet) {
+        if (resultSet == null || query == null || query.wrapped) {
+            return resultSet;
+        }
+        query.wrapped = true;
+        return new ArgusResultSet(resultSet, this, query);
+    }
+
+    /**
+     * 完成未关闭结果集的查询（结果集未读取或未显式关闭时由 Statement 关闭、再次执行、Connection 关闭触发）
+     */
+    void finishQuery() {
+        if (query != null) {
+            QueryTracker finished = query;
+            query = null;
+            finished.finish();
+        }
+    }
+
+    /**
+     * 完成一次 SQL 执行：记录统计、请求汇总，有用户监听时发布事件
+     *
+     * @param sql       SQL 模板
+     * @param execNanos  执行耗时（ns）
+     * @param fetchNanos 结果集读取耗时（ns）
+     * @param context   调用上下文
+     * @param error     异常
+     * @param rows      影响（读取）行数，未知时为 -1
+     * @param event     SQL 事件，无人监听时为 null
+     */
+    private void complete(String sql, long execNanos, long fetchNanos, DaoMethodDetector.CallContext context,
+                          Throwable error, long rows, SqlEvent event) {
+        SqlStatsRegistry.record(sql, execNanos, fetchNanos, context.getDaoInfo(), error != null, rows);
+        ArgusRequestContext.recordSql(sql, execNanos + fetchNanos, context.getDaoInfo());
+        if (event != null) {
+            connection.getPublisher().accept(event);
+        }
+    }
+
+    /**
+     * 从执行结果中获取影响行数
+     *
+     * @param result 执行结果
+     * @return 影响行数，未知时返回 -1
+     */
+    private static long rowsOf(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        return -1;
+    }
+
+    /**
+     * 添加批量样本
+     *
+     * @param batchSql Statement 批量的 SQL，PreparedStatement 为 null
+     */
+    void addBatchSample(String batchSql) {
+        if (batchSize < BATCH_SAMPLE_SIZE) {
+            if (batchSql != null) {
+                batchSqls.add(batchSql);
+            } else {
+                batchParams.add(parameters().snapshot());
+            }
+        }
+        batchSize++;
+    }
+
+    /**
+     * 清空批量样本
+     */
+    private void clearBatchSamples() {
+        batchSize = 0;
+        batchParams.clear();
+        batchSqls.clear();
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return resultSet(invokeExecute(sql, false, () -> delegate.executeQuery(sql)));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeUpdate(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeLargeUpdate(sql));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeLargeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeLargeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.executeLargeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return invokeExecute(sql, false, () -> delegate.execute(sql, columnNames));
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return invokeExecute(null, true, delegate::executeBatch);
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        return invokeExecute(null, true, delegate::executeLargeBatch);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        addBatchSample(sql);
+        delegate.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        clearBatchSamples();
+        delegate.clearBatch();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        // execute() 的查询结果
+        return resultSet(delegate.getResultSet());
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        // 驱动会关闭当前结果集
+        finishQuery();
+        return delegate.getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        finishQuery();
+        return delegate.getMoreResults(current);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        finishQuery();
+        resetParameters();
+        connection.statementClosed(this);
+        delegate.close();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return delegate.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        delegate.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        delegate.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return delegate.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        delegate.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        delegate.setCursorName(name);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return delegate.getUpdateCount();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return delegate.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return delegate.getResultSetType();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return delegate.getGeneratedKeys();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return delegate.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        delegate.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return delegate.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        delegate.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return delegate.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return delegate.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        delegate.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return delegate.getLargeMaxRows();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    /**
+     * 查询跟踪：记录执行信息，累计结果集读取耗时和行数，结果集关闭时完成统计和推送（与结果集在同一线程使用）
+     */
+    class QueryTracker {
+
+        private final String sql;
+
+        /**
+         * 执行耗时（ns）
+         */
+        private final long execNanos;
+
+        private final DaoMethodDetector.CallContext context;
+
+        /**
+         * SQL 事件，无人监听时为 null
+         */
+        private final SqlEvent event;
+
+        /**
+         * 结果集是否已包装
+         */
+        private boolean wrapped;
+
+        /**
+         * 读取耗时（ns）
+         */
+        private long fetchNanos;
+
+        /**
+         * 读取行数
+         */
+        private long rows;
+
+        /**
+         * 读取异常
+         */
+        private Throwable error;
+
+        private boolean finished;
+
+        QueryTracker(String sql, long execNanos, DaoMethodDetector.CallContext context, SqlEvent event) {
+            this.sql = sql;
+            this.execNanos = execNanos;
+            this.context = context;
+            this.event = event;
+        }
+
+        /**
+         * 累计读取耗时
+         *
+         * @param start 开始时间（{@link System#nanoTime()}）
+         */
+        void addFetchTime(long start) {
+            fetchNanos += System.nanoTime() - start;
+        }
+
+        /**
+         * 读取到一行
+         */
+        void addRow() {
+            rows++;
+        }
+
+        /**
+         * 读取异常
+         *
+         * @param error 异常
+         */
+        void setError(Throwable error) {
+            this.error = error;
+        }
+
+        /**
+         * 完成查询（只执行一次）
+         */
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (event != null) {
+                event.fetched(fetchNanos / 1_000_000, rows, error);
+            }
+            complete(sql, execNanos, fetchNanos, context, error, rows, event);
+        }
+    }
+}
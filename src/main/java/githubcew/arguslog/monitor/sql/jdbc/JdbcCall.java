@@ -0,0 +1,21 @@
+package githubcew.arguslog.monitor.sql.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * JDBC 调用
+ *
+ * @param <T> 返回值类型
+ * @author chenenwei
+ */
+@FunctionalInterface
+interface JdbcCall<T> {
+
+    /**
+     * 执行调用
+     *
+     * @return 结果
+     * @throws SQLException 驱动异常
+     */
+    T call() throws SQLException;
+}
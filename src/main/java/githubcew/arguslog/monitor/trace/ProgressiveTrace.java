@@ -0,0 +1,318 @@
+package githubcew.arguslog.monitor.trace;
+
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.core.ArgusManager;
+import githubcew.arguslog.monitor.trace.asm.AsmMethodCallExtractor;
+import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
+import githubcew.arguslog.web.ArgusRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 渐进式调用链追踪
+ * <div>
+ *   开始时只增强入口方法及其直接调用的方法。每次请求结束后检查调用树，
+ *   对实际执行且耗时超过阈值、尚未展开的方法，分析其下一层调用并增强，直到最大深度。
+ *   只有热点子树会被增强，适合深度追踪大型服务。
+ *   回退接口或移除追踪时取消，已排队的展开任务不再增强。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ProgressiveTrace {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressiveTrace.class);
+
+    /**
+     * 未取消的渐进式追踪, key: 增强key
+     */
+    private static final Map<String, Set<ProgressiveTrace>> traces = new ConcurrentHashMap<>(16);
+
+    /**
+     * 增强key
+     */
+    private final String key;
+
+    /**
+     * 包含包
+     */
+    private final Set<String> includePackages;
+
+    /**
+     * 排除包
+     */
+    private final Set<String> excludePackages;
+
+    /**
+     * 展开阈值（ms）
+     */
+    private final long threshold;
+
+    /**
+     * 最大深度
+     */
+    private final int maxDepth;
+
+    /**
+     * 最大调用数
+     */
+    private final int maxCalls;
+
+    /**
+     * 方法调用信息（与 Trace 共享，展开时追加）
+     */
+    private final Set<MethodCallInfo> methodCalls;
+
+    /**
+     * 行号索引（与 Trace 共享，展开时追加）
+     */
+    private final TraceLineIndex lineIndex;
+
+    /**
+     * 已增强的类和方法
+     */
+    private final Map<Class<?>, List<String>> classMethods = new LinkedHashMap<>();
+
+    /**
+     * 已展开（或已排队展开）的方法签名
+     */
+    private final Set<String> expanded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 因达到最大调用数未完整展开的方法, key: 方法签名, value: 当时的调用数
+     */
+    private final Map<String, Integer> truncated = new ConcurrentHashMap<>();
+
+    /**
+     * 待展开的方法, key: 方法签名, value: (方法, 深度)
+     */
+    private final Map<String, Object[]> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 是否正在展开
+     */
+    private final AtomicBoolean expanding = new AtomicBoolean();
+
+    /**
+     * 是否已取消
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 构造方法
+     *
+     * @param key 增强key
+     * @param includePackages 包含包
+     * @param excludePackages 排除包
+     * @param threshold 展开阈值（ms）
+     * @param maxDepth 最大深度
+     * @param maxCalls 最大调用数
+     * @param methodCalls 初始方法调用信息（入口方法及直接调用）
+     * @param lineIndex 行号索引
+     * @param classMethods 初始已增强的类和方法
+     */
+    public ProgressiveTrace(String key,
+                            Set<String> includePackages,
+                            Set<String> excludePackages,
+                            long threshold,
+                            int maxDepth,
+                            int maxCalls,
+                            Set<MethodCallInfo> methodCalls,
+                            TraceLineIndex lineIndex,
+                            Map<Class<?>, List<String>> classMethods) {
+        this.key = key;
+        this.includePackages = includePackages;
+        this.excludePackages = excludePackages;
+        this.threshold = threshold;
+        this.maxDepth = maxDepth;
+        this.maxCalls = maxCalls;
+        this.methodCalls = methodCalls;
+        this.lineIndex = lineIndex;
+        classMethods.forEach((targetClass, methodNames) -> this.classMethods.put(targetClass, new ArrayList<>(methodNames)));
+        traces.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    /**
+     * 取消 key 对应的全部渐进式追踪
+     *
+     * @param key 增强key
+     */
+    public static void cancel(String key) {
+        Set<ProgressiveTrace> keyTraces = traces.remove(key);
+        if (keyTraces != null) {
+            keyTraces.forEach(ProgressiveTrace::cancel);
+        }
+    }
+
+    /**
+     * 取消全部渐进式追踪
+     */
+    public static void cancelAll() {
+        new ArrayList<>(traces.keySet()).forEach(ProgressiveTrace::cancel);
+    }
+
+    /**
+     * 取消追踪，等待正在进行的增强完成，之后不再展开
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        pending.clear();
+        traces.computeIfPresent(key, (k, keyTraces) -> {
+            keyTraces.remove(this);
+            return keyTraces.isEmpty() ? null : keyTraces;
+        });
+    }
+
+    /**
+     * 检查一次请求的调用树，收集需要展开的方法并异步展开
+     *
+     * @param root 调用树根节点
+     */
+    public void observe(ArgusRequestContext.MethodNode root) {
+        // 达到最大调用数时仍检查，未完整展开的方法在调用已被其他方法增强时可以完成展开
+        if (cancelled || root == null) {
+            return;
+        }
+        // 入口方法在创建时已展开
+        if (root.getMethod() != null) {
+            expanded.add(root.getSignature());
+        }
+
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{root, 0});
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            ArgusRequestContext.MethodNode node = (ArgusRequestContext.MethodNode) frame[0];
+            int depth = (Integer) frame[1];
+            if (depth >= maxDepth) {
+                continue;
+            }
+            if (!node.isAsync() && node.getMethod() != null
+                    && node.getDuration() >= threshold
+                    && isRetryable(node.getSignature())
+                    && expanded.add(node.getSignature())) {
+                pending.put(node.getSignature(), new Object[]{node.getMethod(), depth});
+            }
+            for (ArgusRequestContext.MethodNode child : node.getChildren()) {
+                // 异步分支节点不占深度
+                stack.push(new Object[]{child, child.isAsync() ? depth : depth + 1});
+            }
+        }
+
+        if (!pending.isEmpty() && expanding.compareAndSet(false, true)) {
+            ArgusManager argusManager = ContextUtil.getBean(ArgusManager.class);
+            argusManager.getMonitorSender().submit(this::expand);
+        }
+    }
+
+    /**
+     * 未完整展开的方法在调用数变化后才重试（调用可能已被其他方法增强），其余方法总是可以展开
+     *
+     * @param signature 方法签名
+     * @return 结果
+     */
+    private boolean isRetryable(String signature) {
+        Integer size = truncated.get(signature);
+        return size == null || size != methodCalls.size();
+    }
+
+    /**
+     * 展开待处理的方法并增强新发现的调用
+     */
+    private void expand() {
+        List<String> truncatedNow = new ArrayList<>();
+        try {
+            List<MethodCallInfo> newCalls = new ArrayList<>();
+            Iterator<Map.Entry<String, Object[]>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && !cancelled) {
+                Map.Entry<String, Object[]> entry = iterator.next();
+                iterator.remove();
+                Method method = (Method) entry.getValue()[0];
+                int depth = (Integer) entry.getValue()[1];
+                try {
+                    Set<MethodCallInfo> calls = AsmMethodCallExtractor.extractNestedCustomMethodCalls(
+                            method, includePackages, excludePackages, new HashSet<>(), 1);
+                    List<MethodCallInfo> methodNewCalls = new ArrayList<>();
+                    for (MethodCallInfo call : calls) {
+                        // 跳过子图的根节点（即当前方法）
+                        if (call.getDepth() == 0) {
+                            continue;
+                        }
+                        call.setDepth(depth + call.getDepth());
+                        // 已增强的调用不占最大调用数
+                        if (!methodCalls.contains(call) && !newCalls.contains(call)) {
+                            methodNewCalls.add(call);
+                        }
+                    }
+                    // 超过最大调用数时只追加能容纳的部分，未完整展开的方法允许之后重试
+                    int remaining = maxCalls - methodCalls.size() - newCalls.size();
+                    if (methodNewCalls.size() > remaining) {
+                        newCalls.addAll(methodNewCalls.subList(0, Math.max(remaining, 0)));
+                        truncatedNow.add(entry.getKey());
+                        expanded.remove(entry.getKey());
+                        if (log.isDebugEnabled()) {
+                            log.debug("Argus =>  Progressive trace reached max calls: {}", maxCalls);
+                        }
+                    } else {
+                        newCalls.addAll(methodNewCalls);
+                        truncated.remove(entry.getKey());
+                    }
+                } catch (Exception e) {
+                    if (log.isDebugEnabled()) {
+                        log.error("Argus =>  Error expanding method: {}", method, e);
+                    }
+                }
+            }
+            if (newCalls.isEmpty()) {
+                return;
+            }
+
+            synchronized (this) {
+                // 回退后不再开启开关和织入
+                if (cancelled) {
+                    return;
+                }
+                methodCalls.addAll(newCalls);
+                lineIndex.addAll(newCalls);
+
+                boolean changed = false;
+                for (Map.Entry<Class<?>, List<String>> entry : TraceEnhanceManager.groupByEnhanceClass(newCalls).entrySet()) {
+                    List<String> methodNames = classMethods.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+                    for (String methodName : entry.getValue()) {
+                        if (!methodNames.contains(methodName)) {
+                            methodNames.add(methodName);
+                            changed = true;
+                        }
+                    }
+                }
+                if (changed) {
+                    TraceEnhanceManager.enhanceMethods(key, classMethods);
+                }
+            }
+        } finally {
+            truncatedNow.forEach(signature -> truncated.put(signature, methodCalls.size()));
+            expanding.set(false);
+            // 展开期间有新的待处理方法
+            if (!cancelled && !pending.isEmpty() && expanding.compareAndSet(false, true)) {
+                ArgusManager argusManager = ContextUtil.getBean(ArgusManager.class);
+                argusManager.getMonitorSender().submit(this::expand);
+            }
+        }
+    }
+
+    /**
+     * 已增强的方法数
+     *
+     * @return 数量
+     */
+    public int getEnhancedCount() {
+        return methodCalls.size();
+    }
+}
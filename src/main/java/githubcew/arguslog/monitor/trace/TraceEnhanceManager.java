@@ -2,11 +2,14 @@ package githubcew.arguslog.monitor.trace;
 
 import githubcew.arguslog.common.util.ProxyUtil;
 import githubcew.arguslog.monitor.trace.buddy.BuddyProxyManager;
-import githubcew.arguslog.monitor.trace.buddy.TracingAdvice;
+import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
+import githubcew.arguslog.monitor.trace.buddy.TraceSwitch;
 import githubcew.arguslog.monitor.trace.jdk.JdkProxyManager;
 import githubcew.arguslog.monitor.trace.jdk.JdkProxyTracingAdvice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.util.*;
 
 /**
  * @author chenenwei
@@ -15,6 +18,18 @@ import java.util.List;
  */
 public class TraceEnhanceManager {
 
+    private static final Logger log = LoggerFactory.getLogger(TraceEnhanceManager.class);
+
+    /**
+     * 追踪拦截器的规则key
+     */
+    private static final String TRACE_KEY = "argus-trace";
+
+    /**
+     * 已织入追踪拦截器的方法, key: 类（弱引用）, value: 方法名
+     */
+    private static final Map<Class<?>, Set<String>> wovenMethods = new WeakHashMap<>(16);
+
     /**
      * 增强方法
      *
@@ -39,16 +54,107 @@ public class TraceEnhanceManager {
 
         // 普通类 走buddy字节码增强
         else {
-            BuddyProxyManager.enhanceMethods(key, targetClass, methodNames, TracingAdvice.class);
+            enhanceMethods(key, Collections.singletonMap(targetClass, methodNames));
         }
     }
 
+    /**
+     * 批量增强方法，普通类在一次重转换中完成增强
+     * <div>
+     *   普通类的追踪拦截器只织入一次（按类累积方法），开启和关闭追踪通过 {@link TraceSwitch} 完成，
+     *   方法都已织入时不再重转换类。
+     * </div>
+     *
+     * @param key key
+     * @param classMethods 类 -> 方法名列表
+     */
+    public static void enhanceMethods(String key, Map<Class<?>, List<String>> classMethods) {
+
+        Map<Class<?>, List<String>> buddyClasses = new LinkedHashMap<>(classMethods.size());
+        classMethods.forEach((targetClass, methodNames) -> {
+            // jdk代理类
+            if (ProxyUtil.isJdkProxyClass(targetClass)) {
+                enhanceMethods(key, targetClass, methodNames);
+            }
+            // 普通类 统一走buddy字节码增强
+            else {
+                buddyClasses.put(targetClass, methodNames);
+            }
+        });
+
+        synchronized (wovenMethods) {
+            // 需要重新织入的类（织入方法为已织入方法和新方法的并集）
+            Map<Class<?>, List<String>> weaveClasses = new LinkedHashMap<>();
+            buddyClasses.forEach((targetClass, methodNames) -> {
+                Set<String> woven = wovenMethods.get(targetClass);
+                if (woven == null || !woven.containsAll(methodNames)) {
+                    Set<String> union = new LinkedHashSet<>(methodNames);
+                    if (woven != null) {
+                        union.addAll(woven);
+                    }
+                    weaveClasses.put(targetClass, new ArrayList<>(union));
+                }
+            });
+
+            List<Class<?>> failed = BuddyProxyManager.enhanceMethods(TRACE_KEY, weaveClasses, TraceSwitch.ADVICE_NAME, TraceSwitch.ADVICE);
+            weaveClasses.forEach((targetClass, methodNames) -> {
+                if (failed.contains(targetClass)) {
+                    wovenMethods.remove(targetClass);
+                    buddyClasses.remove(targetClass);
+                } else {
+                    wovenMethods.put(targetClass, new HashSet<>(methodNames));
+                }
+            });
+        }
+
+        TraceSwitch.on(key, buddyClasses);
+    }
+
+    /**
+     * 按增强类分组调用信息（继承方法增强定义类，非继承方法增强实现类）
+     *
+     * @param methodCalls 调用信息
+     * @return 类 -> 方法名列表
+     */
+    public static Map<Class<?>, List<String>> groupByEnhanceClass(Collection<MethodCallInfo> methodCalls) {
+        Map<Class<?>, List<String>> classMethods = new LinkedHashMap<>();
+        Map<String, Class<?>> classes = new HashMap<>();
+        for (MethodCallInfo call : methodCalls) {
+            String className = call.isInherited() ? call.getActualDefinedClass() : call.getSubCalledClass();
+            Class<?> aClass = classes.computeIfAbsent(className, name -> {
+                try {
+                    return Class.forName(name.replace("/", "."));
+                } catch (Throwable e) {
+                    if (log.isDebugEnabled()) {
+                        log.error("Argus =>  Error loading class: {}", name, e);
+                    }
+                    return null;
+                }
+            });
+            if (aClass == null) {
+                continue;
+            }
+            List<String> methodNames = classMethods.computeIfAbsent(aClass, k -> new ArrayList<>());
+            if (!methodNames.contains(call.getCalledMethod())) {
+                methodNames.add(call.getCalledMethod());
+            }
+        }
+        return classMethods;
+    }
+
     /**
      * 根据key 移除增强
+     * <div>
+     *   普通类只关闭追踪开关，已织入的拦截器保留以便再次追踪时无需重转换。
+     *   先取消 key 对应的渐进式追踪，避免已排队的展开任务重新开启开关。
+     * </div>
+     *
      * @param key 移除key
      */
     public static void revertClassWithKey(String key) {
+        ProgressiveTrace.cancel(key);
         JdkProxyManager.revertProxyWithKey(key);
+        TraceSwitch.off(key);
         BuddyProxyManager.revertClassWithKey(key);
     }
 
@@ -70,15 +176,34 @@ public class TraceEnhanceManager {
 
         // 普通类 走buddy 处理
         else {
-            BuddyProxyManager.revertClass(targetClass);
+            synchronized (wovenMethods) {
+                wovenMethods.remove(targetClass);
+                BuddyProxyManager.revertClass(targetClass);
+            }
         }
     }
 
     /**
-     * 移除全部增强
+     * 移除全部增强，关闭全部追踪开关并移除已织入的拦截器
      */
     public static void revertAllClasses() {
+        ProgressiveTrace.cancelAll();
         JdkProxyManager.revertAllProxy();
-        BuddyProxyManager.revertAllClasses();
+        TraceSwitch.offAll();
+        synchronized (wovenMethods) {
+            wovenMethods.clear();
+            BuddyProxyManager.revertAllClasses();
+        }
+    }
+
+    /**
+     * 已织入追踪拦截器的类数量
+     *
+     * @return 数量
+     */
+    public static int wovenClassCount() {
+        synchronized (wovenMethods) {
+            return wovenMethods.size();
+        }
     }
 }
@@ -0,0 +1,71 @@
+package githubcew.arguslog.monitor.trace;
+
+import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 调用链行号索引
+ * <div>
+ *   追踪开始时由方法调用信息构建，(类, 方法, 描述符, 深度) -> 行号，
+ *   输出调用树时按节点直接查找，不再逐个遍历调用信息。
+ *   被调用类和实现类都建立索引（兼容jdk代理的类名，和调用接口名一致），同一键保留最先出现的调用。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceLineIndex {
+
+    /**
+     * 行号索引, key: 类名#方法名描述符#深度, value: 行号
+     */
+    private final Map<String, Integer> lines = new ConcurrentHashMap<>(64);
+
+    /**
+     * 方法键缓存, key: 方法, value: 类名#方法名描述符
+     */
+    private final Map<Method, String> methodKeys = new ConcurrentHashMap<>(64);
+
+    /**
+     * 构造方法
+     *
+     * @param methodCalls 方法调用信息
+     */
+    public TraceLineIndex(Collection<MethodCallInfo> methodCalls) {
+        addAll(methodCalls);
+    }
+
+    /**
+     * 追加方法调用信息
+     *
+     * @param methodCalls 方法调用信息
+     */
+    public void addAll(Collection<MethodCallInfo> methodCalls) {
+        for (MethodCallInfo call : methodCalls) {
+            String suffix = "#" + call.getCalledMethod() + call.getCalledMethodDesc() + "#" + call.getDepth();
+            lines.putIfAbsent(call.getSubCalledClass() + suffix, call.getLineNumber());
+            lines.putIfAbsent(call.getCalledClass() + suffix, call.getLineNumber());
+        }
+    }
+
+    /**
+     * 获取行号
+     *
+     * @param method 方法
+     * @param depth 深度
+     * @return 行号，未找到返回空字符串
+     */
+    public String getLineNumber(Method method, int depth) {
+        if (method == null) {
+            return "";
+        }
+        String methodKey = methodKeys.computeIfAbsent(method, m ->
+                m.getDeclaringClass().getName().replace(".", "/") + "#" + m.getName() + Type.getMethodDescriptor(m));
+        Integer line = lines.get(methodKey + "#" + depth);
+        return line == null ? "" : String.valueOf(line);
+    }
+}
@@ -0,0 +1,140 @@
+package githubcew.arguslog.monitor.trace.aggregate;
+
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
+import githubcew.arguslog.core.ArgusManager;
+import githubcew.arguslog.core.account.ArgusUser;
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.core.cmd.ExecuteResult;
+import githubcew.arguslog.monitor.ArgusMethod;
+import githubcew.arguslog.monitor.MonitorInfo;
+import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.trace.flame.FlameGraphStore;
+import githubcew.arguslog.web.ArgusRequestContext;
+import githubcew.arguslog.web.socket.ArgusSocketHandler;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用链聚合管理
+ * <div>
+ *   按 用户 + 接口方法 维护聚合器，每个聚合窗口结束时输出一次统计树。
+ *   用户下线、取消追踪或改为逐请求输出后，聚合器在下一次窗口输出时自动移除。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceAggregateManager {
+
+    /**
+     * 聚合器缓存
+     */
+    private static final Map<String, TraceAggregator> aggregators = new ConcurrentHashMap<>(16);
+
+    /**
+     * 合并一棵调用树到用户的聚合器
+     *
+     * @param token  用户token
+     * @param method 开始方法
+     * @param trace  追踪配置
+     * @param root   调用树根节点
+     */
+    public static void aggregate(String token, Method method, MonitorInfo.Trace trace, ArgusRequestContext.MethodNode root) {
+        String key = keyOf(token, method);
+        TraceAggregator aggregator = aggregators.get(key);
+        if (aggregator == null || aggregator.getWindow() != trace.getAggregateWindow()) {
+            aggregator = aggregators.compute(key, (k, old) -> {
+                if (old != null && old.getWindow() == trace.getAggregateWindow()) {
+                    return old;
+                }
+                cancel(old);
+                return create(token, method, trace.getAggregateWindow());
+            });
+        }
+        aggregator.add(root, trace.getMaxDepth());
+    }
+
+    /**
+     * 创建聚合器并启动窗口输出
+     *
+     * @param token  用户token
+     * @param method 开始方法
+     * @param window 聚合窗口（ms）
+     * @return 聚合器
+     */
+    private static TraceAggregator create(String token, Method method, long window) {
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        ArgusManager argusManager = ContextUtil.getBean(ArgusManager.class);
+        TraceAggregator aggregator = new TraceAggregator(token, method, window, argusProperties.getTraceAggregateMaxNodes());
+        ScheduledFuture<?> future = argusManager.getMonitorSender()
+                .scheduleAtFixedRate(() -> flush(aggregator), window, TimeUnit.MILLISECONDS);
+        aggregator.setFlushFuture(future);
+        return aggregator;
+    }
+
+    /**
+     * 输出一个窗口的统计树
+     *
+     * @param aggregator 聚合器
+     */
+    private static void flush(TraceAggregator aggregator) {
+        String token = aggregator.getToken();
+        Method method = aggregator.getMethod();
+        ArgusUser user = ArgusCache.getUserToken(token);
+        MonitorInfo monitorInfo = ArgusCache.getTraceMonitorByUser(token, method);
+        if (Objects.isNull(user) || !user.getSession().isOpen()
+                || Objects.isNull(monitorInfo) || Objects.isNull(monitorInfo.getTrace())
+                || monitorInfo.getTrace().getAggregateWindow() != aggregator.getWindow()) {
+            aggregators.remove(keyOf(token, method), aggregator);
+            cancel(aggregator);
+            return;
+        }
+
+        TraceAggregator.Snapshot snapshot = aggregator.drain();
+        if (snapshot == null) {
+            return;
+        }
+        String uri = ArgusCache.getMethodUri(new ArgusMethod(method));
+        FlameGraphStore.putAggregate(uri, snapshot);
+        String tree = TraceAggregator.render(snapshot, monitorInfo.getTrace());
+        String output = "Argus TRACE (aggregate " + aggregator.getWindow() + "ms): \n"
+                + "uri => " + OutputWrapper.wrapperCopy(uri)
+                + "\nmethod => " + CommonUtil.generateSignature(method)
+                + "\nrequests => " + snapshot.getRequests()
+                + (snapshot.getDroppedCalls() > 0
+                    ? "\nnodes => " + snapshot.getNodeCount() + " (dropped calls: " + snapshot.getDroppedCalls() + ")"
+                    : "")
+                + "\ntracing => "
+                + "\n" + tree;
+        ArgusSocketHandler argusSocketHandler = ContextUtil.getBean(ArgusSocketHandler.class);
+        argusSocketHandler.send(user.getSession(), OutputWrapper.formatOutput(ExecuteResult.success(output)));
+    }
+
+    /**
+     * 取消窗口输出
+     *
+     * @param aggregator 聚合器
+     */
+    private static void cancel(TraceAggregator aggregator) {
+        if (aggregator != null && aggregator.getFlushFuture() != null) {
+            aggregator.getFlushFuture().cancel(false);
+        }
+    }
+
+    /**
+     * 聚合器键
+     *
+     * @param token  用户token
+     * @param method 方法
+     * @return 键
+     */
+    private static String keyOf(String token, Method method) {
+        return token + "|" + CommonUtil.generateSignature(method);
+    }
+}
@@ -0,0 +1,339 @@
+package githubcew.arguslog.monitor.trace.aggregate;
+
+import githubcew.arguslog.core.cmd.ColorWrapper;
+import githubcew.arguslog.monitor.LatencyHistogram;
+import githubcew.arguslog.monitor.MonitorInfo;
+import githubcew.arguslog.monitor.trace.flame.FlameGraph;
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 调用链聚合器
+ * <div>
+ *   将一个窗口内同一接口的多棵调用树按调用路径合并为一棵统计树，
+ *   每个节点记录调用次数、总耗时、自身耗时、最大耗时及耗时分布（用于 p99）。
+ * </div>
+ * <div>
+ *   合并在输出线程上执行，节点总数受上限控制，超过上限的新路径只计入丢弃数。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceAggregator {
+
+    /**
+     * 节点耗时直方图可追踪的最大值（ms），超过的耗时仍计入次数、总和与最大值
+     */
+    private static final long HISTOGRAM_MAX_MS = 60 * 60 * 1000L;
+
+    /**
+     * 异步分支节点的合并键
+     */
+    private static final String ASYNC_KEY = "async";
+
+    /**
+     * 用户token
+     */
+    private final String token;
+
+    /**
+     * 开始方法
+     */
+    private final Method method;
+
+    /**
+     * 聚合窗口（ms）
+     */
+    private final long window;
+
+    /**
+     * 最大节点数
+     */
+    private final int maxNodes;
+
+    /**
+     * 窗口输出任务
+     */
+    private volatile ScheduledFuture<?> flushFuture;
+
+    private AggregateNode root;
+
+    private int nodeCount;
+
+    private long requests;
+
+    private long droppedCalls;
+
+    /**
+     * 构造方法
+     *
+     * @param token    用户token
+     * @param method   开始方法
+     * @param window   聚合窗口（ms）
+     * @param maxNodes 最大节点数
+     */
+    public TraceAggregator(String token, Method method, long window, int maxNodes) {
+        this.token = token;
+        this.method = method;
+        this.window = window;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * 合并一棵调用树
+     *
+     * @param tree     调用树根节点
+     * @param maxDepth 最大深度
+     */
+    public synchronized void add(ArgusRequestContext.MethodNode tree, int maxDepth) {
+        if (tree == null) {
+            return;
+        }
+        requests++;
+        if (root == null) {
+            root = new AggregateNode(tree.getSignature(), tree.getMethod(), tree.isAsync());
+            nodeCount = 1;
+        }
+
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{root, tree, 0});
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            AggregateNode agg = (AggregateNode) frame[0];
+            ArgusRequestContext.MethodNode node = (ArgusRequestContext.MethodNode) frame[1];
+            int depth = (Integer) frame[2];
+
+            long childrenDuration = 0;
+            for (ArgusRequestContext.MethodNode child : node.getChildren()) {
+                if (!child.isAsync()) {
+                    childrenDuration += child.getDuration();
+                }
+            }
+            agg.record(node, Math.max(0, node.getDuration() - childrenDuration));
+
+            if (depth >= maxDepth) {
+                continue;
+            }
+            for (ArgusRequestContext.MethodNode child : node.getChildren()) {
+                String key = keyOf(child);
+                AggregateNode aggChild = agg.children.get(key);
+                if (aggChild == null) {
+                    if (nodeCount >= maxNodes) {
+                        droppedCalls++;
+                        continue;
+                    }
+                    aggChild = new AggregateNode(child.getSignature(), child.getMethod(), child.isAsync());
+                    agg.children.put(key, aggChild);
+                    nodeCount++;
+                }
+                stack.push(new Object[]{aggChild, child, depth + 1});
+            }
+        }
+    }
+
+    /**
+     * 取出当前窗口数据并重置
+     *
+     * @return 窗口快照，窗口内无请求返回null
+     */
+    public synchronized Snapshot drain() {
+        if (requests == 0) {
+            return null;
+        }
+        Snapshot snapshot = new Snapshot(root, requests, nodeCount, droppedCalls);
+        root = null;
+        requests = 0;
+        nodeCount = 0;
+        droppedCalls = 0;
+        return snapshot;
+    }
+
+    /**
+     * 渲染统计树
+     *
+     * @param snapshot 窗口快照
+     * @param trace    追踪配置
+     * @return 树形字符串
+     */
+    public static String render(Snapshot snapshot, MonitorInfo.Trace trace) {
+        StringBuilder sb = new StringBuilder();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{snapshot.root, "", "", 0});
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            AggregateNode node = (AggregateNode) frame[0];
+            String prefix = (String) frame[1];
+            String connector = (String) frame[2];
+            int depth = (Integer) frame[3];
+
+            sb.append(prefix).append(connector);
+            appendNode(sb, node, trace);
+            sb.append("\n");
+
+            if (depth >= trace.getMaxDepth() || node.children.isEmpty()) {
+                continue;
+            }
+            String childPrefix = depth == 0 ? "" : prefix + ("└── ".equals(connector) ? "    " : "│   ");
+            List<AggregateNode> children = new ArrayList<>(node.children.values());
+            // 逆序入栈，保证按首次出现顺序输出
+            for (int i = children.size() - 1; i >= 0; i--) {
+                boolean isLast = i == children.size() - 1;
+                stack.push(new Object[]{children.get(i), childPrefix, isLast ? "└── " : "├── ", depth + 1});
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 输出节点统计信息
+     *
+     * @param sb    输出
+     * @param node  节点
+     * @param trace 追踪配置
+     */
+    private static void appendNode(StringBuilder sb, AggregateNode node, MonitorInfo.Trace trace) {
+        if (node.async) {
+            sb.append(ColorWrapper.blue("[async]"));
+        } else {
+            sb.append(ArgusRequestContext.getSignatureWithParams(node.signature, node.method, trace.isShowFullClassName()));
+        }
+        LatencyHistogram histogram = node.histogram;
+        long avg = Math.round(histogram.getAvg());
+        String avgText = avg + "ms";
+        if (avg >= trace.getColorThreshold()) {
+            avgText = ColorWrapper.red(avgText);
+        }
+        sb.append(" [calls=").append(histogram.getCount())
+                .append(" avg=").append(avgText)
+                .append(" p99=").append(histogram.percentile(0.99)).append("ms")
+                .append(" max=").append(histogram.getMax()).append("ms")
+                .append(" total=").append(histogram.getTotal()).append("ms")
+                .append(" self=").append(node.selfTotal).append("ms]");
+    }
+
+    /**
+     * 节点合并键
+     *
+     * @param node 节点
+     * @return 键
+     */
+    private static String keyOf(ArgusRequestContext.MethodNode node) {
+        return node.isAsync() ? ASYNC_KEY : node.getSignature();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public ScheduledFuture<?> getFlushFuture() {
+        return flushFuture;
+    }
+
+    public void setFlushFuture(ScheduledFuture<?> flushFuture) {
+        this.flushFuture = flushFuture;
+    }
+
+    /**
+     * 聚合节点
+     */
+    static class AggregateNode {
+
+        private final String signature;
+
+        private final Method method;
+
+        private final boolean async;
+
+        private final LatencyHistogram histogram = new LatencyHistogram(HISTOGRAM_MAX_MS);
+
+        private long selfTotal;
+
+        private final Map<String, AggregateNode> children = new LinkedHashMap<>();
+
+        AggregateNode(String signature, Method method, boolean async) {
+            this.signature = signature;
+            this.method = method;
+            this.async = async;
+        }
+
+        /**
+         * 记录节点的调用（合并的连续调用按次数记录，耗时为总耗时）
+         *
+         * @param node 调用树节点
+         * @param self 自身耗时
+         */
+        void record(ArgusRequestContext.MethodNode node, long self) {
+            histogram.recordRepeated(node.getDuration(), node.getCount(), node.getMaxDuration());
+            selfTotal += self;
+        }
+    }
+
+    /**
+     * 窗口快照
+     */
+    public static class Snapshot {
+
+        private final AggregateNode root;
+
+        private final long requests;
+
+        private final int nodeCount;
+
+        private final long droppedCalls;
+
+        Snapshot(AggregateNode root, long requests, int nodeCount, long droppedCalls) {
+            this.root = root;
+            this.requests = requests;
+            this.nodeCount = nodeCount;
+            this.droppedCalls = droppedCalls;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * 转换为火焰图
+         *
+         * @param showFullClassName 是否显示全类名
+         * @return 火焰图
+         */
+        public FlameGraph toFlameGraph(boolean showFullClassName) {
+            FlameGraph graph = new FlameGraph();
+            Deque<Object[]> stack = new ArrayDeque<>();
+            stack.push(new Object[]{graph.getRoot(), root});
+            while (!stack.isEmpty()) {
+                Object[] item = stack.pop();
+                FlameGraph.Frame parent = (FlameGraph.Frame) item[0];
+                AggregateNode node = (AggregateNode) item[1];
+                FlameGraph.Frame frame = parent.child(
+                        FlameGraph.frameName(node.signature, node.method, node.async, null, showFullClassName),
+                        node.async);
+                frame.addSelf(node.selfTotal);
+                for (AggregateNode child : node.children.values()) {
+                    stack.push(new Object[]{frame, child});
+                }
+            }
+            return graph;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public long getDroppedCalls() {
+            return droppedCalls;
+        }
+    }
+}
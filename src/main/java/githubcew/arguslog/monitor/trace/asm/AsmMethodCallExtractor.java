@@ -2,26 +2,28 @@ package githubcew.arguslog.monitor.trace.asm;
 
 import githubcew.arguslog.common.util.CommonUtil;
 import githubcew.arguslog.common.util.ContextUtil;
-import lombok.SneakyThrows;
-import org.objectweb.asm.*;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.LineNumberNode;
-import org.objectweb.asm.tree.MethodNode;
+import githubcew.arguslog.config.ArgusProperties;
+import org.objectweb.asm.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.aop.support.AopUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * 方法调用链提取器，基于 ASM 实现字节码分析。
  * 支持接口实现类、继承方法、代理类的调用链追踪。
+ * 类文件解析结果由 {@link ClassSummaryCache} 缓存，调用图按层并行展开。
  *
  * @author chenenwei
  */
@@ -29,6 +31,16 @@ public class AsmMethodCallExtractor {
 
     private static final Logger log = LoggerFactory.getLogger(AsmMethodCallExtractor.class);
 
+    /**
+     * 根节点标识
+     */
+    private static final String ROOT = "ROOT";
+
+    /**
+     * 分析线程池
+     */
+    private static volatile ForkJoinPool pool;
+
     /**
      * 私有构造函数，防止实例化。
      */
@@ -60,8 +72,11 @@ public class AsmMethodCallExtractor {
                 maxDepth);
     }
     /**
-     * 递归提取指定方法的所有自定义方法调用链（支持接口与继承）。
-     * 使用广度优先搜索（BFS）遍历调用图，深度逐层递增。
+     * 提取指定方法的所有自定义方法调用链（支持接口与继承）。
+     * 使用按层的广度优先搜索（BFS）遍历调用图，同一层的方法在 {@link ForkJoinPool} 上并行展开，
+     * 展开结果按原顺序合并，输出顺序与串行展开一致。类文件解析结果由 {@link ClassSummaryCache} 缓存，
+     * 完整的分析结果由 {@link TracePlanCache} 持久化，分析涉及的类字节码未变化时直接使用；
+     * 只分析一层（如渐进式追踪逐个展开方法）时不读写磁盘缓存，以免大量单层结果淘汰完整的分析结果。
      *
      * @param targetClass      目标类（可以是接口或实现类）
      * @param targetMethodName 目标方法名
@@ -80,247 +95,214 @@ public class AsmMethodCallExtractor {
                                                                      Set<String> excludePackages,
                                                                      Set<String> skipClasses,
                                                                      int maxDepth) throws ClassNotFoundException {
-        // 已处理的方法标识集合，防止重复分析
-        Set<String> processedMethods = new HashSet<>();
-        // 存储所有提取到的方法调用信息
-        Set<MethodCallInfo> allCalls = new LinkedHashSet<>();
-        // 使用队列实现广度优先分析
-        Queue<MethodCallInfo> workQueue = new LinkedList<>();
-
         // 将类名中的 '.' 转换为 '/'（JVM 内部格式）
         String rootClassInternal = CommonUtil.toSlash(targetClass.getName());
+
+        // 磁盘缓存，单层分析不缓存
+        boolean cacheable = maxDepth > 1;
+        String planKey = cacheable ? TracePlanCache.keyOf(rootClassInternal, targetMethodName, targetMethodDesc,
+                includePackages, excludePackages, maxDepth) : null;
+        Set<MethodCallInfo> cached = cacheable ? TracePlanCache.load(targetClass, planKey, skipClasses) : null;
+        if (cached != null) {
+            return cached;
+        }
+
+        ExtractContext context = new ExtractContext(targetClass, includePackages, excludePackages);
         // 生成方法唯一标识 key
         String rootKey = genKey(rootClassInternal, targetMethodName, targetMethodDesc);
 
-        // 根节点标识
-        String root = "ROOT";
-
         // 创建根节点（入口方法），深度为0
         MethodCallInfo rootCall = new MethodCallInfo(
-                root, root,
+                ROOT, ROOT,
                 rootClassInternal, targetMethodName, targetMethodDesc,
                 false, rootClassInternal, rootClassInternal, -1, 0
         );
-        // 添加根调用
+
+        // 所有提取到的方法调用信息（按发现顺序）
+        List<MethodCallInfo> allCalls = new ArrayList<>();
+        // 方法 -> 最早出现的调用记录，用于更新继承信息
+        Map<String, MethodCallInfo> firstCalls = new HashMap<>();
+        // 已处理的方法标识集合，防止重复分析
+        Set<String> processedMethods = new HashSet<>();
+
         allCalls.add(rootCall);
-        // 标记为已处理
+        firstCalls.put(rootKey, rootCall);
         processedMethods.add(rootKey);
-        // 加入工作队列
-        workQueue.offer(rootCall);
-
-        // 开始 BFS 循环处理每一层调用
-        while (!workQueue.isEmpty()) {
-            MethodCallInfo caller = workQueue.poll();
-
-            // 处理根节点（无实际类）
-            if (root.equals(caller.getCallerClass())) {
-                try (InputStream in = targetClass.getResourceAsStream("/" + rootClassInternal + ".class")) {
-                    if (in == null) continue;
-                    ClassReader reader = new ClassReader(in);
-                    ClassNode classNode = new ClassNode();
-                    reader.accept(classNode, ClassReader.EXPAND_FRAMES);
-
-                    // 获取被调用类的 Class 对象
-                    Class<?> calledClass = Class.forName(CommonUtil.toDot(caller.getCalledClass()));
-
-                    // 在类及其继承链中查找目标方法
-                    MethodNodeWithInheritance methodWithInheritance = findMethodNodeInHierarchy(
-                            calledClass.getClassLoader(),
-                            caller.getCalledClass(),
-                            caller.getCalledMethod(),
-                            caller.getCalledMethodDesc()
-                    );
-
-                    if (!Objects.isNull(methodWithInheritance)) {
-                        MethodNode methodNode = methodWithInheritance.methodNode;
-                        boolean inherited = methodWithInheritance.inherited;
-                        String actualDefinedClass = methodWithInheritance.definedInClass;
-                        // 提取根方法的行号
-                        int lineNumber = getMethodDeclarationLine(methodNode);
-                        // 更新根节点的行号
-                        ((MethodCallInfo) allCalls.toArray()[0]).setLineNumber(lineNumber);
-
-                        // 提取该方法调用的子方法（深度=1）
-                        Set<MethodCallInfo> calls = extractCallsFromMethodNode(
-                                methodNode,
-                                rootClassInternal,
-                                targetMethodName,
-                                includePackages,
-                                excludePackages,
-                                1,
-                                inherited,
-                                actualDefinedClass
-                        );
-                        // 设置实现类
-                        for (MethodCallInfo call : calls) {
-                            Class<?> specificClass = getSpecificClass(call.getCalledClass(), skipClasses);
-                            if (Objects.isNull(specificClass)) {
-                                continue;
-                            }
-                            // 这里需要更新调用链中当前方法的继承状态
-                            // 由于调用链是层层传递的，我们需要找到对应的调用记录并更新
-                            updateInheritanceInCallChain(allCalls, call, inherited);
-                            call.setSubCalledClass(CommonUtil.toSlash(specificClass.getName()));
-                        }
-                        // 添加到结果和队列中
-                        addCalls(calls, allCalls, workQueue, processedMethods, calledClass.getClassLoader());
-                    }
-                } catch (IOException e) {
-                    if (log.isDebugEnabled()) {
-                        log.error("读取类失败: " + targetClass.getName(), e);
-                    }
+
+        List<MethodCallInfo> level = Collections.singletonList(rootCall);
+        while (!level.isEmpty()) {
+            // 根节点深度为0，总是展开
+            if (level.get(0).getDepth() + 1 > maxDepth && level.get(0) != rootCall) {
+                break;
+            }
+
+            List<Expansion> expansions = expandLevel(level, context);
+
+            // 按原顺序合并
+            List<MethodCallInfo> nextLevel = new ArrayList<>();
+            for (Expansion expansion : expansions) {
+                if (expansion == null) {
+                    continue;
                 }
-            } else {
-                // 处理普通调用节点
-                String calledClass = caller.getSubCalledClass();
-                String calledMethod = caller.getCalledMethod();
-                String calledDesc = caller.getCalledMethodDesc();
-                int nextDepth = caller.getDepth() + 1;
-
-                if (nextDepth > maxDepth) {
-                    break;
+                if (expansion.caller == rootCall) {
+                    // 更新根节点的行号
+                    rootCall.setLineNumber(expansion.declarationLine);
                 }
 
-                try {
-                    // 获取实际的目标类（支持接口、抽象类、代理）
-                    Class<?> specificClass = getSpecificClass(calledClass, skipClasses);
-                    if (Objects.isNull(specificClass)) {
+                // 更新调用链中的继承信息
+                for (ResolvedCall resolved : expansion.calls) {
+                    if (!resolved.hasSpecificClass) {
                         continue;
                     }
-                    // 类名转内部格式
-                    String specificClassSlash = CommonUtil.toSlash(specificClass.getName());
-                    // 构建 .class 文件路径
-                    String resourcePath = specificClassSlash + ".class";
-                    // 加载字节码流
-                    if (Objects.isNull(specificClass.getClassLoader())) {
-                        continue;
-                    }
-                    InputStream in = specificClass.getClassLoader().getResourceAsStream(resourcePath);
-                    if (in == null) {
-                        continue;
+                    MethodCallInfo call = resolved.call;
+                    MethodCallInfo first = firstCalls.get(genKey(call.getCalledClass(), call.getCalledMethod(), call.getCalledMethodDesc()));
+                    if (first != null) {
+                        first.setInherited(expansion.inherited);
                     }
+                }
 
-                    try (InputStream inputStream = in) {
-                        ClassReader reader = new ClassReader(inputStream);
-                        ClassNode classNode = new ClassNode();
-                        reader.accept(classNode, ClassReader.EXPAND_FRAMES);
-
-                        // 在类及其父类中查找方法
-                        MethodNodeWithInheritance methodWithInheritance = findMethodNodeInHierarchy(
-                                specificClass.getClassLoader(),
-                                calledClass,
-                                caller.getCalledMethod(),
-                                caller.getCalledMethodDesc()
-                        );
-                        if (methodWithInheritance != null) {
-                            MethodNode methodNode = methodWithInheritance.methodNode;
-                            boolean inherited = methodWithInheritance.inherited;
-                            String actualDefinedClass = methodWithInheritance.definedInClass;
-                            Set<MethodCallInfo> calls = extractCallsFromMethodNode(
-                                    methodNode,
-                                    specificClassSlash,
-                                    calledMethod,
-                                    includePackages,
-                                    excludePackages,
-                                    nextDepth,
-                                    inherited,
-                                    actualDefinedClass
-                            );
-                            // 更新调用链中的继承信息
-                            for (MethodCallInfo call : calls) {
-                                // 这里需要更新调用链中当前方法的继承状态
-                                // 由于调用链是层层传递的，我们需要找到对应的调用记录并更新
-                                updateInheritanceInCallChain(allCalls, call, inherited);
-
-                                Class<?> callSpecificClass = getSpecificClass(call.getCalledClass(), skipClasses);
-                                call.setSubCalledClass(CommonUtil.toSlash(callSpecificClass.getName()));
-                            }
-                            // 添加到结果中
-                            addCalls(calls, allCalls, workQueue, processedMethods, specificClass.getClassLoader());
-
-                        } else {
-                            if (log.isDebugEnabled()) {
-                                log.error("未找到方法: " + specificClass.getName() + "." + calledMethod + calledDesc);
-                            }
+                // 添加到结果和下一层中，并去重
+                for (ResolvedCall resolved : expansion.calls) {
+                    MethodCallInfo call = resolved.call;
+                    String methodKey = genKey(call.getCalledClass(), call.getCalledMethod(), call.getCalledMethodDesc());
+                    String key = methodKey + call.getDepth() + call.getLineNumber();
+                    if (processedMethods.add(key)) {
+                        if (resolved.definition != null) {
+                            call.setActualDefinedClass(resolved.definition.definedInClass);
+                            call.setInherited(resolved.definition.inherited);
                         }
+                        nextLevel.add(call);
                     }
-                } catch (Exception e) {
-                    if (log.isDebugEnabled()) {
-                        log.error("分析失败: " + calledClass  , e);
-                    }
+                    allCalls.add(call);
+                    firstCalls.putIfAbsent(methodKey, call);
                 }
             }
+            level = nextLevel;
         }
 
-        return allCalls;
+        skipClasses.addAll(context.skipClasses);
+        // 调用信息在合并过程中会被修改，最后再放入集合
+        Set<MethodCallInfo> result = new LinkedHashSet<>(allCalls);
+        if (cacheable) {
+            TracePlanCache.save(targetClass, planKey, result, context.visitedClasses, context.resolvedClassNames(), context.skipClasses);
+        }
+        return result;
     }
 
     /**
-     * 更新调用链中的继承信息
-     * @param allCalls 调用链
-     * @param currentCall 当前调用
-     * @param inherited 是否是继承
+     * 并行展开一层调用
+     *
+     * @param level   当前层调用
+     * @param context 提取上下文
+     * @return 展开结果，与当前层一一对应，无法展开的为null
      */
-    private static void updateInheritanceInCallChain(Set<MethodCallInfo> allCalls,
-                                                     MethodCallInfo currentCall,
-                                                     boolean inherited) {
-        // 查找与 currentCall 匹配的调用记录
-        for (MethodCallInfo call : allCalls) {
-            if (call.getCalledClass().equals(currentCall.getCalledClass()) &&
-                    call.getCalledMethod().equals(currentCall.getCalledMethod()) &&
-                    call.getCalledMethodDesc().equals(currentCall.getCalledMethodDesc())) {
-                call.setInherited(inherited);
-                break;
-            }
+    private static List<Expansion> expandLevel(List<MethodCallInfo> level, ExtractContext context) {
+        if (level.size() == 1) {
+            return Collections.singletonList(expand(level.get(0), context));
+        }
+        try {
+            return getPool().submit(() -> level.parallelStream()
+                    .map(caller -> expand(caller, context))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("调用链分析被中断");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
         }
     }
 
     /**
-     * 从 MethodNode 中提取方法内的所有自定义方法调用。
+     * 展开单个调用，提取其方法体内的自定义方法调用
      *
-     * @param methodNode      方法节点
-     * @param callerClass     调用类（内部名）
-     * @param callerMethod    调用方法名
-     * @param includePackages 包过滤集合
-     * @param depth           调用深度
-     * @return 方法调用信息集合
+     * @param caller  调用
+     * @param context 提取上下文
+     * @return 展开结果，无法展开返回null
      */
-    private static Set<MethodCallInfo> extractCallsFromMethodNode(MethodNode methodNode,
-                                                                  String callerClass,
-                                                                  String callerMethod,
-                                                                  Set<String> includePackages,
-                                                                  Set<String> excludePackages,
-                                                                  int depth,
-                                                                  boolean inherited,
-                                                                  String actualDefinedClass) {
-        Set<MethodCallInfo> calls = new HashSet<>();
-        ArgusMethodCallVisitor visitor = new ArgusMethodCallVisitor(
-                includePackages, excludePackages, callerClass, callerMethod, calls, depth, inherited, actualDefinedClass);
-        methodNode.accept(visitor);
-        return calls;
+    private static Expansion expand(MethodCallInfo caller, ExtractContext context) {
+        boolean isRoot = ROOT.equals(caller.getCallerClass());
+        // 根节点使用入口类，其它节点使用实际的目标类（支持接口、抽象类、代理）
+        String calledClass = isRoot ? caller.getCalledClass() : caller.getSubCalledClass();
+        try {
+            Class<?> specificClass = isRoot ? context.targetClass : context.getSpecificClass(calledClass);
+            if (Objects.isNull(specificClass) || Objects.isNull(specificClass.getClassLoader())) {
+                return null;
+            }
+            ClassLoader classLoader = specificClass.getClassLoader();
+            String specificClassSlash = isRoot ? calledClass : CommonUtil.toSlash(specificClass.getName());
+
+            // 在类及其父类中查找方法
+            MethodDefinition definition = findMethodInHierarchy(
+                    classLoader,
+                    calledClass,
+                    caller.getCalledMethod(),
+                    caller.getCalledMethodDesc(),
+                    context.visitedClasses
+            );
+            if (definition == null) {
+                if (log.isDebugEnabled()) {
+                    log.error("未找到方法: " + specificClass.getName() + "." + caller.getCalledMethod() + caller.getCalledMethodDesc());
+                }
+                return null;
+            }
+
+            Expansion expansion = new Expansion(caller, definition.inherited, definition.method.getDeclarationLine());
+            for (ClassSummary.CallSite site : definition.method.getCallSites()) {
+                if (!context.isFilter(site.getOwner())) {
+                    continue;
+                }
+                MethodCallInfo call = new MethodCallInfo(
+                        specificClassSlash, caller.getCalledMethod(),
+                        site.getOwner(), site.getName(), site.getDesc(), definition.inherited,
+                        definition.definedInClass,
+                        site.getOwner(), site.getLine(), caller.getDepth() + 1
+                );
+                // 设置实现类
+                Class<?> callSpecificClass = context.getSpecificClass(call.getCalledClass());
+                if (!Objects.isNull(callSpecificClass)) {
+                    call.setSubCalledClass(CommonUtil.toSlash(callSpecificClass.getName()));
+                }
+                // 立即查找方法的实际定义类
+                MethodDefinition callDefinition = findMethodInHierarchy(
+                        classLoader,
+                        call.getCalledClass(),
+                        call.getCalledMethod(),
+                        call.getCalledMethodDesc(),
+                        context.visitedClasses
+                );
+                expansion.calls.add(new ResolvedCall(call, !Objects.isNull(callSpecificClass), callDefinition));
+            }
+            return expansion;
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.error("分析失败: " + calledClass, e);
+            }
+            return null;
+        }
     }
 
     /**
-     * 获取方法的第一行行号（从 LineNumberTable 中提取）
+     * 获取分析线程池
      *
-     * @param methodNode 方法节点
-     * @return 行号，未找到返回 -1
+     * @return 线程池
      */
-    public static int getMethodDeclarationLine(MethodNode methodNode) {
-        if (methodNode.instructions == null) return -1;
-
-        int minLine = Integer.MAX_VALUE;
-        AbstractInsnNode node = methodNode.instructions.getFirst();
-        while (node != null) {
-            if (node instanceof LineNumberNode) {
-                int line = ((LineNumberNode) node).line;
-                if (line > 0) {
-                    minLine = Math.min(minLine, line);
+    private static ForkJoinPool getPool() {
+        if (pool == null) {
+            synchronized (AsmMethodCallExtractor.class) {
+                if (pool == null) {
+                    ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+                    int parallelism = argusProperties == null ? 4 : Math.max(1, argusProperties.getTraceMaxThreadNum());
+                    AtomicInteger index = new AtomicInteger();
+                    pool = new ForkJoinPool(parallelism, p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("[Argus-Trace-Extract-" + index.incrementAndGet() + "]");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
                 }
             }
-            node = node.getNext();
         }
-        return minLine == Integer.MAX_VALUE ? -1 : minLine;
+        return pool;
     }
 
     /**
@@ -330,90 +312,43 @@ public class AsmMethodCallExtractor {
      * @param className   类名（内部格式，如 java/lang/Object）
      * @param name        方法名
      * @param desc        方法描述符
-     * @return 找到的方法节点，未找到返回 null
+     * @param visitedClasses 读取过的类（内部格式）
+     * @return 找到的方法，未找到返回 null
      * @throws IOException 如果类文件读取失败
      */
-    private static MethodNodeWithInheritance findMethodNodeInHierarchy(ClassLoader classLoader,
-                                                                       String className,
-                                                                       String name,
-                                                                       String desc) throws IOException {
+    private static MethodDefinition findMethodInHierarchy(ClassLoader classLoader,
+                                                          String className,
+                                                          String name,
+                                                          String desc,
+                                                          Set<String> visitedClasses) throws IOException {
         String currentClass = className;
-        String originalClass = className;
-        String definedInClass = null;
 
         while (currentClass != null) {
-            try (InputStream in = classLoader.getResourceAsStream(CommonUtil.toSlash(currentClass) + ".class")) {
-                if (in == null) {
-                    break;
-                }
-
-                ClassReader reader = new ClassReader(in);
-                ClassNode classNode = new ClassNode();
-                reader.accept(classNode, ClassReader.EXPAND_FRAMES);
+            visitedClasses.add(currentClass);
+            ClassSummary summary = ClassSummaryCache.get(classLoader, currentClass);
+            if (summary == null) {
+                break;
+            }
 
-                // 遍历当前类的方法
-                for (MethodNode method : classNode.methods) {
-                    if (method.name.equals(name) && method.desc.equals(desc)) {
-                        definedInClass = currentClass; // 记录方法实际定义的类
-                        boolean inherited = !currentClass.equals(originalClass);
-                        return new MethodNodeWithInheritance(method, inherited, definedInClass);
-                    }
-                }
+            ClassSummary.MethodSummary method = summary.getMethod(name, desc);
+            if (method != null) {
+                // 记录方法实际定义的类
+                boolean inherited = !currentClass.equals(className);
+                return new MethodDefinition(method, inherited, currentClass);
+            }
 
-                // 继续查找父类
-                currentClass = classNode.superName;
+            // 继续查找父类
+            currentClass = summary.getSuperName();
 
-                // 到达 Object 类停止
-                if ("java/lang/Object".equals(currentClass)) {
-                    break;
-                }
+            // 到达 Object 类停止
+            if ("java/lang/Object".equals(currentClass)) {
+                break;
             }
         }
 
         return null;
     }
 
-    /**
-     * 添加新的方法调用到结果集和工作队列中，并去重。
-     *
-     * @param newCalls         新的方法调用集合
-     * @param allCalls         所有调用集合
-     * @param workQueue        工作队列
-     * @param processedMethods 已处理的方法 key 集合
-     */
-    private static void addCalls(Set<MethodCallInfo> newCalls,
-                                 Set<MethodCallInfo> allCalls,
-                                 Queue<MethodCallInfo> workQueue,
-                                 Set<String> processedMethods,
-                                 ClassLoader classLoader) {
-        for (MethodCallInfo call : newCalls) {
-            String key = genKey(call.getCalledClass(), call.getCalledMethod(), call.getCalledMethodDesc()) + call.getDepth() + call.getLineNumber();
-
-            if (!processedMethods.contains(key)) {
-                // 立即查找方法的实际定义类
-                try {
-                    MethodNodeWithInheritance methodInfo = findMethodNodeInHierarchy(
-                            classLoader,
-                            call.getCalledClass(),
-                            call.getCalledMethod(),
-                            call.getCalledMethodDesc()
-                    );
-
-                    if (methodInfo != null) {
-                        call.setActualDefinedClass(methodInfo.definedInClass);
-                        call.setInherited(methodInfo.inherited);
-                    }
-                } catch (IOException e) {
-                    // 处理异常
-                }
-
-                processedMethods.add(key);
-                workQueue.offer(call);
-            }
-            allCalls.add(call);
-        }
-    }
-
     /**
      * 获取实际的目标类（支持接口、抽象类、代理类）。
      *
@@ -450,6 +385,17 @@ public class AsmMethodCallExtractor {
         return specificClass;
     }
 
+    /**
+     * 解析被调用类的实际类名，用于校验磁盘缓存中的实现类是否变化
+     *
+     * @param calledClass 被调用类名（内部格式）
+     * @return 实际类名，无法获取返回 {@link TracePlanCache#MISSING}
+     */
+    static String resolveClassName(String calledClass) {
+        Class<?> specificClass = getSpecificClass(calledClass, new HashSet<>());
+        return specificClass == null ? TracePlanCache.MISSING : specificClass.getName();
+    }
+
     /**
      * 生成方法的唯一标识 key。
      *
@@ -463,264 +409,134 @@ public class AsmMethodCallExtractor {
     }
 
     /**
-     * ASM MethodVisitor 实现类，用于提取方法内的调用指令。
+     * 判断是否为自定义方法（在指定包内 或 不在指定包内）。
+     *
+     * @param className       类名（内部格式）
+     * @param includePackages 包含包
+     * @param excludePackages 排除包
+     * @return 是否匹配
      */
-    private static class ArgusMethodCallVisitor extends MethodVisitor {
-        private final Set<String> includePackages = new HashSet<>();
-        private final Set<String> excludePackages = new HashSet<>();
-        private final String callerClass;
-        private final String callerMethod;
-        private final Set<MethodCallInfo> methodCalls;
-        private final int currentDepth;
-        private int currentLine = -1;
-        private boolean callerInherited;
-        private String actualDefinedClass;
-        /**
-         * 构造方法调用访问器。
-         *
-         * @param includePackages 包过滤集合
-         * @param callerClass     调用类
-         * @param callerMethod    调用方法
-         * @param methodCalls     存储结果的集合
-         * @param currentDepth    当前调用深度
-         */
-        public ArgusMethodCallVisitor(Set<String> includePackages,
-                                      Set<String> excludePackages,
-                                      String callerClass,
-                                      String callerMethod,
-                                      Set<MethodCallInfo> methodCalls,
-                                      int currentDepth,
-                                      boolean callerInherited,
-                                      String actualDefinedClass) {
-            super(Opcodes.ASM9);
-            if (!Objects.isNull(includePackages)) {
-                this.includePackages.addAll(includePackages);
-            }
-            if (!Objects.isNull(excludePackages)) {
-                this.excludePackages.addAll(excludePackages);
-            }
-            this.callerClass = callerClass;
-            this.callerMethod = callerMethod;
-            this.methodCalls = methodCalls;
-            this.currentDepth = currentDepth;
-            this.callerInherited = callerInherited;
-            this.actualDefinedClass = actualDefinedClass;
-        }
-
-        /**
-         * 访问方法调用指令（如 invokevirtual, invokeinterface 等）
-         * @param opcode opcode
-         * @param owner owner
-         * @param name name
-         * @param descriptor descriptor
-         * @param isInterface isInterface
-         */
-        @SneakyThrows
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name,
-                                    String descriptor, boolean isInterface) {
-
-            // 跳过非业务方法
-            if (isTrivialMethod(name, descriptor)) {
-                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
-                return;
-            }
-
-            if (isFilter(owner)) {
-                MethodCallInfo callInfo = new MethodCallInfo(
-                        callerClass, callerMethod,
-                        owner, name, descriptor, callerInherited,
-                        actualDefinedClass,
-                        owner, currentLine, currentDepth
-                );
-                methodCalls.add(callInfo);
-            }
-            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
-        }
-
-        /**
-         * 访问行号指令，用于记录调用发生的源码行
-         * @param line 行号
-         * @param start 开始位置
-         */
-        @Override
-        public void visitLineNumber(int line, org.objectweb.asm.Label start) {
-            currentLine = line;
-            super.visitLineNumber(line, start);
-        }
-
-        /**
-         * 访问 invokedynamic 指令，处理 Lambda、方法引用等动态调用。
-         * @param name 方法名
-         * @param descriptor 方法描述
-         * @param bootstrapMethodHandle 引导方法句柄
-         * @param bootstrapMethodArguments 方法参数
-         */
-        @Override
-        public void visitInvokeDynamicInsn(String name, String descriptor,
-                                           Handle bootstrapMethodHandle,
-                                           Object... bootstrapMethodArguments) {
-            for (Object arg : bootstrapMethodArguments) {
-                if (arg instanceof Handle) {
-                    Handle handle = (Handle) arg;
-                    int tag = handle.getTag();
-                    if ((tag == Opcodes.H_INVOKESTATIC ||
-                            tag == Opcodes.H_INVOKESPECIAL ||
-                            tag == Opcodes.H_INVOKEVIRTUAL ||
-                            tag == Opcodes.H_INVOKEINTERFACE) &&
-                            isFilter(handle.getOwner())) {
-
-                        MethodCallInfo callInfo = new MethodCallInfo(
-                                callerClass, callerMethod,
-                                handle.getOwner(), handle.getName(), handle.getDesc(),
-                                callerInherited, actualDefinedClass,
-                                handle.getOwner(), currentLine, currentDepth
-                        );
-                        methodCalls.add(callInfo);
-                    }
-                }
-            }
-            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
-        }
-
-        /**
-         * 判断是否为自定义方法（在指定包内 或 不在指定包内）。
-         *
-         * @param className 类名（内部格式）
-         * @return 是否匹配
-         */
-        private boolean isFilter(String className) {
-
-            if (className.contains("/")) {
-                className = className.replace("/", ".");
-            }
-            // 在排除包excludePackages中且不在包includePackages中的过滤掉
-            for (String excludePackage : excludePackages) {
-                if (className.startsWith(excludePackage)) {
-                    for (String includePackage : includePackages) {
-                        if (className.startsWith(includePackage)) {
-                            return true;
-                        }
+    private static boolean isFilter(String className, Set<String> includePackages, Set<String> excludePackages) {
+
+        className = CommonUtil.toDot(className);
+        // 在排除包excludePackages中且不在包includePackages中的过滤掉
+        for (String excludePackage : excludePackages) {
+            if (className.startsWith(excludePackage)) {
+                for (String includePackage : includePackages) {
+                    if (className.startsWith(includePackage)) {
+                        return true;
                     }
-                    return false;
-                }
-            }
-
-            for (String includedPackage : includePackages) {
-                if (className.startsWith(includedPackage)) {
-                    return true;
                 }
+                return false;
             }
-
-            return false;
         }
 
-        /**
-         * 判断是否为“无意义方法”：getter、setter、toString、equals、hashCode
-         *
-         * @param name       方法名
-         * @param descriptor 方法描述符
-         * @return 是否为应跳过的无意义方法
-         */
-        private static boolean isTrivialMethod(String name, String descriptor) {
-            // 跳过 <init> 和 <clinit>
-            if ("<init>".equals(name) || "<clinit>".equals(name)) {
+        for (String includedPackage : includePackages) {
+            if (className.startsWith(includedPackage)) {
                 return true;
             }
+        }
 
-            Type methodType = Type.getMethodType(descriptor);
-            Type[] args = methodType.getArgumentTypes();
-
-            // -------------------------------
-            // 1. Getter / Setter
-            // -------------------------------
-            if (name.startsWith("set") && args.length == 1 && Character.isUpperCase(name.charAt(3))) {
-                if (isStandardSetter(name)) {
-                    return true;
-                }
-            }
-
-            if (args.length == 0) {
-                if (name.startsWith("get") && name.length() > 3 && Character.isUpperCase(name.charAt(3))) {
-                    return true;
-                }
-//                if (name.startsWith("is") && name.length() > 2 && Character.isUpperCase(name.charAt(2))) {
-//                    Type returnType = methodType.getReturnType();
-//                    return returnType.equals(Type.BOOLEAN_TYPE) ||
-//                            "Ljava/lang/Boolean;".equals(returnType.getDescriptor());
-//                }
-            }
-
-            // -------------------------------
-            // 2. toString()
-            // -------------------------------
-            if ("toString".equals(name) && args.length == 0) {
-                Type returnType = methodType.getReturnType();
-                return "Ljava/lang/String;".equals(returnType.getDescriptor());
-            }
+        return false;
+    }
 
-            // -------------------------------
-            // 3. hashCode()
-            // -------------------------------
-            if ("hashCode".equals(name) && args.length == 0) {
-                Type returnType = methodType.getReturnType();
-                return returnType.equals(Type.INT_TYPE);
+    /**
+     * 提取上下文，同一次提取内共享，可被多个线程并发访问
+     */
+    private static class ExtractContext {
+        final Class<?> targetClass;
+        final Set<String> includePackages = new HashSet<>();
+        final Set<String> excludePackages = new HashSet<>();
+        final Set<String> skipClasses = ConcurrentHashMap.newKeySet();
+        // 分析过程中读取过的类，用于校验磁盘缓存
+        final Set<String> visitedClasses = ConcurrentHashMap.newKeySet();
+        // 实际目标类缓存，避免重复查找 Spring Bean
+        final Map<String, Optional<Class<?>>> specificClasses = new ConcurrentHashMap<>();
+        // 包过滤结果缓存
+        final Map<String, Boolean> filterResults = new ConcurrentHashMap<>();
+
+        ExtractContext(Class<?> targetClass, Set<String> includePackages, Set<String> excludePackages) {
+            this.targetClass = targetClass;
+            if (!Objects.isNull(includePackages)) {
+                this.includePackages.addAll(includePackages);
             }
-
-            // -------------------------------
-            // 4. equals(Object)
-            // -------------------------------
-            if ("equals".equals(name) && args.length == 1) {
-                Type returnType = methodType.getReturnType();
-                return returnType.equals(Type.BOOLEAN_TYPE) &&
-                        "Ljava/lang/Object;".equals(args[0].getDescriptor());
+            if (!Objects.isNull(excludePackages)) {
+                this.excludePackages.addAll(excludePackages);
             }
+        }
 
-            return false;
+        Class<?> getSpecificClass(String calledClass) {
+            return specificClasses.computeIfAbsent(calledClass,
+                    name -> Optional.ofNullable(AsmMethodCallExtractor.getSpecificClass(name, skipClasses))).orElse(null);
         }
 
         /**
-         * 是否是标准setter
-         * @param name 名称
-         * @return 结果
+         * 被调用类解析到的实际类名
+         *
+         * @return 被调用类 -> 实际类名
          */
-        private static boolean isStandardSetter(String name) {
-            if (!name.startsWith("set") || name.length() <= 3) return false;
-            if (!Character.isUpperCase(name.charAt(3))) return false;
+        Map<String, String> resolvedClassNames() {
+            Map<String, String> names = new HashMap<>(specificClasses.size());
+            specificClasses.forEach((name, specificClass) ->
+                    names.put(name, specificClass.map(Class::getName).orElse(TracePlanCache.MISSING)));
+            return names;
+        }
 
-            String property = name.substring(3);
-            String lower = property.toLowerCase();
+        boolean isFilter(String className) {
+            return filterResults.computeIfAbsent(className,
+                    name -> AsmMethodCallExtractor.isFilter(name, includePackages, excludePackages));
+        }
+    }
 
-            // 排除含业务动词的
-            if (lower.contains("from") || lower.contains("with") || lower.contains("and") ||
-                    lower.contains("by") || lower.contains("for") || lower.contains("using") ||
-                    lower.contains("via") || lower.contains("when") || lower.contains("after")) {
-                return false;
-            }
+    /**
+     * 单个调用的展开结果
+     */
+    private static class Expansion {
+        final MethodCallInfo caller;
+        final boolean inherited;
+        final int declarationLine;
+        final List<ResolvedCall> calls = new ArrayList<>();
+
+        Expansion(MethodCallInfo caller, boolean inherited, int declarationLine) {
+            this.caller = caller;
+            this.inherited = inherited;
+            this.declarationLine = declarationLine;
+        }
+    }
 
-            // 必须是合法的标识符：首字母大写，其余字母数字
-            return property.matches("^[A-Z][a-zA-Z]*$");
+    /**
+     * 已解析实现类和定义类的调用
+     */
+    private static class ResolvedCall {
+        final MethodCallInfo call;
+        final boolean hasSpecificClass;
+        final MethodDefinition definition;
+
+        ResolvedCall(MethodCallInfo call, boolean hasSpecificClass, MethodDefinition definition) {
+            this.call = call;
+            this.hasSpecificClass = hasSpecificClass;
+            this.definition = definition;
         }
     }
 
     /**
-     * 方法节点
+     * 方法定义
      */
-    private static class MethodNodeWithInheritance {
-        MethodNode methodNode;
-        boolean inherited;
-        String definedInClass; // 方法实际定义的类
+    private static class MethodDefinition {
+        final ClassSummary.MethodSummary method;
+        final boolean inherited;
+        final String definedInClass; // 方法实际定义的类
 
         /**
          * 构造方法
-         * @param methodNode 方法名称
+         * @param method 方法摘要
          * @param inherited 继承信息
          * @param definedInClass 方法定义的实际类
          */
-        MethodNodeWithInheritance(MethodNode methodNode, boolean inherited, String definedInClass) {
-            this.methodNode = methodNode;
+        MethodDefinition(ClassSummary.MethodSummary method, boolean inherited, String definedInClass) {
+            this.method = method;
             this.inherited = inherited;
             this.definedInClass = definedInClass;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,295 @@
+package githubcew.arguslog.monitor.trace.asm;
+
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * 类摘要
+ * <div>
+ *   解析一次类文件后保留调用链分析所需的信息：父类、方法声明行号以及方法内的调用点，
+ *   不保留指令树，内存占用远小于 {@code ClassNode}。
+ * </div>
+ * <div>
+ *   调用点已剔除 getter/setter、toString、equals、hashCode 等无意义方法，
+ *   包过滤与追踪参数相关，在使用时进行。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ClassSummary {
+
+    /**
+     * 类名（内部格式）
+     */
+    private final String name;
+
+    /**
+     * 父类名（内部格式）
+     */
+    private String superName;
+
+    /**
+     * 方法摘要, key: 方法名 + 描述符
+     */
+    private final Map<String, MethodSummary> methods = new HashMap<>();
+
+    private ClassSummary(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 从类文件流解析类摘要
+     *
+     * @param name 类名（内部格式）
+     * @param in   类文件流
+     * @return 类摘要
+     * @throws IOException 读取失败
+     */
+    public static ClassSummary parse(String name, InputStream in) throws IOException {
+        ClassSummary summary = new ClassSummary(name);
+        ClassReader reader = new ClassReader(in);
+        reader.accept(summary.new SummaryClassVisitor(), ClassReader.SKIP_FRAMES);
+        return summary;
+    }
+
+    /**
+     * 获取方法摘要
+     *
+     * @param methodName 方法名
+     * @param desc       方法描述符
+     * @return 方法摘要，不存在返回null
+     */
+    public MethodSummary getMethod(String methodName, String desc) {
+        return methods.get(methodName + desc);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * 类摘要解析访问器
+     */
+    private class SummaryClassVisitor extends ClassVisitor {
+
+        SummaryClassVisitor() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String className, String signature,
+                          String superName, String[] interfaces) {
+            ClassSummary.this.superName = superName;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String methodName, String descriptor,
+                                         String signature, String[] exceptions) {
+            MethodSummary method = new MethodSummary(methodName, descriptor);
+            methods.put(methodName + descriptor, method);
+            return new SummaryMethodVisitor(method);
+        }
+    }
+
+    /**
+     * 方法摘要解析访问器
+     */
+    private static class SummaryMethodVisitor extends MethodVisitor {
+
+        private final MethodSummary method;
+
+        private int currentLine = -1;
+
+        SummaryMethodVisitor(MethodSummary method) {
+            super(Opcodes.ASM9);
+            this.method = method;
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            currentLine = line;
+            if (line > 0 && (method.declarationLine < 0 || line < method.declarationLine)) {
+                method.declarationLine = line;
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            if (!isTrivialMethod(name, descriptor)) {
+                method.callSites.add(new CallSite(owner, name, descriptor, currentLine));
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                           Object... bootstrapMethodArguments) {
+            // Lambda、方法引用
+            for (Object arg : bootstrapMethodArguments) {
+                if (arg instanceof Handle) {
+                    Handle handle = (Handle) arg;
+                    int tag = handle.getTag();
+                    if (tag == Opcodes.H_INVOKESTATIC ||
+                            tag == Opcodes.H_INVOKESPECIAL ||
+                            tag == Opcodes.H_INVOKEVIRTUAL ||
+                            tag == Opcodes.H_INVOKEINTERFACE) {
+                        method.callSites.add(new CallSite(handle.getOwner(), handle.getName(), handle.getDesc(), currentLine));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断是否为“无意义方法”：getter、setter、toString、equals、hashCode
+     *
+     * @param name       方法名
+     * @param descriptor 方法描述符
+     * @return 是否为应跳过的无意义方法
+     */
+    static boolean isTrivialMethod(String name, String descriptor) {
+        // 跳过 <init> 和 <clinit>
+        if ("<init>".equals(name) || "<clinit>".equals(name)) {
+            return true;
+        }
+
+        Type methodType = Type.getMethodType(descriptor);
+        Type[] args = methodType.getArgumentTypes();
+
+        // 1. Getter / Setter
+        if (name.startsWith("set") && args.length == 1 && name.length() > 3 && Character.isUpperCase(name.charAt(3))) {
+            if (isStandardSetter(name)) {
+                return true;
+            }
+        }
+
+        if (args.length == 0) {
+            if (name.startsWith("get") && name.length() > 3 && Character.isUpperCase(name.charAt(3))) {
+                return true;
+            }
+        }
+
+        // 2. toString()
+        if ("toString".equals(name) && args.length == 0) {
+            return "Ljava/lang/String;".equals(methodType.getReturnType().getDescriptor());
+        }
+
+        // 3. hashCode()
+        if ("hashCode".equals(name) && args.length == 0) {
+            return methodType.getReturnType().equals(Type.INT_TYPE);
+        }
+
+        // 4. equals(Object)
+        if ("equals".equals(name) && args.length == 1) {
+            return methodType.getReturnType().equals(Type.BOOLEAN_TYPE) &&
+                    "Ljava/lang/Object;".equals(args[0].getDescriptor());
+        }
+
+        return false;
+    }
+
+    /**
+     * 是否是标准setter
+     *
+     * @param name 名称
+     * @return 结果
+     */
+    private static boolean isStandardSetter(String name) {
+        String property = name.substring(3);
+        String lower = property.toLowerCase();
+
+        // 排除含业务动词的
+        if (lower.contains("from") || lower.contains("with") || lower.contains("and") ||
+                lower.contains("by") || lower.contains("for") || lower.contains("using") ||
+                lower.contains("via") || lower.contains("when") || lower.contains("after")) {
+            return false;
+        }
+
+        // 必须是合法的标识符：首字母大写，其余字母
+        return property.matches("^[A-Z][a-zA-Z]*$");
+    }
+
+    /**
+     * 方法摘要
+     */
+    public static class MethodSummary {
+
+        private final String name;
+
+        private final String desc;
+
+        /**
+         * 方法声明行号（最小行号），未知为-1
+         */
+        private int declarationLine = -1;
+
+        /**
+         * 调用点，按出现顺序
+         */
+        private final List<CallSite> callSites = new ArrayList<>();
+
+        MethodSummary(String name, String desc) {
+            this.name = name;
+            this.desc = desc;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+
+        public int getDeclarationLine() {
+            return declarationLine;
+        }
+
+        public List<CallSite> getCallSites() {
+            return callSites;
+        }
+    }
+
+    /**
+     * 调用点
+     */
+    public static class CallSite {
+
+        private final String owner;
+
+        private final String name;
+
+        private final String desc;
+
+        private final int line;
+
+        CallSite(String owner, String name, String desc, int line) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.line = line;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+
+        public int getLine() {
+            return line;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package githubcew.arguslog.monitor.trace.asm;
+
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 类摘要缓存
+ * <div>
+ *   按 类加载器 + 类名 缓存 {@link ClassSummary}，多次 trace 之间共享，避免重复读取和解析类文件。
+ *   缓存条数有上限，按最近使用淘汰；类加载器以弱引用持有，不阻止其回收。
+ * </div>
+ * <div>
+ *   类摘要按类加载器读取到的类文件解析，不反映运行时重定义（如热部署）的字节码；
+ *   热部署后调用链分析仍按原类文件进行，需要时通过 {@link #clear()} 清空缓存。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class ClassSummaryCache {
+
+    /**
+     * 默认最大缓存条数
+     */
+    private static final int DEFAULT_MAX_SIZE = 2048;
+
+    /**
+     * 缓存
+     */
+    private static final Map<Key, ClassSummary> cache = new LinkedHashMap<Key, ClassSummary>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ClassSummary> eldest) {
+            return size() > maxSize();
+        }
+    };
+
+    /**
+     * 获取类摘要，未缓存时读取并解析类文件
+     *
+     * @param classLoader 类加载器
+     * @param className   类名（内部格式）
+     * @return 类摘要，类文件不存在返回null
+     * @throws IOException 读取失败
+     */
+    public static ClassSummary get(ClassLoader classLoader, String className) throws IOException {
+        if (classLoader == null) {
+            return null;
+        }
+        String internalName = CommonUtil.toSlash(className);
+        Key key = new Key(classLoader, internalName);
+        synchronized (cache) {
+            ClassSummary summary = cache.get(key);
+            if (summary != null) {
+                return summary;
+            }
+        }
+
+        // 解析放在锁外，并发时同一个类可能被重复解析，结果一致
+        ClassSummary summary;
+        try (InputStream in = classLoader.getResourceAsStream(internalName + ".class")) {
+            if (in == null) {
+                return null;
+            }
+            summary = ClassSummary.parse(internalName, in);
+        }
+        synchronized (cache) {
+            cache.put(key, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 当前缓存条数
+     *
+     * @return 条数
+     */
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 最大缓存条数
+     *
+     * @return 条数
+     */
+    private static int maxSize() {
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        if (argusProperties == null || argusProperties.getTraceClassCacheSize() < 1) {
+            return DEFAULT_MAX_SIZE;
+        }
+        return argusProperties.getTraceClassCacheSize();
+    }
+
+    /**
+     * 缓存键，类加载器按引用比较
+     */
+    private static final class Key {
+
+        private final WeakReference<ClassLoader> loader;
+
+        private final String className;
+
+        private final int hash;
+
+        Key(ClassLoader loader, String className) {
+            this.loader = new WeakReference<>(loader);
+            this.className = className;
+            this.hash = System.identityHashCode(loader) * 31 + className.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            ClassLoader current = loader.get();
+            return hash == other.hash
+                    && current != null
+                    && current == other.loader.get()
+                    && className.equals(other.className);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package githubcew.arguslog.monitor.trace.asm;
+
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 调用链分析结果磁盘缓存
+ * <div>
+ *   以 (入口方法, 包含包, 排除包, 深度) 为键，把 {@link AsmMethodCallExtractor} 的分析结果
+ *   连同分析过程中读取过的类及其字节码摘要、接口和抽象类解析到的实现类（Spring Bean）写入本地文件。
+ *   查找时逐个重新计算类字节码摘要并重新解析实现类，全部一致才使用缓存，
+ *   任一类变化（重新构建部署）或实现类变化（profile、条件装配）则重新分析。重启后同一构建的 trace 不再重复分析。
+ * </div>
+ * <div>
+ *   缓存文件数受上限控制，按最近使用时间淘汰。读写失败只记录日志，不影响分析。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TracePlanCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TracePlanCache.class);
+
+    /**
+     * 文件格式版本
+     */
+    private static final String VERSION = "argus-trace-plan-2";
+
+    /**
+     * 缓存文件后缀
+     */
+    private static final String SUFFIX = ".plan";
+
+    /**
+     * 类不存在时的摘要
+     */
+    static final String MISSING = "-";
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * 查找缓存的分析结果
+     *
+     * @param targetClass 入口类
+     * @param key         缓存键
+     * @param skipClasses 跳过的类集合，命中时追加缓存的跳过类
+     * @return 分析结果，未命中返回null
+     */
+    public static Set<MethodCallInfo> load(Class<?> targetClass, String key, Set<String> skipClasses) {
+        Path dir = directory();
+        if (dir == null) {
+            return null;
+        }
+        Path file = dir.resolve(fileName(key));
+        if (!Files.isRegularFile(file)) {
+            MISSES.incrementAndGet();
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!VERSION.equals(reader.readLine()) || !key.equals(reader.readLine())) {
+                MISSES.incrementAndGet();
+                return null;
+            }
+            ClassLoader classLoader = targetClass.getClassLoader();
+            Set<MethodCallInfo> calls = new LinkedHashSet<>();
+            Set<String> skipped = new HashSet<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                switch (fields[0]) {
+                    case "C":
+                        // 类字节码已变化
+                        if (!fields[2].equals(hashClass(classLoader, fields[1]))) {
+                            MISSES.incrementAndGet();
+                            return null;
+                        }
+                        break;
+                    case "R":
+                        // 实现类已变化
+                        if (!fields[2].equals(AsmMethodCallExtractor.resolveClassName(fields[1]))) {
+                            MISSES.incrementAndGet();
+                            return null;
+                        }
+                        break;
+                    case "S":
+                        skipped.add(fields[1]);
+                        break;
+                    case "M":
+                        calls.add(new MethodCallInfo(fields[1], fields[2], fields[3], fields[4], fields[5],
+                                Boolean.parseBoolean(fields[6]), fields[7], fields[8],
+                                Integer.parseInt(fields[9]), Integer.parseInt(fields[10])));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            skipClasses.addAll(skipped);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            HITS.incrementAndGet();
+            return calls;
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.error("Argus =>  Error reading trace plan: {}", file, e);
+            }
+            MISSES.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 保存分析结果
+     *
+     * @param targetClass 入口类
+     * @param key         缓存键
+     * @param calls       分析结果
+     * @param classes     分析过程中读取过的类（内部格式）
+     * @param resolvedClasses 被调用类 -> 解析到的实际类名，无法解析为 {@link #MISSING}
+     * @param skipClasses 跳过的类
+     */
+    public static void save(Class<?> targetClass, String key, Set<MethodCallInfo> calls,
+                            Collection<String> classes, Map<String, String> resolvedClasses,
+                            Collection<String> skipClasses) {
+        Path dir = directory();
+        if (dir == null) {
+            return;
+        }
+        Path file = dir.resolve(fileName(key));
+        Path temp = dir.resolve(fileName(key) + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            ClassLoader classLoader = targetClass.getClassLoader();
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(VERSION);
+                writer.newLine();
+                writer.write(key);
+                writer.newLine();
+                for (String className : new TreeSet<>(classes)) {
+                    writer.write("C\t" + className + "\t" + hashClass(classLoader, className));
+                    writer.newLine();
+                }
+                for (Map.Entry<String, String> entry : new TreeMap<>(resolvedClasses).entrySet()) {
+                    writer.write("R\t" + entry.getKey() + "\t" + entry.getValue());
+                    writer.newLine();
+                }
+                for (String skipClass : skipClasses) {
+                    writer.write("S\t" + skipClass);
+                    writer.newLine();
+                }
+                for (MethodCallInfo call : calls) {
+                    writer.write(String.join("\t", "M",
+                            call.getCallerClass(), call.getCallerMethod(),
+                            call.getCalledClass(), call.getCalledMethod(), call.getCalledMethodDesc(),
+                            String.valueOf(call.isInherited()),
+                            call.getActualDefinedClass(), call.getSubCalledClass(),
+                            String.valueOf(call.getLineNumber()), String.valueOf(call.getDepth())));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(dir);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.error("Argus =>  Error writing trace plan: {}", file, e);
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                //
+            }
+        }
+    }
+
+    /**
+     * 生成缓存键
+     *
+     * @param className       入口类名
+     * @param methodName      方法名
+     * @param methodDesc      方法描述符
+     * @param includePackages 包含包
+     * @param excludePackages 排除包
+     * @param maxDepth        最大深度
+     * @return 缓存键
+     */
+    public static String keyOf(String className, String methodName, String methodDesc,
+                               Set<String> includePackages, Set<String> excludePackages, int maxDepth) {
+        return className + "#" + methodName + methodDesc
+                + "|i=" + sorted(includePackages)
+                + "|e=" + sorted(excludePackages)
+                + "|d=" + maxDepth;
+    }
+
+    /**
+     * 命中次数
+     *
+     * @return 次数
+     */
+    public static long hitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * 未命中次数
+     *
+     * @return 次数
+     */
+    public static long missCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * 超过上限时删除最久未使用的缓存文件
+     *
+     * @param dir 缓存目录
+     * @throws IOException 异常
+     */
+    private static void evict(Path dir) throws IOException {
+        int maxSize = maxSize();
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        }
+        if (files.size() <= maxSize) {
+            return;
+        }
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path path : files) {
+            modified.put(path, Files.getLastModifiedTime(path).toMillis());
+        }
+        files.sort(Comparator.comparingLong(modified::get));
+        for (int i = 0; i < files.size() - maxSize; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * 计算类字节码摘要
+     *
+     * @param classLoader 类加载器
+     * @param className   类名（内部格式）
+     * @return 摘要，类文件不存在返回 {@link #MISSING}
+     * @throws IOException 读取失败
+     */
+    private static String hashClass(ClassLoader classLoader, String className) throws IOException {
+        ClassLoader loader = classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+        try (InputStream in = loader.getResourceAsStream(className + ".class")) {
+            if (in == null) {
+                return MISSING;
+            }
+            MessageDigest digest = md5();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return toHex(digest.digest());
+        }
+    }
+
+    /**
+     * 缓存文件名（键的摘要）
+     *
+     * @param key 缓存键
+     * @return 文件名
+     */
+    private static String fileName(String key) {
+        return toHex(md5().digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static String sorted(Set<String> values) {
+        return values == null ? "[]" : new TreeSet<>(values).toString();
+    }
+
+    /**
+     * 缓存目录
+     *
+     * @return 目录，缓存关闭返回null
+     */
+    private static Path directory() {
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        if (argusProperties == null || argusProperties.getTracePlanCacheSize() < 1) {
+            return null;
+        }
+        String dir = argusProperties.getTracePlanCacheDir();
+        if (dir == null || dir.trim().isEmpty()) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "argus", "trace-plan");
+        }
+        return Paths.get(dir.trim());
+    }
+
+    /**
+     * 最大缓存文件数
+     *
+     * @return 数量
+     */
+    private static int maxSize() {
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        return argusProperties == null ? 0 : argusProperties.getTracePlanCacheSize();
+    }
+}
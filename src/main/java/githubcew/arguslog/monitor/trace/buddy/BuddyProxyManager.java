@@ -1,27 +1,24 @@
 package githubcew.arguslog.monitor.trace.buddy;
 
-import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.agent.ByteBuddyAgent;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
-import net.bytebuddy.dynamic.DynamicType;
-import net.bytebuddy.dynamic.loading.ClassReloadingStrategy;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Buddy 增强管理器
+ * <div>
+ *   增强规则保存在常驻的 {@link EnhanceTransformer} 中，增强时只登记规则并重转换类，
+ *   多个类的增强可以在一次 retransformClasses 调用中完成。
+ * </div>
  *
  * @author chenenwei
  */
@@ -29,24 +26,12 @@ public class BuddyProxyManager {
 
     private static final Logger log = LoggerFactory.getLogger(BuddyProxyManager.class);
 
-    // 修改的类列表, key: 类名, value: 类
-    private static final Map<String, Class<?>> modifiedClasses = new ConcurrentHashMap<>(10);
-
-    //修改前字节码数组, key: 类名, value: 原字节数组
-    private static final Map<String, byte[]> originalBytecodes = new ConcurrentHashMap<>(10);
-
-    // 修改过的字节数组,key: 类名, value: 修改过的字节数组
-    private static final Map<String, byte[]> modifiedBytecodes = new ConcurrentHashMap<>(10);
-
-    // 修改的类列表, key: 方法key(类名.方法名.参数类型.拦截器), value: 是否已添加拦截器
-    private static final Map<String, Boolean> modifiedMethodWithAdvice = new ConcurrentHashMap<>(10);
-
-    // key 对应修改的类列表, key: 自定义key,  value: 修改的类列表
-    private static final Map<String, Set<Class<?>>> modifiedClassesWithKey = new ConcurrentHashMap<>(10);
-
     // instrumentation
     private static Instrumentation instrumentation;
 
+    // 常驻增强转换器
+    private static final EnhanceTransformer transformer = new EnhanceTransformer();
+
     private static final String DEFAULT_KEY = "default";
 
     /**
@@ -58,6 +43,7 @@ public class BuddyProxyManager {
             return;
         }
         instrumentation = ByteBuddyAgent.install();
+        instrumentation.addTransformer(transformer, true);
         if (log.isDebugEnabled()) {
             log.debug("Argus =>  instrumentation init finished...");
         }
@@ -107,6 +93,75 @@ public class BuddyProxyManager {
         enhanceMethods(key, targetClass, MethodMatchers.namedIn(methodNames), advice);
     }
 
+    /**
+     * 批量增强方法，所有类的增强在一次重转换中完成
+     *
+     * @param key key
+     * @param classMethods 类 -> 方法名列表
+     * @param advice 拦截器
+     * @return 增强失败的类
+     */
+    public static List<Class<?>> enhanceMethods(String key,
+                                                Map<Class<?>, List<String>> classMethods,
+                                                Class<?> advice) {
+
+        return enhanceMethods(key, classMethods, advice.getName(), null, advice);
+    }
+
+    /**
+     * 批量增强方法，使用已构建的 Advice（可带自定义参数绑定），所有类的增强在一次重转换中完成
+     *
+     * @param key key
+     * @param classMethods 类 -> 方法名列表
+     * @param adviceName 拦截器名称
+     * @param advice 拦截器
+     * @return 增强失败的类
+     */
+    public static List<Class<?>> enhanceMethods(String key,
+                                                Map<Class<?>, List<String>> classMethods,
+                                                String adviceName,
+                                                Advice advice) {
+
+        return enhanceMethods(key, classMethods, adviceName, advice, null);
+    }
+
+    /**
+     * 批量增强方法
+     *
+     * @param key key
+     * @param classMethods 类 -> 方法名列表
+     * @param adviceName 拦截器名称
+     * @param advice 拦截器
+     * @param adviceClass 拦截器类，advice 为空时使用
+     * @return 增强失败的类
+     */
+    private static List<Class<?>> enhanceMethods(String key,
+                                                 Map<Class<?>, List<String>> classMethods,
+                                                 String adviceName,
+                                                 Advice advice,
+                                                 Class<?> adviceClass) {
+
+        if (classMethods.isEmpty()) {
+            return Collections.emptyList();
+        }
+        synchronized (BuddyProxyManager.class) {
+            for (Map.Entry<Class<?>, List<String>> entry : classMethods.entrySet()) {
+                ElementMatcher<? super MethodDescription> matcher = MethodMatchers.namedIn(entry.getValue());
+                if (advice != null) {
+                    transformer.addRule(key, entry.getKey(), matcher, adviceName, advice);
+                } else {
+                    transformer.addRule(key, entry.getKey(), matcher, adviceClass);
+                }
+            }
+            // 失败的类保持原样，移除其规则
+            List<Class<?>> failed = retransform(new ArrayList<>(classMethods.keySet()));
+            for (Class<?> targetClass : failed) {
+                transformer.removeRules(key, targetClass);
+            }
+            return failed;
+        }
+    }
+
     /**
      * 增强方法
      *
@@ -122,232 +177,125 @@ public class BuddyProxyManager {
 
         String className = targetClass.getName();
 
-        try {
-            // 保存原始字节码
-            if (!originalBytecodes.containsKey(className)) {
-                originalBytecodes.put(className, getClassBytes(targetClass));
+        synchronized (BuddyProxyManager.class) {
+            transformer.addRule(key, targetClass, methodMatcher, advice);
+            try {
+                instrumentation.retransformClasses(targetClass);
+            } catch (Exception e) {
+                transformer.removeRules(key, targetClass);
                 if (log.isDebugEnabled()) {
-                    log.debug("Argus =>  Save original bytes for class: {}", className);
+                    log.error("Argus =>  Error enhancing class: {}", className, e);
                 }
+                e.printStackTrace();
+                throw new RuntimeException(e);
             }
-
-            // 使用 Byte Buddy Advice 进行方法增强
-            DynamicType.Unloaded<?> unloadedType = new ByteBuddy()
-                    .rebase(targetClass)
-                    .visit(Advice.to(advice).on(methodMatcher))
-                    .make();
-            if (log.isDebugEnabled()) {
-                saveClassToFile(unloadedType.getBytes(), className + "-after.class");
-            }
-
-            unloadedType.load(
-                    targetClass.getClassLoader(),
-                    ClassReloadingStrategy.fromInstalledAgent(ClassReloadingStrategy.Strategy.RETRANSFORMATION)
-            );
-
-            modifiedClasses.put(className, targetClass);
-
-            modifiedClassesWithKey.putIfAbsent(key, new HashSet<>());
-            modifiedClassesWithKey.get(key).add(targetClass);
-
             if (log.isDebugEnabled()) {
                 log.debug("Argus =>  Enhanced class: {}", className);
             }
-
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.error("Argus =>  Error enhancing class: {}", className, e);
-            }
-            e.printStackTrace();
-            throw new RuntimeException(e);
         }
     }
 
     /**
-     * 恢复指定类的原始实现
+     * 重转换类，优先一次批量完成；批量失败时逐个重转换
      *
-     * @param targetClass 类
+     * @param classes 类列表
+     * @return 重转换失败的类
      */
-    public static void revertClass(Class<?> targetClass) {
-        String className = targetClass.getName();
-
-        if (!modifiedClasses.containsKey(className)) {
-            return;
+    private static List<Class<?>> retransform(List<Class<?>> classes) {
+        if (classes.isEmpty()) {
+            return Collections.emptyList();
         }
-
         try {
-            byte[] originalBytes = originalBytecodes.get(className);
-            if (originalBytes != null) {
-                // 使用原始字节码恢复类
-                instrumentation.redefineClasses(
-                        new java.lang.instrument.ClassDefinition(targetClass, originalBytes)
-                );
-
-                modifiedClasses.remove(className);
-                originalBytecodes.remove(className);
-
-                // 移除类修改的方法
-                modifiedMethodWithAdvice.keySet().removeIf(methodKey -> methodKey.startsWith(className));
-
-                if (log.isDebugEnabled()) {
-                    log.debug("Argus =>  Restored class: {}", className);
-                }
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[0]));
+            if (log.isDebugEnabled()) {
+                log.debug("Argus =>  Retransformed {} classes", classes.size());
             }
-        } catch (Exception e) {
+            return Collections.emptyList();
+        } catch (Throwable e) {
             if (log.isDebugEnabled()) {
-                log.error("Argus =>  Error restoring class: {}", className, e);
+                log.error("Argus =>  Error retransforming classes in batch, fallback to one by one", e);
             }
-            e.printStackTrace();
-            throw new RuntimeException(e);
         }
-    }
-
-    /**
-     * 恢复指定key的类列表的原始实现
-     * @param key key
-     */
-    public static void revertClassWithKey(String key) {
 
-        if (!modifiedClassesWithKey.containsKey(key)) {
-            return;
-        }
-
-        Set<Class<?>> classes = modifiedClassesWithKey.get(key);
+        List<Class<?>> failed = new ArrayList<>();
         for (Class<?> targetClass : classes) {
-            String className = targetClass.getName();
-
             try {
-                byte[] originalBytes = originalBytecodes.get(className);
-                if (originalBytes != null) {
-                    // 使用原始字节码恢复类
-                    instrumentation.redefineClasses(
-                            new java.lang.instrument.ClassDefinition(targetClass, originalBytes)
-                    );
-
-                    modifiedClasses.remove(className);
-                    originalBytecodes.remove(className);
-
-                    // 移除类修改的方法
-                    modifiedMethodWithAdvice.keySet().removeIf(methodKey -> methodKey.startsWith(className));
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("Argus =>  Restored class: {}", className);
-                    }
-                }
-
-            } catch (Exception e) {
+                instrumentation.retransformClasses(targetClass);
+            } catch (Throwable e) {
+                failed.add(targetClass);
                 if (log.isDebugEnabled()) {
-                    log.error("Argus =>  Error restoring class: {}", className, e);
+                    log.error("Argus =>  Error retransforming class: {}", targetClass.getName(), e);
                 }
-                e.printStackTrace();
-                throw new RuntimeException(e);
             }
         }
-
-        modifiedClassesWithKey.remove(key);
+        return failed;
     }
 
     /**
-     * 恢复所有修改的类
+     * 恢复指定类的原始实现
+     *
+     * @param targetClass 类
      */
-    public static void revertAllClasses() {
-        List<String> classNames = new ArrayList<>(modifiedClasses.keySet());
-        for (String className : classNames) {
+    public static void revertClass(Class<?> targetClass) {
+
+        synchronized (BuddyProxyManager.class) {
+            if (!transformer.removeRules(targetClass)) {
+                return;
+            }
             try {
-                Class<?> clazz = Class.forName(className);
-                revertClass(clazz);
+                // 规则已移除，重转换时 JVM 使用原始字节码
+                instrumentation.retransformClasses(targetClass);
+                if (log.isDebugEnabled()) {
+                    log.debug("Argus =>  Restored class: {}", targetClass.getName());
+                }
             } catch (Exception e) {
                 if (log.isDebugEnabled()) {
-                    log.error("Argus =>  Error restoring class: {}", className, e);
+                    log.error("Argus =>  Error restoring class: {}", targetClass.getName(), e);
                 }
                 e.printStackTrace();
+                throw new RuntimeException(e);
             }
         }
-
-        modifiedClassesWithKey.clear();
     }
 
     /**
-     * 获取类的字节码
+     * 恢复指定key的类列表的原始实现
+     * <div>
+     *   只移除该 key 的规则，其它 key 在同一类上的规则在重转换时会重新织入；所有类在一次重转换中完成。
+     * </div>
+     * @param key key
      */
-    private static byte[] getClassBytes(Class<?> clazz) {
-        String resourceName = clazz.getName().replace('.', '/') + ".class";
-        InputStream is = null;
-        try {
-            is = clazz.getClassLoader().getResourceAsStream(resourceName);
-            if (is == null) {
-                return new byte[0];
-            }
+    public static void revertClassWithKey(String key) {
 
-            // 使用 ByteArrayOutputStream 累积所有字节
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[8192]; // 8KB 缓冲区
-            int bytesRead;
-            while ((bytesRead = is.read(data)) != -1) {
-                buffer.write(data, 0, bytesRead);
-            }
-            return buffer.toByteArray();
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new byte[0];
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        synchronized (BuddyProxyManager.class) {
+            List<Class<?>> failed = retransform(transformer.removeRules(key));
+            for (Class<?> targetClass : failed) {
+                log.error("Argus =>  Error restoring class: {}", targetClass.getName());
             }
         }
     }
 
     /**
-     * 检查类是否已被修改
-     *
-     * @param targetClass 类
-     * @return 结果
-     */
-    public static boolean isClassModified(Class<?> targetClass) {
-        return modifiedClasses.containsKey(targetClass.getName());
-    }
-
-    /**
-     * 保存修改的方法
-     *
-     * @param targetClass 类
-     * @param methodNames 方法名列表
-     * @param advice      拦截器
+     * 恢复所有修改的类
      */
-    private static void saveModifiedMethod(Class<?> targetClass, List<String> methodNames, Class<?> advice) {
+    public static void revertAllClasses() {
 
-        if (Objects.isNull(methodNames) || methodNames.isEmpty()) {
-            return;
-        }
-        Method[] declaredMethods = targetClass.getDeclaredMethods();
-        for (Method method : declaredMethods) {
-            if (methodNames.contains(method.getName())) {
-                modifiedMethodWithAdvice.putIfAbsent(generateSignature(method) + "#" + advice.getName(), true);
+        synchronized (BuddyProxyManager.class) {
+            List<Class<?>> failed = retransform(transformer.clear());
+            for (Class<?> targetClass : failed) {
+                log.error("Argus =>  Error restoring class: {}", targetClass.getName());
             }
         }
     }
 
     /**
-     * 方法是否增强
+     * 检查类是否已被修改
      *
      * @param targetClass 类
-     * @param methodName  方法名
-     * @param advice      拦截器
      * @return 结果
      */
-    private static boolean methodIsEnhanced(Class<?> targetClass, String methodName, Class<?> advice) {
-        Method[] declaredMethods = targetClass.getDeclaredMethods();
-        for (Method method : declaredMethods) {
-            if (method.getName().equals(methodName)) {
-                return modifiedMethodWithAdvice.containsKey(generateSignature(method) + "#" + advice.getName());
-            }
-        }
-        return false;
+    public static boolean isClassModified(Class<?> targetClass) {
+        return transformer.hasRules(targetClass);
     }
 
     /**
@@ -395,7 +343,11 @@ public class BuddyProxyManager {
      * @return 类名
      */
     public static Set<String> getModifiedClasses() {
-        return Collections.unmodifiableSet(modifiedClasses.keySet());
+        Set<String> classNames = new HashSet<>();
+        for (Class<?> targetClass : transformer.getClasses()) {
+            classNames.add(targetClass.getName());
+        }
+        return Collections.unmodifiableSet(classNames);
     }
 
     /**
@@ -0,0 +1,200 @@
+package githubcew.arguslog.monitor.trace.buddy;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 常驻增强转换器
+ * <div>
+ *   保存 类 -> 增强规则（方法匹配器 + 拦截器）的映射，类被重转换（retransform）时按规则织入拦截器。
+ *   增强和恢复只需修改规则后对相关类统一调用一次 {@link java.lang.instrument.Instrumentation#retransformClasses(Class[])}，
+ *   恢复时 JVM 提供原始字节码，无需保存副本。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class EnhanceTransformer implements ClassFileTransformer {
+
+    private static final Logger log = LoggerFactory.getLogger(EnhanceTransformer.class);
+
+    /**
+     * 增强规则, key: 类（弱引用，类加载器被回收后规则随之释放）, value: (规则key -> 规则)
+     */
+    private final Map<Class<?>, Map<String, EnhanceRule>> rules = Collections.synchronizedMap(new WeakHashMap<>(16));
+
+    /**
+     * 已解析的拦截器, key: 拦截器类, value: Advice
+     */
+    private final Map<Class<?>, Advice> advices = new ConcurrentHashMap<>(8);
+
+    /**
+     * 添加增强规则，同一个 key 和拦截器的规则会被替换
+     *
+     * @param key           key
+     * @param targetClass   类
+     * @param methodMatcher 方法匹配器
+     * @param advice        拦截器
+     */
+    public void addRule(String key, Class<?> targetClass, ElementMatcher<? super MethodDescription> methodMatcher, Class<?> advice) {
+        addRule(key, targetClass, methodMatcher, advice.getName(), advices.computeIfAbsent(advice, Advice::to));
+    }
+
+    /**
+     * 添加增强规则，同一个 key 和拦截器名称的规则会被替换
+     *
+     * @param key           key
+     * @param targetClass   类
+     * @param methodMatcher 方法匹配器
+     * @param adviceName    拦截器名称
+     * @param advice        拦截器（可带自定义参数绑定）
+     */
+    public void addRule(String key, Class<?> targetClass, ElementMatcher<? super MethodDescription> methodMatcher, String adviceName, Advice advice) {
+        rules.computeIfAbsent(targetClass, k -> new ConcurrentHashMap<>(4))
+                .put(key + "#" + adviceName, new EnhanceRule(key, methodMatcher, advice));
+    }
+
+    /**
+     * 移除指定类上 key 对应的规则
+     *
+     * @param key         key
+     * @param targetClass 类
+     */
+    public void removeRules(String key, Class<?> targetClass) {
+        rules.computeIfPresent(targetClass, (k, classRules) -> {
+            classRules.values().removeIf(rule -> rule.key.equals(key));
+            return classRules.isEmpty() ? null : classRules;
+        });
+    }
+
+    /**
+     * 移除 key 对应的全部规则
+     *
+     * @param key key
+     * @return 规则被移除的类
+     */
+    public List<Class<?>> removeRules(String key) {
+        List<Class<?>> classes = new ArrayList<>();
+        synchronized (rules) {
+            Iterator<Map.Entry<Class<?>, Map<String, EnhanceRule>>> iterator = rules.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Class<?>, Map<String, EnhanceRule>> entry = iterator.next();
+                if (entry.getValue().values().removeIf(rule -> rule.key.equals(key))) {
+                    classes.add(entry.getKey());
+                }
+                if (entry.getValue().isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 移除指定类的全部规则
+     *
+     * @param targetClass 类
+     * @return 是否有规则被移除
+     */
+    public boolean removeRules(Class<?> targetClass) {
+        return rules.remove(targetClass) != null;
+    }
+
+    /**
+     * 移除全部规则
+     *
+     * @return 规则被移除的类
+     */
+    public List<Class<?>> clear() {
+        synchronized (rules) {
+            List<Class<?>> classes = new ArrayList<>(rules.keySet());
+            rules.clear();
+            return classes;
+        }
+    }
+
+    /**
+     * 类是否有增强规则
+     *
+     * @param targetClass 类
+     * @return 结果
+     */
+    public boolean hasRules(Class<?> targetClass) {
+        return rules.containsKey(targetClass);
+    }
+
+    /**
+     * 获取有增强规则的类
+     *
+     * @return 类列表
+     */
+    public List<Class<?>> getClasses() {
+        synchronized (rules) {
+            return new ArrayList<>(rules.keySet());
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader,
+                            String className,
+                            Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain,
+                            byte[] classfileBuffer) {
+
+        // 只处理已加载类的重转换
+        if (classBeingRedefined == null) {
+            return null;
+        }
+        Map<String, EnhanceRule> classRules = rules.get(classBeingRedefined);
+        if (classRules == null || classRules.isEmpty()) {
+            return null;
+        }
+
+        try {
+            DynamicType.Builder<?> builder = new ByteBuddy().redefine(
+                    TypeDescription.ForLoadedType.of(classBeingRedefined),
+                    new ClassFileLocator.Compound(
+                            ClassFileLocator.Simple.of(classBeingRedefined.getName(), classfileBuffer),
+                            ClassFileLocator.ForClassLoader.of(loader)));
+            for (EnhanceRule rule : classRules.values()) {
+                builder = builder.visit(rule.advice.on(rule.methodMatcher));
+            }
+            return builder.make().getBytes();
+        } catch (Throwable e) {
+            // 转换失败时保持原字节码
+            if (log.isDebugEnabled()) {
+                log.error("Argus =>  Error transforming class: {}", classBeingRedefined.getName(), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 增强规则
+     */
+    private static class EnhanceRule {
+
+        private final String key;
+
+        private final ElementMatcher<? super MethodDescription> methodMatcher;
+
+        private final Advice advice;
+
+        EnhanceRule(String key, ElementMatcher<? super MethodDescription> methodMatcher, Advice advice) {
+            this.key = key;
+            this.methodMatcher = methodMatcher;
+            this.advice = advice;
+        }
+    }
+}
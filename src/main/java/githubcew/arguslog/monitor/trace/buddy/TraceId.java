@@ -0,0 +1,19 @@
+package githubcew.arguslog.monitor.trace.buddy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 追踪开关编号
+ * <div>
+ *   标注在拦截器参数上，织入时替换为被增强方法在 {@link TraceSwitch} 中的编号常量。
+ * </div>
+ *
+ * @author chenenwei
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface TraceId {
+}
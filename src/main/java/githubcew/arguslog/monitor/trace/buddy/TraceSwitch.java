@@ -0,0 +1,161 @@
+package githubcew.arguslog.monitor.trace.buddy;
+
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 追踪开关表
+ * <div>
+ *   每个织入了 {@link TracingAdvice} 的方法（类名 + 方法名）分配一个编号，编号在织入时作为常量写入字节码。
+ *   开关表按编号记录引用计数，大于0表示开启。拦截器先读开关，关闭时直接返回。
+ * </div>
+ * <div>
+ *   trace 只需织入一次，之后开启、关闭追踪只修改开关表，不再重转换类。
+ *   同一个 key（接口）被多个用户追踪时开启的方法取并集，只在关闭 key 时一起关闭。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceSwitch {
+
+    /**
+     * 拦截器名称
+     */
+    public static final String ADVICE_NAME = TracingAdvice.class.getName();
+
+    /**
+     * 带开关编号绑定的追踪拦截器
+     */
+    public static final Advice ADVICE = Advice.withCustomMapping()
+            .bind(TraceId.class, (Advice.OffsetMapping) (instrumentedType, instrumentedMethod, assigner, argumentHandler, sort) ->
+                    Advice.OffsetMapping.Target.ForStackManipulation.of(idOf(instrumentedType, instrumentedMethod)))
+            .to(TracingAdvice.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * 方法编号, key: 类名.方法名, value: 编号
+     */
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>(256);
+
+    /**
+     * key 开启的编号, key: 自定义key, value: 编号列表
+     */
+    private static final Map<String, Set<Integer>> keyIds = new HashMap<>(16);
+
+    /**
+     * 开关表（引用计数）
+     */
+    private static volatile AtomicIntegerArray switches = new AtomicIntegerArray(INITIAL_CAPACITY);
+
+    /**
+     * 开关是否开启
+     *
+     * @param id 编号
+     * @return 结果
+     */
+    public static boolean isOn(int id) {
+        AtomicIntegerArray table = switches;
+        return id < table.length() && table.get(id) > 0;
+    }
+
+    /**
+     * 开启 key 对应的方法，同一个 key 重复开启时追加新方法，已开启的方法保持开启
+     *
+     * @param key key
+     * @param classMethods 类 -> 方法名列表
+     */
+    public static synchronized void on(String key, Map<Class<?>, List<String>> classMethods) {
+        Set<Integer> enabled = keyIds.computeIfAbsent(key, k -> new HashSet<>());
+        for (Map.Entry<Class<?>, List<String>> entry : classMethods.entrySet()) {
+            for (String methodName : entry.getValue()) {
+                int id = idOf(entry.getKey().getName(), methodName);
+                if (enabled.add(id)) {
+                    switches.incrementAndGet(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭 key 对应的方法
+     *
+     * @param key key
+     */
+    public static synchronized void off(String key) {
+        Set<Integer> enabled = keyIds.remove(key);
+        if (enabled == null) {
+            return;
+        }
+        for (Integer id : enabled) {
+            switches.decrementAndGet(id);
+        }
+    }
+
+    /**
+     * 关闭全部方法
+     */
+    public static synchronized void offAll() {
+        keyIds.clear();
+        switches = new AtomicIntegerArray(switches.length());
+    }
+
+    /**
+     * 开启的方法数
+     *
+     * @return 数量
+     */
+    public static synchronized int onCount() {
+        AtomicIntegerArray table = switches;
+        int count = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 织入时获取方法编号
+     *
+     * @param instrumentedType 被增强类
+     * @param instrumentedMethod 被增强方法
+     * @return 编号
+     */
+    private static int idOf(TypeDescription instrumentedType, MethodDescription instrumentedMethod) {
+        synchronized (TraceSwitch.class) {
+            return idOf(instrumentedType.getName(), instrumentedMethod.getInternalName());
+        }
+    }
+
+    /**
+     * 获取方法编号，不存在时分配，开关表容量不足时扩容
+     *
+     * @param className 类名
+     * @param methodName 方法名
+     * @return 编号
+     */
+    private static int idOf(String className, String methodName) {
+        Integer id = ids.get(className + "." + methodName);
+        if (id != null) {
+            return id;
+        }
+        id = ids.size();
+        ids.put(className + "." + methodName, id);
+        AtomicIntegerArray table = switches;
+        if (id >= table.length()) {
+            AtomicIntegerArray grown = new AtomicIntegerArray(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                grown.set(i, table.get(i));
+            }
+            switches = grown;
+        }
+        return id;
+    }
+}
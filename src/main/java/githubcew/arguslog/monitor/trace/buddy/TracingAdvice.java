@@ -7,6 +7,9 @@ import java.lang.reflect.Method;
 
 /**
  * Argus trace 追踪拦截器
+ * <div>
+ *   通过 {@link TraceSwitch#ADVICE} 织入，开关关闭时不进入追踪。
+ * </div>
  *
  * @author chenenwei
  */
@@ -15,18 +18,28 @@ public class TracingAdvice {
     /**
      * 进入方法
      *
+     * @param id 开关编号
      * @param method 方法
+     * @return 是否进入追踪
      */
     @Advice.OnMethodEnter
-    public static void onEnter(@Advice.Origin Method method) {
+    public static boolean onEnter(@TraceId int id, @Advice.Origin Method method) {
+        if (!TraceSwitch.isOn(id)) {
+            return false;
+        }
         ArgusRequestContext.startTraceMethod(method);
+        return true;
     }
 
     /**
      * 退出方法
+     *
+     * @param traced 是否进入追踪
      */
     @Advice.OnMethodExit(onThrowable = Throwable.class)
-    public static void onExit() {
-        ArgusRequestContext.endTraceMethod();
+    public static void onExit(@Advice.Enter boolean traced) {
+        if (traced) {
+            ArgusRequestContext.endTraceMethod();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,397 @@
+package githubcew.arguslog.monitor.trace.flame;
+
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * 火焰图
+ * <div>
+ *   由调用树（单次请求或聚合窗口）构建帧树，同一父帧下同名子帧合并，
+ *   可输出 collapsed-stack 文本（兼容 flamegraph.pl / speedscope）或可缩放的 SVG / HTML。
+ * </div>
+ * <div>
+ *   输出直接写入 {@link Writer}，逐帧写出，不拼接整段字符串。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class FlameGraph {
+
+    /**
+     * 图宽（px）
+     */
+    private static final int WIDTH = 1200;
+
+    /**
+     * 帧高（px）
+     */
+    private static final int FRAME_HEIGHT = 16;
+
+    /**
+     * 顶部留白（px）
+     */
+    private static final int TOP_PADDING = 40;
+
+    /**
+     * 底部留白（px）
+     */
+    private static final int BOTTOM_PADDING = 10;
+
+    /**
+     * 最小可见宽度（px），更窄的帧不输出
+     */
+    private static final double MIN_FRAME_WIDTH = 0.1;
+
+    /**
+     * 平均字符宽度（px），用于截断帧内文字
+     */
+    private static final double CHAR_WIDTH = 7;
+
+    private final Frame root = new Frame("all", false);
+
+    /**
+     * 由单次请求调用树构建
+     *
+     * @param tree              调用树根节点
+     * @param showFullClassName 是否显示全类名
+     * @return 火焰图
+     */
+    public static FlameGraph fromTree(ArgusRequestContext.MethodNode tree, boolean showFullClassName) {
+        FlameGraph graph = new FlameGraph();
+        if (tree == null) {
+            return graph;
+        }
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{graph.root, tree});
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            Frame parent = (Frame) item[0];
+            ArgusRequestContext.MethodNode node = (ArgusRequestContext.MethodNode) item[1];
+
+            Frame frame = parent.child(frameName(node.getSignature(), node.getMethod(), node.isAsync(),
+                    node.getThreadName(), showFullClassName), node.isAsync());
+            long childrenDuration = 0;
+            for (ArgusRequestContext.MethodNode child : node.getChildren()) {
+                if (!child.isAsync()) {
+                    childrenDuration += child.getDuration();
+                }
+                stack.push(new Object[]{frame, child});
+            }
+            frame.addSelf(Math.max(0, node.getDuration() - childrenDuration));
+        }
+        return graph;
+    }
+
+    /**
+     * 帧名称
+     *
+     * @param signature         签名
+     * @param method            方法
+     * @param async             是否异步分支
+     * @param threadName        异步线程名
+     * @param showFullClassName 是否显示全类名
+     * @return 帧名称
+     */
+    public static String frameName(String signature, Method method, boolean async,
+                                   String threadName, boolean showFullClassName) {
+        if (async) {
+            return threadName == null ? "[async]" : "[async] " + threadName;
+        }
+        return ArgusRequestContext.getSignatureWithParams(signature, method, showFullClassName);
+    }
+
+    /**
+     * 获取根帧，用于外部按帧构建
+     *
+     * @return 根帧
+     */
+    public Frame getRoot() {
+        return root;
+    }
+
+    /**
+     * 输出 collapsed-stack 文本，每行：帧;帧;帧 自身耗时
+     *
+     * @param writer 输出
+     * @throws IOException 异常
+     */
+    public void writeCollapsed(Writer writer) throws IOException {
+        List<String> path = new ArrayList<>();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        for (Frame child : reversed(root.children.values())) {
+            stack.push(new Object[]{child, 0});
+        }
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            Frame frame = (Frame) item[0];
+            int depth = (Integer) item[1];
+            while (path.size() > depth) {
+                path.remove(path.size() - 1);
+            }
+            path.add(frame.name.replace(';', ','));
+            if (frame.self > 0) {
+                writer.write(String.join(";", path));
+                writer.write(' ');
+                writer.write(String.valueOf(frame.self));
+                writer.write('\n');
+            }
+            for (Frame child : reversed(frame.children.values())) {
+                stack.push(new Object[]{child, depth + 1});
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 输出 HTML 页面（内嵌 SVG）
+     *
+     * @param writer 输出
+     * @param title  标题
+     * @throws IOException 异常
+     */
+    public void writeHtml(Writer writer, String title) throws IOException {
+        writer.write("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>");
+        writer.write(escape(title));
+        writer.write("</title><style>body{margin:0;padding:10px;background:#fff;}</style></head><body>\n");
+        writeSvg(writer, title);
+        writer.write("\n</body></html>\n");
+        writer.flush();
+    }
+
+    /**
+     * 输出可缩放的 SVG（点击帧放大，点击标题复位，悬停显示耗时）
+     *
+     * @param writer 输出
+     * @param title  标题
+     * @throws IOException 异常
+     */
+    public void writeSvg(Writer writer, String title) throws IOException {
+        int maxDepth = computeTotals();
+        long total = root.total;
+        int height = TOP_PADDING + maxDepth * FRAME_HEIGHT + BOTTOM_PADDING;
+
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + WIDTH + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + WIDTH + " " + height + "\" font-family=\"Verdana\" font-size=\"12\">\n");
+        writer.write("<style>.f:hover rect{stroke:#000;stroke-width:0.5;cursor:pointer}"
+                + " .t{font-size:17px;cursor:pointer}</style>\n");
+        writer.write("<text class=\"t\" x=\"" + WIDTH / 2 + "\" y=\"24\" text-anchor=\"middle\" onclick=\"argusReset()\">");
+        writer.write(escape(title));
+        writer.write("</text>\n");
+
+        if (total > 0) {
+            // 深度优先，x 为帧起始偏移（耗时）
+            Deque<Object[]> stack = new ArrayDeque<>();
+            stack.push(new Object[]{root, 0L, 0});
+            while (!stack.isEmpty()) {
+                Object[] item = stack.pop();
+                Frame frame = (Frame) item[0];
+                long offset = (Long) item[1];
+                int depth = (Integer) item[2];
+                long frameTotal = frame.total;
+                double x = (double) offset / total * WIDTH;
+                double w = (double) frameTotal / total * WIDTH;
+                if (w < MIN_FRAME_WIDTH) {
+                    continue;
+                }
+                writeFrame(writer, frame, frameTotal, total, x, w, depth, height);
+
+                long childOffset = offset;
+                List<Object[]> children = new ArrayList<>(frame.children.size());
+                for (Frame child : frame.children.values()) {
+                    children.add(new Object[]{child, childOffset, depth + 1});
+                    childOffset += child.total;
+                }
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+
+        writer.write("<script type=\"text/ecmascript\"><![CDATA[\n");
+        writer.write(ZOOM_SCRIPT);
+        writer.write("]]></script>\n</svg>\n");
+        writer.flush();
+    }
+
+    /**
+     * 后序遍历计算各帧总耗时
+     *
+     * @return 帧树最大深度
+     */
+    private int computeTotals() {
+        int maxDepth = 0;
+        Deque<Frame> order = new ArrayDeque<>();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{root, 1});
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            Frame frame = (Frame) item[0];
+            int depth = (Integer) item[1];
+            maxDepth = Math.max(maxDepth, depth);
+            order.push(frame);
+            for (Frame child : frame.children.values()) {
+                stack.push(new Object[]{child, depth + 1});
+            }
+        }
+        // order 出栈顺序保证子帧先于父帧
+        while (!order.isEmpty()) {
+            Frame frame = order.pop();
+            long sum = frame.self;
+            for (Frame child : frame.children.values()) {
+                sum += child.total;
+            }
+            frame.total = sum;
+        }
+        return maxDepth;
+    }
+
+    /**
+     * 输出单个帧
+     */
+    private void writeFrame(Writer writer, Frame frame, long frameTotal, long total,
+                            double x, double w, int depth, int height) throws IOException {
+        double y = height - BOTTOM_PADDING - (depth + 1) * FRAME_HEIGHT;
+        String name = escape(frame.name);
+        String percent = String.format("%.2f", frameTotal * 100.0 / total);
+        writer.write("<g class=\"f\" onclick=\"argusZoom(this)\" data-x=\"" + fmt(x) + "\" data-w=\"" + fmt(w)
+                + "\" data-n=\"" + name + "\"><title>" + name + " (" + frameTotal + " ms, " + percent
+                + "%, self " + frame.self + " ms)</title>");
+        writer.write("<rect x=\"" + fmt(x) + "\" y=\"" + fmt(y) + "\" width=\"" + fmt(w) + "\" height=\""
+                + (FRAME_HEIGHT - 1) + "\" rx=\"2\" fill=\"" + color(frame) + "\"/>");
+        writer.write("<text x=\"" + fmt(x + 3) + "\" y=\"" + fmt(y + FRAME_HEIGHT - 4) + "\">");
+        writer.write(escape(truncate(frame.name, w)));
+        writer.write("</text></g>\n");
+    }
+
+    /**
+     * 按宽度截断帧文字
+     */
+    private static String truncate(String name, double width) {
+        int chars = (int) ((width - 6) / CHAR_WIDTH);
+        if (chars < 3) {
+            return "";
+        }
+        if (name.length() <= chars) {
+            return name;
+        }
+        return name.substring(0, chars - 2) + "..";
+    }
+
+    /**
+     * 帧颜色，同名帧颜色稳定
+     */
+    private static String color(Frame frame) {
+        int hash = frame.name.hashCode() & 0x7fffffff;
+        if (frame.async) {
+            return "rgb(" + (80 + hash % 40) + "," + (140 + hash % 50) + "," + (210 + hash % 40) + ")";
+        }
+        return "rgb(" + (205 + hash % 50) + "," + (80 + (hash >> 8) % 130) + "," + ((hash >> 16) % 55) + ")";
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * XML 转义
+     */
+    private static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static <T> List<T> reversed(Collection<T> values) {
+        List<T> list = new ArrayList<>(values);
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * 点击缩放脚本
+     */
+    private static final String ZOOM_SCRIPT =
+            "var W=" + WIDTH + ",CW=" + CHAR_WIDTH + ";\n"
+            + "function argusFrames(){return document.querySelectorAll('g.f');}\n"
+            + "function argusLabel(g,w){var n=g.getAttribute('data-n'),c=Math.floor((w-6)/CW);"
+            + "g.querySelector('text').textContent=c<3?'':(n.length<=c?n:n.substring(0,c-2)+'..');}\n"
+            + "function argusPlace(g,x,w){var r=g.querySelector('rect'),t=g.querySelector('text');"
+            + "r.setAttribute('x',x);r.setAttribute('width',w);t.setAttribute('x',x+3);argusLabel(g,w);}\n"
+            + "function argusZoom(e){var x=+e.getAttribute('data-x'),w=+e.getAttribute('data-w'),"
+            + "y=+e.querySelector('rect').getAttribute('y');argusFrames().forEach(function(g){"
+            + "var gx=+g.getAttribute('data-x'),gw=+g.getAttribute('data-w'),gy=+g.querySelector('rect').getAttribute('y');"
+            + "if(gx>=x-1e-6&&gx+gw<=x+w+1e-6&&gy<=y){g.style.display='';argusPlace(g,(gx-x)/w*W,gw/w*W);}"
+            + "else if(gx<=x+1e-6&&gx+gw>=x+w-1e-6&&gy>y){g.style.display='';argusPlace(g,0,W);}"
+            + "else{g.style.display='none';}});}\n"
+            + "function argusReset(){argusFrames().forEach(function(g){g.style.display='';"
+            + "argusPlace(g,+g.getAttribute('data-x'),+g.getAttribute('data-w'));});}\n";
+
+    /**
+     * 帧
+     */
+    public static class Frame {
+
+        private final String name;
+
+        private final boolean async;
+
+        private long self;
+
+        /**
+         * 总耗时（自身 + 子帧），输出前计算
+         */
+        private long total;
+
+        private final Map<String, Frame> children = new LinkedHashMap<>();
+
+        Frame(String name, boolean async) {
+            this.name = name;
+            this.async = async;
+        }
+
+        /**
+         * 获取或创建子帧，同名子帧合并
+         *
+         * @param name  帧名称
+         * @param async 是否异步分支
+         * @return 子帧
+         */
+        public Frame child(String name, boolean async) {
+            return children.computeIfAbsent(name, n -> new Frame(n, async));
+        }
+
+        /**
+         * 累加自身耗时
+         *
+         * @param value 耗时
+         */
+        public void addSelf(long value) {
+            self += value;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package githubcew.arguslog.monitor.trace.flame;
+
+import githubcew.arguslog.monitor.trace.aggregate.TraceAggregator;
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 火焰图数据缓存
+ * <div>
+ *   按接口保存最近一次请求的调用树、最近一个聚合窗口的统计树和最近一次采样分析结果，供 {@code /argus/flame} 导出。
+ *   只保存引用，生成火焰图时才转换；缓存接口数有上限，按最近使用淘汰。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class FlameGraphStore {
+
+    /**
+     * 最多缓存的接口数
+     */
+    private static final int MAX_URIS = 64;
+
+    /**
+     * 最近一次请求调用树
+     */
+    private static final Map<String, ArgusRequestContext.MethodNode> latestTrees = lruMap();
+
+    /**
+     * 最近一个聚合窗口
+     */
+    private static final Map<String, TraceAggregator.Snapshot> latestAggregates = lruMap();
+
+    /**
+     * 最近一次采样分析
+     */
+    private static final Map<String, FlameGraph> latestProfiles = lruMap();
+
+    /**
+     * 保存请求调用树
+     *
+     * @param uri  接口
+     * @param tree 调用树根节点
+     */
+    public static void putTree(String uri, ArgusRequestContext.MethodNode tree) {
+        if (uri == null || tree == null) {
+            return;
+        }
+        synchronized (latestTrees) {
+            latestTrees.put(uri, tree);
+        }
+    }
+
+    /**
+     * 保存聚合窗口
+     *
+     * @param uri      接口
+     * @param snapshot 窗口快照
+     */
+    public static void putAggregate(String uri, TraceAggregator.Snapshot snapshot) {
+        if (uri == null || snapshot == null) {
+            return;
+        }
+        synchronized (latestAggregates) {
+            latestAggregates.put(uri, snapshot);
+        }
+    }
+
+    /**
+     * 保存采样分析结果
+     *
+     * @param uri        接口
+     * @param flameGraph 火焰图
+     */
+    public static void putProfile(String uri, FlameGraph flameGraph) {
+        if (uri == null || flameGraph == null) {
+            return;
+        }
+        synchronized (latestProfiles) {
+            latestProfiles.put(uri, flameGraph);
+        }
+    }
+
+    /**
+     * 获取最近一次请求调用树
+     *
+     * @param uri 接口
+     * @return 调用树根节点
+     */
+    public static ArgusRequestContext.MethodNode getTree(String uri) {
+        synchronized (latestTrees) {
+            return latestTrees.get(uri);
+        }
+    }
+
+    /**
+     * 获取最近一个聚合窗口
+     *
+     * @param uri 接口
+     * @return 窗口快照
+     */
+    public static TraceAggregator.Snapshot getAggregate(String uri) {
+        synchronized (latestAggregates) {
+            return latestAggregates.get(uri);
+        }
+    }
+
+    /**
+     * 获取最近一次采样分析结果
+     *
+     * @param uri 接口
+     * @return 火焰图
+     */
+    public static FlameGraph getProfile(String uri) {
+        synchronized (latestProfiles) {
+            return latestProfiles.get(uri);
+        }
+    }
+
+    /**
+     * 创建按访问顺序淘汰的缓存
+     *
+     * @param <V> 值类型
+     * @return 缓存
+     */
+    private static <V> Map<String, V> lruMap() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_URIS;
+            }
+        };
+    }
+}
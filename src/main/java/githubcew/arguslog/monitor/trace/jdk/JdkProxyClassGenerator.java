@@ -0,0 +1,151 @@
+package githubcew.arguslog.monitor.trace.jdk;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.modifier.FieldManifestation;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.constant.MethodConstant;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+
+/**
+ * Jdk代理类生成器
+ * <div>
+ *   为被代理对象生成实现其全部接口的具体类，每个接口方法织入拦截器的进入/退出方法，
+ *   并通过接口类型的 final 字段直接调用原对象（每个接口一个字段，指向同一对象），
+ *   替代 {@link java.lang.reflect.Proxy} + {@link JdkProxyInvocationHandler} 的两次反射调用。
+ * </div>
+ * <div>
+ *   拦截器类需声明 {@link Advice.OnMethodEnter} / {@link Advice.OnMethodExit} 静态方法，
+ *   接口方法通过 {@link ProxyMethod} 注解获取。
+ *   生成的类按 (被代理类, 拦截器) 缓存，被代理类回收后随之释放。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class JdkProxyClassGenerator {
+
+    /**
+     * 目标对象字段名前缀
+     */
+    private static final String TARGET_FIELD = "argusTarget$";
+
+    /**
+     * 已生成的代理类构造方法, key: 被代理类, value: (拦截器 -> 构造方法)
+     */
+    private static final Map<Class<?>, Map<Class<?>, Constructor<?>>> constructors = Collections.synchronizedMap(new WeakHashMap<>(16));
+
+    /**
+     * 拦截器是否可用于生成代理类（声明了进入或退出方法）
+     *
+     * @param adviceType 拦截器
+     * @return 结果
+     */
+    public static boolean supports(Class<?> adviceType) {
+        for (Method method : adviceType.getDeclaredMethods()) {
+            if (Modifier.isStatic(method.getModifiers())
+                    && (method.isAnnotationPresent(Advice.OnMethodEnter.class)
+                    || method.isAnnotationPresent(Advice.OnMethodExit.class))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 创建代理对象
+     *
+     * @param target     被代理对象
+     * @param adviceType 拦截器
+     * @return 代理对象
+     * @throws Exception 生成或实例化失败
+     */
+    public static Object createProxy(Object target, Class<?> adviceType) throws Exception {
+        Class<?> targetClass = target.getClass();
+        Constructor<?> constructor;
+        synchronized (constructors) {
+            Map<Class<?>, Constructor<?>> classConstructors = constructors.computeIfAbsent(targetClass, k -> new HashMap<>(4));
+            constructor = classConstructors.get(adviceType);
+            if (constructor == null) {
+                constructor = generate(targetClass, adviceType).getConstructor(targetClass.getInterfaces());
+                classConstructors.put(adviceType, constructor);
+            }
+        }
+        Object[] args = new Object[constructor.getParameterCount()];
+        Arrays.fill(args, target);
+        return constructor.newInstance(args);
+    }
+
+    /**
+     * 生成代理类
+     *
+     * @param targetClass 被代理类
+     * @param adviceType  拦截器
+     * @return 代理类
+     * @throws NoSuchMethodException 构造方法不存在
+     */
+    private static Class<?> generate(Class<?> targetClass, Class<?> adviceType) throws NoSuchMethodException {
+        Class<?>[] interfaces = targetClass.getInterfaces();
+        if (interfaces.length == 0) {
+            throw new IllegalArgumentException(
+                    "Cannot create proxy for class " + targetClass +
+                            ": it does not implement any interface"
+            );
+        }
+
+        // 构造方法：每个接口类型的参数赋值给对应字段
+        Implementation.Composable constructor = MethodCall.invoke(Object.class.getConstructor());
+        for (int i = 0; i < interfaces.length; i++) {
+            constructor = constructor.andThen(FieldAccessor.ofField(TARGET_FIELD + i).setsArgumentAt(i));
+        }
+
+        DynamicType.Builder<?> builder = new ByteBuddy()
+                .subclass(Object.class)
+                .name(interfaces[0].getName() + "$ArgusProxy$" + adviceType.getSimpleName())
+                .implement(interfaces);
+        for (int i = 0; i < interfaces.length; i++) {
+            builder = builder.defineField(TARGET_FIELD + i, interfaces[i], Visibility.PRIVATE, FieldManifestation.FINAL);
+        }
+        builder = builder.defineConstructor(Visibility.PUBLIC)
+                .withParameters(interfaces)
+                .intercept(constructor)
+                // equals/hashCode/toString 直接转发，不织入拦截器
+                .method(isEquals().or(isHashCode()).or(isToString()))
+                .intercept(MethodCall.invokeSelf().onField(TARGET_FIELD + 0).withAllArguments());
+
+        // 接口方法（含父接口和默认方法）
+        Set<String> signatures = new HashSet<>();
+        for (int i = 0; i < interfaces.length; i++) {
+            for (Method method : interfaces[i].getMethods()) {
+                if (Modifier.isStatic(method.getModifiers())
+                        || !signatures.add(method.getName() + Arrays.toString(method.getParameterTypes()))) {
+                    continue;
+                }
+                Advice advice = Advice.withCustomMapping()
+                        .bind(ProxyMethod.class,
+                                MethodConstant.of(new MethodDescription.ForLoadedMethod(method)).cached(),
+                                Method.class)
+                        .to(adviceType);
+                builder = builder.method(named(method.getName())
+                                .and(takesArguments(method.getParameterTypes()))
+                                .and(not(isDeclaredBy(Object.class))))
+                        .intercept(advice.wrap(MethodCall.invokeSelf().onField(TARGET_FIELD + i).withAllArguments()));
+            }
+        }
+
+        return builder.make()
+                .load(targetClass.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+    }
+}
@@ -55,19 +55,12 @@ public class JdkProxyManager {
             // 获取原始目标
             T originalTarget = refreshableProxy.getOriginalTarget();
 
-            // 创建新的 InvocationHandler
-            JdkProxyInvocationHandler newHandler;
-            try {
-                newHandler = handlerType.newInstance();
-                newHandler.setTarget(originalTarget); // 假设你有 setTarget 方法
-            } catch (Exception e) {
-                e.printStackTrace();
+            // 创建新代理
+            T newEnhancedProxy = createEnhancedProxy(originalTarget, handlerType);
+            if (newEnhancedProxy == null) {
                 return;
             }
 
-            // 创建新代理
-            T newEnhancedProxy = (T) createProxy(originalTarget, newHandler);
-
             // 刷新 让 RefreshableProxy 指向这个新代理
             refreshableProxy.refreshTarget(newEnhancedProxy);
 
@@ -149,6 +142,38 @@ public class JdkProxyManager {
         }
     }
 
+    /**
+     * 创建增强代理，优先使用生成的代理类（直接调用原对象），生成失败时使用 jdk 动态代理
+     *
+     * @param target      目标对象
+     * @param handlerType 拦截器
+     * @param <T>         类型
+     * @return 代理对象，创建失败返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T createEnhancedProxy(T target, Class<? extends JdkProxyInvocationHandler> handlerType) {
+        if (JdkProxyClassGenerator.supports(handlerType)) {
+            try {
+                return (T) JdkProxyClassGenerator.createProxy(target, handlerType);
+            } catch (Throwable e) {
+                if (log.isDebugEnabled()) {
+                    log.error("Argus =>  Error generating proxy class: {}", target.getClass().getName(), e);
+                }
+            }
+        }
+
+        // 创建新的 InvocationHandler
+        JdkProxyInvocationHandler newHandler;
+        try {
+            newHandler = handlerType.newInstance();
+            newHandler.setTarget(target);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+        return (T) createProxy(target, newHandler);
+    }
+
     /**
      * 创建代理
      *
@@ -1,11 +1,17 @@
 package githubcew.arguslog.monitor.trace.jdk;
 
 import githubcew.arguslog.web.ArgusRequestContext;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
 import java.lang.reflect.Method;
 
 /**
  * Jdk代理对象增强器
+ * <div>
+ *   静态进入/退出方法用于 {@link JdkProxyClassGenerator} 生成的代理类，
+ *   {@link #invoke(Object, Method, Object[])} 在代理类无法生成时作为 jdk 动态代理的处理器。
+ * </div>
  *
  * @author chenenwei
  */
@@ -35,4 +41,34 @@ public class JdkProxyMethodCallAdvice extends JdkProxyInvocationHandler {
         }
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * 进入方法
+     *
+     * @param method 接口方法
+     * @param args 参数
+     */
+    @Advice.OnMethodEnter
+    public static void onEnter(@ProxyMethod Method method,
+                               @Advice.AllArguments Object[] args) {
+        try {
+            ArgusRequestContext.startMethod(method, args);
+        } catch (Exception e) {
+            //
+        }
+    }
+
+    /**
+     * 退出方法
+     *
+     * @param method 接口方法
+     * @param returnValue 返回值
+     * @param throwable 异常
+     */
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(@ProxyMethod Method method,
+                              @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object returnValue,
+                              @Advice.Thrown Throwable throwable) {
+        ArgusRequestContext.endMethod(method, returnValue, throwable);
+    }
+}
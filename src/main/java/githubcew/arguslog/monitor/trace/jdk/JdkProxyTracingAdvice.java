@@ -1,11 +1,16 @@
 package githubcew.arguslog.monitor.trace.jdk;
 
 import githubcew.arguslog.web.ArgusRequestContext;
+import net.bytebuddy.asm.Advice;
 
 import java.lang.reflect.Method;
 
 /**
  * Jdk代理对象增强器
+ * <div>
+ *   静态进入/退出方法用于 {@link JdkProxyClassGenerator} 生成的代理类，
+ *   {@link #invoke(Object, Method, Object[])} 在代理类无法生成时作为 jdk 动态代理的处理器。
+ * </div>
  *
  * @author chenenwei
  */
@@ -29,4 +34,26 @@ public class JdkProxyTracingAdvice extends JdkProxyInvocationHandler {
             ArgusRequestContext.endTraceMethod();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 进入方法
+     *
+     * @param method 接口方法
+     */
+    @Advice.OnMethodEnter
+    public static void onEnter(@ProxyMethod Method method) {
+        try {
+            ArgusRequestContext.startTraceMethod(method);
+        } catch (Exception e) {
+            //
+        }
+    }
+
+    /**
+     * 退出方法
+     */
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit() {
+        ArgusRequestContext.endTraceMethod();
+    }
+}
@@ -0,0 +1,19 @@
+package githubcew.arguslog.monitor.trace.jdk;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 代理接口方法
+ * <div>
+ *   标注在拦截器参数上，生成代理类时替换为被代理的接口方法（缓存在代理类的静态字段中）。
+ * </div>
+ *
+ * @author chenenwei
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ProxyMethod {
+}
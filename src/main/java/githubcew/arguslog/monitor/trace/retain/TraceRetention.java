@@ -0,0 +1,192 @@
+package githubcew.arguslog.monitor.trace.retain;
+
+import githubcew.arguslog.web.ArgusRequestContext;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 调用链尾部保留
+ * <div>
+ *   一个窗口内只保留根节点耗时最大的 K 棵调用树（小顶堆），其余请求直接丢弃，不做渲染。
+ *   窗口结束时按耗时从大到小取出。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceRetention {
+
+    /**
+     * 用户token
+     */
+    private final String token;
+
+    /**
+     * 开始方法
+     */
+    private final Method method;
+
+    /**
+     * 保留数量
+     */
+    private final int top;
+
+    /**
+     * 窗口（ms）
+     */
+    private final long window;
+
+    /**
+     * 窗口输出任务
+     */
+    private volatile ScheduledFuture<?> flushFuture;
+
+    /**
+     * 保留的调用树（按根节点耗时的小顶堆）
+     */
+    private PriorityQueue<Retained> retained;
+
+    /**
+     * 窗口内请求数
+     */
+    private long requests;
+
+    /**
+     * 构造方法
+     *
+     * @param token  用户token
+     * @param method 开始方法
+     * @param top    保留数量
+     * @param window 窗口（ms）
+     */
+    public TraceRetention(String token, Method method, int top, long window) {
+        this.token = token;
+        this.method = method;
+        this.top = top;
+        this.window = window;
+        this.retained = newHeap();
+    }
+
+    /**
+     * 提交一棵调用树，耗时不在窗口前 K 名时直接丢弃
+     *
+     * @param root 调用树根节点
+     * @param sent 是否已作为慢请求输出
+     */
+    public synchronized void offer(ArgusRequestContext.MethodNode root, boolean sent) {
+        requests++;
+        if (retained.size() < top) {
+            retained.offer(new Retained(root, sent));
+        } else if (root.getDuration() > retained.peek().root.getDuration()) {
+            retained.poll();
+            retained.offer(new Retained(root, sent));
+        }
+    }
+
+    /**
+     * 取出窗口内保留的调用树并开始新窗口
+     *
+     * @return 快照，窗口内没有请求返回null
+     */
+    public Snapshot drain() {
+        PriorityQueue<Retained> heap;
+        long count;
+        synchronized (this) {
+            if (requests == 0) {
+                return null;
+            }
+            heap = retained;
+            count = requests;
+            retained = newHeap();
+            requests = 0;
+        }
+        List<Retained> list = new ArrayList<>(heap);
+        list.sort((a, b) -> Long.compare(b.root.getDuration(), a.root.getDuration()));
+        return new Snapshot(list, count);
+    }
+
+    private PriorityQueue<Retained> newHeap() {
+        return new PriorityQueue<>(top + 1, Comparator.comparingLong(r -> r.root.getDuration()));
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public ScheduledFuture<?> getFlushFuture() {
+        return flushFuture;
+    }
+
+    public void setFlushFuture(ScheduledFuture<?> flushFuture) {
+        this.flushFuture = flushFuture;
+    }
+
+    /**
+     * 保留的调用树
+     */
+    public static class Retained {
+
+        private final ArgusRequestContext.MethodNode root;
+
+        private final boolean sent;
+
+        Retained(ArgusRequestContext.MethodNode root, boolean sent) {
+            this.root = root;
+            this.sent = sent;
+        }
+
+        public ArgusRequestContext.MethodNode getRoot() {
+            return root;
+        }
+
+        /**
+         * 是否已作为慢请求输出
+         *
+         * @return 结果
+         */
+        public boolean isSent() {
+            return sent;
+        }
+    }
+
+    /**
+     * 窗口快照
+     */
+    public static class Snapshot {
+
+        private final List<Retained> retained;
+
+        private final long requests;
+
+        Snapshot(List<Retained> retained, long requests) {
+            this.retained = retained;
+            this.requests = requests;
+        }
+
+        /**
+         * 保留的调用树，按耗时从大到小
+         *
+         * @return 列表
+         */
+        public List<Retained> getRetained() {
+            return retained;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package githubcew.arguslog.monitor.trace.retain;
+
+import githubcew.arguslog.common.util.CommonUtil;
+import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.core.ArgusManager;
+import githubcew.arguslog.core.account.ArgusUser;
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.core.cmd.ExecuteResult;
+import githubcew.arguslog.monitor.ArgusMethod;
+import githubcew.arguslog.monitor.MonitorInfo;
+import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.trace.flame.FlameGraphStore;
+import githubcew.arguslog.web.ArgusRequestContext;
+import githubcew.arguslog.web.socket.ArgusSocketHandler;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用链尾部保留管理
+ * <div>
+ *   按 用户 + 接口方法 维护窗口内耗时前 K 的调用树，每个窗口结束时输出一次。
+ *   用户下线、取消追踪或修改保留配置后，保留器在下一次窗口输出时自动移除。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceRetentionManager {
+
+    /**
+     * 保留器缓存
+     */
+    private static final Map<String, TraceRetention> retentions = new ConcurrentHashMap<>(16);
+
+    /**
+     * 提交一棵调用树到用户的保留器
+     *
+     * @param token  用户token
+     * @param method 开始方法
+     * @param trace  追踪配置
+     * @param root   调用树根节点
+     * @param sent   是否已作为慢请求输出
+     */
+    public static void retain(String token, Method method, MonitorInfo.Trace trace, ArgusRequestContext.MethodNode root, boolean sent) {
+        String key = keyOf(token, method);
+        TraceRetention retention = retentions.get(key);
+        if (retention == null || !matches(retention, trace)) {
+            retention = retentions.compute(key, (k, old) -> {
+                if (old != null && matches(old, trace)) {
+                    return old;
+                }
+                cancel(old);
+                return create(token, method, trace.getTop(), trace.getTopWindow());
+            });
+        }
+        retention.offer(root, sent);
+    }
+
+    /**
+     * 创建保留器并启动窗口输出
+     *
+     * @param token  用户token
+     * @param method 开始方法
+     * @param top    保留数量
+     * @param window 窗口（ms）
+     * @return 保留器
+     */
+    private static TraceRetention create(String token, Method method, int top, long window) {
+        ArgusManager argusManager = ContextUtil.getBean(ArgusManager.class);
+        TraceRetention retention = new TraceRetention(token, method, top, window);
+        ScheduledFuture<?> future = argusManager.getMonitorSender()
+                .scheduleAtFixedRate(() -> flush(retention), window, TimeUnit.MILLISECONDS);
+        retention.setFlushFuture(future);
+        return retention;
+    }
+
+    /**
+     * 输出一个窗口内保留的调用树
+     *
+     * @param retention 保留器
+     */
+    private static void flush(TraceRetention retention) {
+        String token = retention.getToken();
+        Method method = retention.getMethod();
+        ArgusUser user = ArgusCache.getUserToken(token);
+        MonitorInfo monitorInfo = ArgusCache.getTraceMonitorByUser(token, method);
+        if (Objects.isNull(user) || !user.getSession().isOpen()
+                || Objects.isNull(monitorInfo) || Objects.isNull(monitorInfo.getTrace())
+                || !matches(retention, monitorInfo.getTrace())) {
+            retentions.remove(keyOf(token, method), retention);
+            cancel(retention);
+            return;
+        }
+
+        TraceRetention.Snapshot snapshot = retention.drain();
+        if (snapshot == null) {
+            return;
+        }
+        MonitorInfo.Trace trace = monitorInfo.getTrace();
+        StringBuilder trees = new StringBuilder();
+        int rank = 0;
+        for (TraceRetention.Retained retained : snapshot.getRetained()) {
+            rank++;
+            // 慢请求已单独输出
+            if (retained.isSent()) {
+                continue;
+            }
+            trees.append("\n#").append(rank).append(" [").append(retained.getRoot().getDuration()).append("ms]\n")
+                    .append(ArgusRequestContext.buildTreeString(retained.getRoot(), trace));
+        }
+        if (trees.length() == 0) {
+            return;
+        }
+        String uri = ArgusCache.getMethodUri(new ArgusMethod(method));
+        // 保存窗口内耗时最大的请求，供导出火焰图
+        FlameGraphStore.putTree(uri, snapshot.getRetained().get(0).getRoot());
+        String output = "Argus TRACE (top " + retention.getTop() + "/" + retention.getWindow() + "ms): \n"
+                + "uri => " + OutputWrapper.wrapperCopy(uri)
+                + "\nmethod => " + CommonUtil.generateSignature(method)
+                + "\nrequests => " + snapshot.getRequests()
+                + "\ntracing => "
+                + trees;
+        ArgusSocketHandler argusSocketHandler = ContextUtil.getBean(ArgusSocketHandler.class);
+        argusSocketHandler.send(user.getSession(), OutputWrapper.formatOutput(ExecuteResult.success(output)));
+    }
+
+    /**
+     * 保留器配置是否与追踪配置一致
+     *
+     * @param retention 保留器
+     * @param trace     追踪配置
+     * @return 结果
+     */
+    private static boolean matches(TraceRetention retention, MonitorInfo.Trace trace) {
+        return retention.getTop() == trace.getTop() && retention.getWindow() == trace.getTopWindow();
+    }
+
+    /**
+     * 取消窗口输出
+     *
+     * @param retention 保留器
+     */
+    private static void cancel(TraceRetention retention) {
+        if (retention != null && retention.getFlushFuture() != null) {
+            retention.getFlushFuture().cancel(false);
+        }
+    }
+
+    /**
+     * 保留器键
+     *
+     * @param token  用户token
+     * @param method 方法
+     * @return 键
+     */
+    private static String keyOf(String token, Method method) {
+        return token + "|" + CommonUtil.generateSignature(method);
+    }
+}
@@ -0,0 +1,117 @@
+package githubcew.arguslog.processor;
+
+import githubcew.arguslog.web.TraceExecutor;
+import githubcew.arguslog.web.TraceTaskDecorator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 执行器调用链传递后置处理器
+ * <div>
+ *   为支持 {@link TaskDecorator} 的 {@link Executor} Bean（如 {@code ThreadPoolTaskExecutor}、
+ *   {@code SimpleAsyncTaskExecutor}）组合 {@link TraceTaskDecorator}，
+ *   使 {@code @Async} 和基于这些执行器的 {@code CompletableFuture} 任务保留调用链。
+ * </div>
+ * <div>
+ *   需在执行器初始化前设置装饰器，因此在 {@link #postProcessBeforeInitialization} 中处理，不修改 Bean 类型。
+ * </div>
+ * <div>
+ *   不支持装饰器的 {@link Executor}、{@link ExecutorService}、{@link ScheduledExecutorService} Bean
+ *   （如直接声明的 {@code ThreadPoolExecutor}）在 {@link #postProcessAfterInitialization} 中包装为
+ *   {@link TraceExecutor} 及其子类，保留原接口，提交的任务保留调用链。
+ *   Bean 还实现了其他接口时不包装，以免注入点找不到对应类型；包装后不能再按具体类（如 {@code ThreadPoolExecutor}）注入。
+ * </div>
+ * <div>
+ *   未指定执行器的 {@code CompletableFuture.supplyAsync / runAsync} 运行在 {@code ForkJoinPool.commonPool()}，
+ *   该线程池不是 Bean，不在处理范围内，其子任务不保留调用链；需显式传入执行器或使用 {@link TraceTaskDecorator#wrap(Executor)} 包装。
+ * </div>
+ *
+ * @author chenenwei
+ */
+@Component
+public class TraceExecutorBeanPostProcessor implements BeanPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceExecutorBeanPostProcessor.class);
+
+    /**
+     * 装饰器字段名
+     */
+    private static final String TASK_DECORATOR_FIELD = "taskDecorator";
+
+    /**
+     * 装饰器设置方法名
+     */
+    private static final String TASK_DECORATOR_SETTER = "setTaskDecorator";
+
+    /**
+     * 执行器包装后保留的接口
+     */
+    private static final Set<Class<?>> WRAPPED_INTERFACES = new HashSet<>(Arrays.asList(
+            Executor.class, ExecutorService.class, ScheduledExecutorService.class, AutoCloseable.class));
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof Executor)) {
+            return bean;
+        }
+        Class<?> beanClass = bean.getClass();
+        Field field = ReflectionUtils.findField(beanClass, TASK_DECORATOR_FIELD, TaskDecorator.class);
+        Method setter = ReflectionUtils.findMethod(beanClass, TASK_DECORATOR_SETTER, TaskDecorator.class);
+        if (field == null || setter == null) {
+            return bean;
+        }
+        try {
+            ReflectionUtils.makeAccessible(field);
+            TaskDecorator existing = (TaskDecorator) field.get(bean);
+            if (existing instanceof TraceTaskDecorator) {
+                return bean;
+            }
+            ReflectionUtils.invokeMethod(setter, bean, new TraceTaskDecorator(existing));
+            log.debug("Argus trace decorator applied to executor: {}", beanName);
+        } catch (Exception e) {
+            log.warn("Argus failed to apply trace decorator to executor {}: {}", beanName, e.getMessage());
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof Executor) || bean instanceof TraceExecutor || hasTaskDecorator(bean.getClass())) {
+            return bean;
+        }
+        // 只实现执行器接口的 Bean 才包装，包装后保留原接口
+        for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(bean.getClass())) {
+            if (!WRAPPED_INTERFACES.contains(type)) {
+                return bean;
+            }
+        }
+        log.debug("Argus trace wrapper applied to executor: {}", beanName);
+        return TraceExecutor.wrap((Executor) bean);
+    }
+
+    /**
+     * 是否支持设置装饰器（已在初始化前处理）
+     *
+     * @param beanClass Bean 类型
+     * @return 结果
+     */
+    private static boolean hasTaskDecorator(Class<?> beanClass) {
+        return ReflectionUtils.findField(beanClass, TASK_DECORATOR_FIELD, TaskDecorator.class) != null
+                && ReflectionUtils.findMethod(beanClass, TASK_DECORATOR_SETTER, TaskDecorator.class) != null;
+    }
+}
@@ -2,6 +2,7 @@ package githubcew.arguslog.web;
 
 import githubcew.arguslog.common.util.CommonUtil;
 import githubcew.arguslog.common.util.ContextUtil;
+import githubcew.arguslog.config.ArgusProperties;
 import githubcew.arguslog.core.ArgusManager;
 import githubcew.arguslog.core.cache.ArgusCache;
 import githubcew.arguslog.core.cmd.ColorWrapper;
@@ -9,13 +10,15 @@ import githubcew.arguslog.monitor.MonitorInfo;
 import githubcew.arguslog.monitor.MonitorOutput;
 import githubcew.arguslog.monitor.formater.MethodParamFormatter;
 import githubcew.arguslog.monitor.outer.Outer;
+import githubcew.arguslog.monitor.sql.DaoMethodDetector;
+import githubcew.arguslog.monitor.sql.RequestSqlSummary;
 import githubcew.arguslog.monitor.trace.asm.MethodCallInfo;
 import lombok.Data;
 import org.objectweb.asm.Type;
 
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 /**
@@ -25,65 +28,40 @@ import java.util.stream.Collectors;
  */
 public class ArgusRequestContext {
 
-    /**
-     * 请求方法
-     */
-    private static final ThreadLocal<Map<String, List<MethodInvocation>>> REQUEST_METHODS =
-            ThreadLocal.withInitial(ConcurrentHashMap::new);
-
-    /**
-     * 调用栈
-     */
-    private static final ThreadLocal<Stack<MethodInvocation>> CALL_STACK =
-            ThreadLocal.withInitial(Stack::new);
-
     /**
      * 请求id
      */
     private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<>();
 
     /**
-     * 首次请求方法映射
+     * 追踪会话
      */
-    private static final Map<String, Method> METHOD_SIGNATURE_TO_METHOD = new ConcurrentHashMap<>();
+    private static final ThreadLocal<TraceSession> TRACE_SESSION = new ThreadLocal<>();
 
     /**
-     * 方法签名
-     */
-    private static final Map<Method, String> METHOD_TO_SIGNATURE = new ConcurrentHashMap<>();
-
-    /**
-     * 调用树根节点
+     * 方法调用信息
      */
-    private static final ThreadLocal<MethodNode> CALL_TREE_ROOT = new ThreadLocal<>();
+    private static final ThreadLocal<Map<String, MethodInvocation>> METHOD_CALL_INFO = new ThreadLocal<>();
 
     /**
-     * 当前节点指针（用于构建树）
+     * 请求 SQL 汇总
      */
-    private static final ThreadLocal<MethodNode> CURRENT_NODE = new ThreadLocal<>();
+    private static final ThreadLocal<RequestSqlSummary> REQUEST_SQL = new ThreadLocal<>();
 
     /**
-     * 调用计数器（用于区分相同方法的多次调用）
+     * 当前线程所在的监听方法层数，大于0时才记录请求 SQL 汇总
      */
-    private static final ThreadLocal<Map<String, Integer>> INVOCATION_COUNTER =
-            ThreadLocal.withInitial(ConcurrentHashMap::new);
+    private static final ThreadLocal<int[]> MONITORED_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
 
-    /**
-     * 方法调用信息
-     */
-    private static final ThreadLocal<Map<String, MethodInvocation>> METHOD_CALL_INFO = new ThreadLocal<>();
     /**
      * 开始请求
      *
      * @param requestId 请求id
      */
     public static void startRequest(String requestId) {
+        releaseTraceSession();
+        REQUEST_SQL.remove();
         REQUEST_ID.set(requestId);
-        REQUEST_METHODS.get().clear();
-        CALL_STACK.get().clear();
-        CALL_TREE_ROOT.set(null);
-        CURRENT_NODE.set(null);
-        INVOCATION_COUNTER.get().clear();
     }
 
     /**
@@ -92,9 +70,17 @@ public class ArgusRequestContext {
      * @return 结果
      */
     public static Map<String, Long> endRequest() {
-        Map<String, Long> costMap = REQUEST_METHODS.get().values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toMap(MethodInvocation::getMethodSignature, MethodInvocation::getDuration));
+        Map<String, Long> costMap = new HashMap<>();
+        MethodNode root = getCallTree();
+        if (root != null) {
+            Deque<MethodNode> nodes = new ArrayDeque<>();
+            nodes.push(root);
+            while (!nodes.isEmpty()) {
+                MethodNode node = nodes.pop();
+                costMap.put(node.getSignature(), node.getDuration());
+                node.getChildren().forEach(nodes::push);
+            }
+        }
         clear();
         return costMap;
     }
@@ -106,8 +92,20 @@ public class ArgusRequestContext {
      * @return 方法
      */
     public static Method getStartMethod(String requestId) {
-        return METHOD_SIGNATURE_TO_METHOD.get(requestId);
+        TraceSession session = TRACE_SESSION.get();
+        if (session == null || !session.getRequestId().equals(requestId)) {
+            return null;
+        }
+        return session.getStartMethod();
+    }
 
+    /**
+     * 获取当前追踪会话
+     *
+     * @return 会话，未追踪返回null
+     */
+    public static TraceSession getTraceSession() {
+        return TRACE_SESSION.get();
     }
 
     /**
@@ -116,7 +114,8 @@ public class ArgusRequestContext {
      * @return 根节点
      */
     public static MethodNode getCallTree() {
-        return CALL_TREE_ROOT.get();
+        TraceSession session = TRACE_SESSION.get();
+        return session == null ? null : session.getRoot();
     }
 
     /**
@@ -125,84 +124,109 @@ public class ArgusRequestContext {
      * @return MethodNode
      */
     public static MethodNode getMethodNode() {
-        return CALL_TREE_ROOT.get();
+        return getCallTree();
     }
 
     /**
-     * 递归构建树形字符串
+     * 构建树形字符串
+     * <div>
+     *   非递归前序遍历，单个 StringBuilder 输出；同一父深度下重复的方法只显示第一次（异步分支全部显示）。
+     *   行号从 {@link MonitorInfo.Trace#getLineIndex()} 中查找。
+     * </div>
      *
-     * @param node             当前节点
-     * @param depth            当前节点的深度
-     * @param trace            trace信息
-     * @param parentIsLastList 父节点是否是最后一个节点的列表
-     * @param methodCount      方法调用计数器
+     * @param root  根节点
+     * @param trace trace信息
      * @return 树形字符串
      */
-    public static String buildTreeString(MethodNode node,
-                                         int depth,
-                                         MonitorInfo.Trace trace,
-                                         List<Boolean> parentIsLastList,
-                                         Map<String, Integer> methodCount) {
+    public static String buildTreeString(MethodNode root, MonitorInfo.Trace trace) {
         StringBuilder sb = new StringBuilder();
+        // 已显示的方法（签名 + 父节点深度）
+        Set<String> printed = new HashSet<>();
+        Deque<TreeFrame> stack = new ArrayDeque<>();
+        stack.push(new TreeFrame(root, 0, "", false, false));
+
+        while (!stack.isEmpty()) {
+            TreeFrame frame = stack.pop();
+            MethodNode node = frame.node;
+            int depth = frame.depth;
+
+            // 显示超过1次则不显示（异步分支全部显示）
+            if (depth > 0 && !frame.parentAsync && !node.isAsync()
+                    && !printed.add(node.getSignature() + (depth - 1))) {
+                continue;
+            }
 
-        // 构建前缀（竖线和缩进）
-        for (int i = 0; i < depth; i++) {
-            if (i < parentIsLastList.size() - 1) {
-                sb.append(parentIsLastList.get(i) ? "    " : "│   ");
+            // 前缀（竖线和缩进）和当前节点的连接线
+            sb.append(frame.prefix);
+            if (depth > 0) {
+                sb.append(frame.isLast ? "└── " : "├── ");
+            }
+
+            // 异步分支节点
+            if (node.isAsync()) {
+                sb.append(ColorWrapper.blue("[async] " + node.getThreadName()))
+                        .append(" [").append(node.getDuration()).append("ms]\n");
+            } else {
+                // 带参数的简化方法签名
+                sb.append(getSignatureWithParams(node, trace.isShowFullClassName()));
+                // 行号
+                String lineNumber = trace.getLineIndex() != null
+                        ? trace.getLineIndex().getLineNumber(node.getMethod(), depth)
+                        : getLineNumber(node.getMethod(), depth, trace.getMethodCalls());
+                if (!lineNumber.isEmpty()) {
+                    sb.append("#").append(lineNumber);
+                }
+                sb.append(" [");
+                if (node.getDuration() >= trace.getColorThreshold()) {
+                    sb.append(ColorWrapper.red(String.valueOf(node.getDuration())));
+                } else {
+                    sb.append(node.getDuration());
+                }
+                sb.append("ms");
+                // 合并的连续调用
+                if (node.getCount() > 1) {
+                    sb.append(" x").append(node.getCount())
+                            .append(" max=").append(node.getMaxDuration()).append("ms");
+                }
+                sb.append("]\n");
             }
-        }
 
-        // 构建当前节点的连接线
-        if (depth > 0) {
-            boolean isLast = parentIsLastList.get(parentIsLastList.size() - 1);
-            sb.append(isLast ? "└── " : "├── ");
+            // 达到最大深度，不再处理子节点
+            List<MethodNode> children = node.getChildren();
+            if (depth >= trace.getMaxDepth() || children.isEmpty()) {
+                continue;
+            }
+            String childPrefix = depth > 0 ? frame.prefix + (frame.isLast ? "    " : "│   ") : frame.prefix;
+            // 逆序入栈，保证按顺序输出
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new TreeFrame(children.get(i), depth + 1, childPrefix, i == children.size() - 1, node.isAsync()));
+            }
         }
+        return sb.toString();
+    }
 
+    /**
+     * 树输出栈帧
+     */
+    private static class TreeFrame {
 
-        // 获取带参数的简化方法签名
-        String signatureWithParams = getSignatureWithParams(node, trace.isShowFullClassName());
+        private final MethodNode node;
 
-        // 获取行号
-        String lineNumber = getLineNumber(node.getMethod(), depth, trace.getMethodCalls());
+        private final int depth;
 
-        sb.append(signatureWithParams);
-        // 行号
-        if (!lineNumber.isEmpty()) {
-            sb.append("#").append(lineNumber);
-        }
-        sb.append(" [");
-        if (node.getDuration() >= trace.getColorThreshold()) {
-            sb.append(ColorWrapper.red(String.valueOf(node.getDuration())));
-        } else {
-            sb.append(node.getDuration());
-        }
-        sb.append("ms]");
-        sb.append("\n");
-
-        // 检查是否达到最大深度，如果是，不再递归
-        if (depth >= trace.getMaxDepth()) {
-            return sb.toString();
-        }
-
-        // 递归处理子节点
-        List<MethodNode> children = node.getChildren();
-        for (int i = 0; i < children.size(); i++) {
-            boolean childIsLast = (i == children.size() - 1);
-            List<Boolean> newParentIsLastList = new ArrayList<>(parentIsLastList);
-            newParentIsLastList.add(childIsLast);
-            // 显示超过1次则不显示
-            String key = children.get(i).getSignature() + depth;
-            methodCount.putIfAbsent(key, 0);
-            Integer printCount = methodCount.get(key);
-            if (Objects.isNull(printCount) || printCount > 0) {
-                continue;
-            } else {
-                methodCount.put(key, printCount + 1);
-            }
-            sb.append(buildTreeString(children.get(i), depth + 1, trace, newParentIsLastList, methodCount));
-        }
+        private final String prefix;
 
-        return sb.toString();
+        private final boolean isLast;
+
+        private final boolean parentAsync;
+
+        TreeFrame(MethodNode node, int depth, String prefix, boolean isLast, boolean parentAsync) {
+            this.node = node;
+            this.depth = depth;
+            this.prefix = prefix;
+            this.isLast = isLast;
+            this.parentAsync = parentAsync;
+        }
     }
 
     /**
@@ -214,16 +238,28 @@ public class ArgusRequestContext {
      * @return 简化方法签名
      */
     private static String getSignatureWithParams(MethodNode node, boolean showFullClassName) {
+        return getSignatureWithParams(node.getSignature(), node.getMethod(), showFullClassName);
+    }
+
+    /**
+     * 获取带参数的简化方法签名（类名.方法名(参数类型)
+     *
+     * @param signature 签名
+     * @param method 方法，可为null
+     * @param showFullClassName 是否显示全类名
+     * @return 简化方法签名
+     */
+    public static String getSignatureWithParams(String signature, Method method, boolean showFullClassName) {
         String className = "";
         if (showFullClassName) {
-            className = getFullClassName(node.getSignature());
+            className = getFullClassName(signature);
         } else {
-            className = getSimpleClassName(node.getSignature());
+            className = getSimpleClassName(signature);
         }
-        String methodName = getMethodName(node.getSignature());
+        String methodName = getMethodName(signature);
 
         // 构建参数列表字符串
-        String paramsString = buildParamsString(node);
+        String paramsString = buildParamsString(signature, method);
 
 
         // 参数超过64时，前面参数保留完成
@@ -262,13 +298,14 @@ public class ArgusRequestContext {
     /**
      * 构建参数列表字符串
      *
-     * @param node 节点
+     * @param signature 签名
+     * @param method 方法
      * @return 参数列表字符串
      */
-    private static String buildParamsString(MethodNode node) {
-        if (node.getMethod() != null) {
+    private static String buildParamsString(String signature, Method method) {
+        if (method != null) {
             // 从Method对象获取参数类型
-            Class<?>[] paramTypes = node.getMethod().getParameterTypes();
+            Class<?>[] paramTypes = method.getParameterTypes();
             if (paramTypes.length > 0) {
                 List<String> paramTypeNames = new ArrayList<>();
                 for (Class<?> paramType : paramTypes) {
@@ -279,7 +316,6 @@ public class ArgusRequestContext {
         }
 
         // 尝试从签名中解析参数（如果签名包含参数信息）
-        String signature = node.getSignature();
         if (signature.contains("(") && signature.contains(")")) {
             int start = signature.indexOf('(') + 1;
             int end = signature.indexOf(')');
@@ -410,145 +446,232 @@ public class ArgusRequestContext {
         if (Objects.isNull(method)) {
             return;
         }
-        List<Method> traceStartMethods = ArgusCache.getTraceStartMethods();
-        if (Objects.isNull(traceStartMethods)) {
-            return;
+        TraceSession session = TRACE_SESSION.get();
+        if (session == null) {
+            session = openTraceSession(method);
+            if (session == null) {
+                return;
+            }
         }
+        session.enter(method);
+    }
+
+    /**
+     * 命中追踪开始方法时创建会话
+     *
+     * @param method 方法
+     * @return 会话，非开始方法、无请求或超过会话上限时返回null
+     */
+    private static TraceSession openTraceSession(Method method) {
         String requestId = REQUEST_ID.get();
         if (Objects.isNull(requestId) || requestId.isEmpty()) {
-            return;
+            return null;
         }
-        String methodSignature = CommonUtil.toSlash(method.getDeclaringClass().getName() + "#" + method.getName());
-        String parentSignature = getCurrentMethodSignature();
-
-        // 记录方法对象映射
-        if (!METHOD_SIGNATURE_TO_METHOD.containsKey(requestId) && traceStartMethods.contains(method)) {
-            METHOD_SIGNATURE_TO_METHOD.put(requestId, method);
-            METHOD_TO_SIGNATURE.put(method, methodSignature);
+        List<Method> traceStartMethods = ArgusCache.getTraceStartMethods();
+        if (Objects.isNull(traceStartMethods) || !traceStartMethods.contains(method)) {
+            return null;
         }
-
-        // 根节点不存在退出
-        if (Objects.isNull(METHOD_SIGNATURE_TO_METHOD.get(requestId))) {
-            return;
+        ArgusProperties argusProperties = ContextUtil.getBean(ArgusProperties.class);
+        int maxSessions = argusProperties == null ? 0 : argusProperties.getTraceMaxSessions();
+        int maxNodes = argusProperties == null ? 0 : argusProperties.getTraceMaxNodes();
+        TraceSession session = TraceSession.open(requestId, method, maxSessions, maxNodes, ArgusCache.getTraceMinTime(method));
+        if (session != null) {
+            TRACE_SESSION.set(session);
         }
+        return session;
+    }
 
-        // 更新调用计数器
-        int invocationIndex = INVOCATION_COUNTER.get()
-                .compute(methodSignature, (k, v) -> v == null ? 1 : v + 1);
-
-        MethodInvocation invocation = new MethodInvocation(
-                methodSignature,
-                parentSignature,
-                System.currentTimeMillis(),
-                method,
-                invocationIndex
-        );
-
-        CALL_STACK.get().push(invocation);
+    /**
+     * 记录方法结束
+     */
+    public static void endTraceMethod() {
+        TraceSession session = TRACE_SESSION.get();
+        if (session != null) {
+            session.exit();
+        }
+    }
 
-        REQUEST_METHODS.get()
-                .computeIfAbsent(methodSignature, k -> new ArrayList<>())
-                .add(invocation);
+    /**
+     * 包装异步任务，将当前追踪会话以分支形式带入工作线程
+     *
+     * @param task 任务
+     * @return 包装后的任务，当前线程未追踪时返回原任务
+     */
+    public static Runnable wrap(Runnable task) {
+        TraceSession branch = forkTraceSession(task);
+        if (branch == null) {
+            return task;
+        }
+        return () -> {
+            TraceSession previous = beginBranch(branch);
+            try {
+                task.run();
+            } finally {
+                endBranch(branch, previous);
+            }
+        };
+    }
 
-        // 创建树节点
-        MethodNode node = new MethodNode(
-                methodSignature,
-                0, // 耗时暂为0
-                System.currentTimeMillis(),
-                0, // 结束时间暂为0
-                method,
-                invocationIndex
-        );
+    /**
+     * 包装异步任务，将当前追踪会话以分支形式带入工作线程
+     *
+     * @param task 任务
+     * @param <T>  返回值类型
+     * @return 包装后的任务，当前线程未追踪时返回原任务
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        TraceSession branch = forkTraceSession(task);
+        if (branch == null) {
+            return task;
+        }
+        return () -> {
+            TraceSession previous = beginBranch(branch);
+            try {
+                return task.call();
+            } finally {
+                endBranch(branch, previous);
+            }
+        };
+    }
 
-        // 构建树结构
-        if (CALL_TREE_ROOT.get() == null && traceStartMethods.contains(method)) {
-            // 根节点
-            CALL_TREE_ROOT.set(node);
-        } else if (CURRENT_NODE.get() != null) {
-            CURRENT_NODE.get().addChild(node);
+    /**
+     * 从当前线程的追踪会话派生分支
+     *
+     * @param task 任务
+     * @return 分支会话，无需追踪时返回null
+     */
+    private static TraceSession forkTraceSession(Object task) {
+        if (task == null) {
+            return null;
         }
+        TraceSession session = TRACE_SESSION.get();
+        return session == null ? null : session.fork();
+    }
 
-        CURRENT_NODE.set(node);
+    /**
+     * 在工作线程上开始分支
+     *
+     * @param branch 分支会话
+     * @return 工作线程原有的会话
+     */
+    private static TraceSession beginBranch(TraceSession branch) {
+        TraceSession previous = TRACE_SESSION.get();
+        TRACE_SESSION.set(branch);
+        branch.beginBranch();
+        return previous;
     }
 
     /**
-     * 记录方法结束
+     * 结束分支并恢复工作线程原有的会话
+     *
+     * @param branch   分支会话
+     * @param previous 原有会话
      */
-    public static void endTraceMethod() {
-
-        Stack<MethodInvocation> stack = CALL_STACK.get();
-        if (!stack.isEmpty()) {
-            MethodInvocation invocation = stack.pop();
-            invocation.setEndTime(System.currentTimeMillis());
-
-            // 更新当前节点的耗时信息
-            if (CURRENT_NODE.get() != null) {
-                CURRENT_NODE.get().setEndTime(invocation.getEndTime());
-                CURRENT_NODE.get().setDuration(invocation.getDuration());
-
-                // 回退到父节点
-                CURRENT_NODE.set(CURRENT_NODE.get().getParent());
+    private static void endBranch(TraceSession branch, TraceSession previous) {
+        try {
+            branch.endBranch();
+            branch.release();
+        } finally {
+            if (previous == null) {
+                TRACE_SESSION.remove();
+            } else {
+                TRACE_SESSION.set(previous);
             }
         }
     }
 
     /**
-     * 生成方法签名
+     * 释放当前线程的追踪会话
+     */
+    private static void releaseTraceSession() {
+        TraceSession session = TRACE_SESSION.get();
+        if (session != null) {
+            session.release();
+            TRACE_SESSION.remove();
+        }
+    }
+
+    /**
+     * 清除请求记录
+     */
+    public static void clear() {
+        releaseTraceSession();
+        REQUEST_SQL.remove();
+        REQUEST_ID.remove();
+    }
+
+    /**
+     * 记录当前请求执行的 SQL，不在请求线程中时忽略
      *
-     * @return 签名
+     * @param sql     SQL 模板
+     * @param nanos   耗时（ns）
+     * @param daoInfo DAO 方法信息
      */
-    private static String getCurrentMethodSignature() {
-        Stack<MethodInvocation> stack = CALL_STACK.get();
-        return stack.isEmpty() ? null : stack.peek().getMethodSignature();
+    public static void recordSql(String sql, long nanos, DaoMethodDetector.MethodInfo daoInfo) {
+        RequestSqlSummary summary = requestSqlSummary();
+        if (summary != null) {
+            summary.record(sql, nanos, daoInfo);
+        }
     }
 
     /**
-     * 根据方法签名获取Method对象
+     * 记录当前请求获取数据库连接，不在请求线程中时忽略
      *
-     * @param methodSignature 方法签名
-     * @return 方法
+     * @param waitTime 等待耗时（ms）
      */
-    public static Method getMethodBySignature(String methodSignature) {
-        return METHOD_SIGNATURE_TO_METHOD.get(methodSignature);
+    public static void recordConnection(long waitTime) {
+        RequestSqlSummary summary = requestSqlSummary();
+        if (summary != null) {
+            summary.recordConnection(waitTime);
+        }
     }
 
     /**
-     * 根据Method对象获取方法签名
+     * 记录当前请求归还数据库连接，不在请求线程中时忽略
      *
-     * @param method 方法
-     * @return 方法签名
+     * @param holdTime 持有耗时（ms）
      */
-    public static String getSignatureByMethod(Method method) {
-        return METHOD_TO_SIGNATURE.get(method);
+    public static void recordConnectionHold(long holdTime) {
+        RequestSqlSummary summary = requestSqlSummary();
+        if (summary != null) {
+            summary.recordConnectionHold(holdTime);
+        }
     }
 
     /**
-     * 获取所有已记录的方法映射
+     * 当前线程是否在监听方法中（监听输出附带方法执行期间的 SQL 汇总）
      *
-     * @return 方法映射
+     * @return 结果
      */
-    public static Map<String, Method> getAllMethodMappings() {
-        return new HashMap<>(METHOD_SIGNATURE_TO_METHOD);
+    public static boolean inMonitoredMethod() {
+        return MONITORED_DEPTH.get()[0] > 0;
     }
 
     /**
-     * 清空方法映射（谨慎使用）
+     * 获取当前请求 SQL 汇总，不存在时创建
+     *
+     * @return 汇总，不在请求线程或不在监听方法中返回 null
      */
-    public static void clearMethodMappings() {
-        METHOD_SIGNATURE_TO_METHOD.clear();
-        METHOD_TO_SIGNATURE.clear();
+    private static RequestSqlSummary requestSqlSummary() {
+        if (REQUEST_ID.get() == null || !inMonitoredMethod()) {
+            return null;
+        }
+        RequestSqlSummary summary = REQUEST_SQL.get();
+        if (summary == null) {
+            summary = new RequestSqlSummary();
+            REQUEST_SQL.set(summary);
+        }
+        return summary;
     }
 
     /**
-     * 清除请求记录
+     * 获取当前请求 SQL 汇总快照
+     *
+     * @return 快照，未执行 SQL 返回 null
      */
-    public static void clear() {
-        REQUEST_METHODS.get().clear();
-        CALL_STACK.get().clear();
-        CALL_TREE_ROOT.set(null);
-        CURRENT_NODE.set(null);
-        INVOCATION_COUNTER.get().clear();
-        REQUEST_ID.remove();
+    public static RequestSqlSummary getSqlSummary() {
+        RequestSqlSummary summary = REQUEST_SQL.get();
+        return summary == null ? null : summary.snapshot();
     }
 
     /**
@@ -565,6 +688,8 @@ public class ArgusRequestContext {
         private Object[] params;
         private Object result;
         private Throwable throwable;
+        // 方法开始时的请求 SQL 汇总快照
+        private RequestSqlSummary sqlBaseline;
 
         public MethodInvocation () {
         }
@@ -609,8 +734,14 @@ public class ArgusRequestContext {
         private long endTime;
         private Method method;
         private int invocationIndex;
+        private boolean async;
+        private String threadName;
         private MethodNode parent;
         private List<MethodNode> children = new ArrayList<>();
+        // 连续相同调用合并后的次数，duration 为总耗时
+        private int count = 1;
+        private long maxDuration;
+        private long callStart;
 
         /**
          * 构造方法
@@ -630,6 +761,38 @@ public class ArgusRequestContext {
             this.endTime = endTime;
             this.method = method;
             this.invocationIndex = invocationIndex;
+            this.callStart = startTime;
+        }
+
+        /**
+         * 再次调用（与上一次调用合并为同一节点）
+         *
+         * @param now 开始时间
+         */
+        public void repeat(long now) {
+            count++;
+            callStart = now;
+        }
+
+        /**
+         * 结束本次调用，累加总耗时并更新最大耗时
+         *
+         * @param now 结束时间
+         */
+        public void finish(long now) {
+            long cost = now - callStart;
+            duration += cost;
+            maxDuration = Math.max(maxDuration, cost);
+            endTime = now;
+        }
+
+        /**
+         * 获取最后一个子节点
+         *
+         * @return 子节点，没有返回null
+         */
+        public MethodNode lastChild() {
+            return children.isEmpty() ? null : children.get(children.size() - 1);
         }
 
         /**
@@ -674,7 +837,7 @@ public class ArgusRequestContext {
          * @return 调用信息集合
          */
         public static Set<MethodCallInfo> convertTreeToCallInfos() {
-            MethodNode root = CALL_TREE_ROOT.get();
+            MethodNode root = getCallTree();
             if (root == null) {
                 return Collections.emptySet();
             }
@@ -723,6 +886,7 @@ public class ArgusRequestContext {
      * @param args 参数
      */
     public static void startMethod (Method method, Object[] args) {
+        MONITORED_DEPTH.get()[0]++;
         Map<String, MethodInvocation> methodInvocation = METHOD_CALL_INFO.get();
         if (methodInvocation == null) {
             methodInvocation = new HashMap<>();
@@ -730,6 +894,7 @@ public class ArgusRequestContext {
             invocation.setStartTime(System.currentTimeMillis());
             invocation.setMethod(method);
             invocation.setParams(args);
+            invocation.setSqlBaseline(getSqlSummary());
             methodInvocation.put(CommonUtil.generateSignature(method), invocation);
         }
         else {
@@ -737,6 +902,7 @@ public class ArgusRequestContext {
             invocation.setStartTime(System.currentTimeMillis());
             invocation.setMethod(method);
             invocation.setParams(args);
+            invocation.setSqlBaseline(getSqlSummary());
             methodInvocation.put(CommonUtil.generateSignature(method), invocation);
         }
         METHOD_CALL_INFO.set(methodInvocation);
@@ -750,6 +916,10 @@ public class ArgusRequestContext {
      */
     public static void endMethod (Method method, Object result, Throwable throwable) {
 
+        int[] depth = MONITORED_DEPTH.get();
+        if (depth[0] > 0) {
+            depth[0]--;
+        }
         Map<String, MethodInvocation> invocation = METHOD_CALL_INFO.get();
         if (invocation == null) {
             return;
@@ -762,6 +932,9 @@ public class ArgusRequestContext {
 
         MonitorOutput monitorOutput = new MonitorOutput();
         monitorOutput.setTime(methodInvocation.getEndTime() - methodInvocation.getStartTime());
+        // 只输出方法执行期间的 SQL，不包含请求中此前执行的 SQL
+        RequestSqlSummary summary = REQUEST_SQL.get();
+        monitorOutput.setSqlSummary(summary == null ? null : summary.since(methodInvocation.getSqlBaseline()));
         try {
             MethodParamFormatter formatter = ContextUtil.getBean(MethodParamFormatter.class);
             if (formatter != null) {
@@ -0,0 +1,64 @@
+package githubcew.arguslog.web;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 调用链执行器
+ * <div>
+ *   包装不支持 {@code TaskDecorator} 的执行器，提交任务时通过 {@link ArgusRequestContext#wrap(Runnable)}
+ *   在提交线程上派生追踪分支，当前线程未追踪时直接提交原任务。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceExecutor implements Executor {
+
+    /**
+     * 原执行器
+     */
+    protected final Executor delegate;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate 原执行器
+     */
+    public TraceExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 按执行器实现的接口包装，{@link ScheduledExecutorService}、{@link ExecutorService} 包装后保留原接口
+     *
+     * @param executor 执行器
+     * @return 包装后的执行器，已包装时返回原执行器
+     */
+    public static Executor wrap(Executor executor) {
+        if (executor == null || executor instanceof TraceExecutor) {
+            return executor;
+        }
+        if (executor instanceof ScheduledExecutorService) {
+            return new TraceScheduledExecutorService((ScheduledExecutorService) executor);
+        }
+        if (executor instanceof ExecutorService) {
+            return new TraceExecutorService((ExecutorService) executor);
+        }
+        return new TraceExecutor(executor);
+    }
+
+    /**
+     * 获取原执行器
+     *
+     * @return 原执行器
+     */
+    public Executor getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(ArgusRequestContext.wrap(command));
+    }
+}
@@ -0,0 +1,115 @@
+package githubcew.arguslog.web;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 调用链线程池
+ * <div>
+ *   包装 {@link ExecutorService}，{@code execute}、{@code submit}、{@code invokeAll}、{@code invokeAny}
+ *   提交的任务保留调用链，其余方法直接调用原线程池。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceExecutorService extends TraceExecutor implements ExecutorService {
+
+    /**
+     * 原线程池
+     */
+    private final ExecutorService executorService;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate 原线程池
+     */
+    public TraceExecutorService(ExecutorService delegate) {
+        super(delegate);
+        this.executorService = delegate;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return executorService.submit(ArgusRequestContext.wrap(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return executorService.submit(ArgusRequestContext.wrap(task), result);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return executorService.submit(ArgusRequestContext.wrap(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return executorService.invokeAll(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return executorService.invokeAll(wrapAll(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return executorService.invokeAny(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return executorService.invokeAny(wrapAll(tasks), timeout, unit);
+    }
+
+    @Override
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executorService.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executorService.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executorService.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executorService.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 包装批量任务
+     *
+     * @param tasks 任务
+     * @param <T>   返回值类型
+     * @return 包装后的任务
+     */
+    private static <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+        List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(ArgusRequestContext.wrap(task));
+        }
+        return wrapped;
+    }
+}
@@ -0,0 +1,53 @@
+package githubcew.arguslog.web;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用链定时线程池
+ * <div>
+ *   包装 {@link ScheduledExecutorService}，一次性延迟任务保留调用链；
+ *   周期任务会多次执行，不属于提交时的请求，直接提交原任务。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceScheduledExecutorService extends TraceExecutorService implements ScheduledExecutorService {
+
+    /**
+     * 原定时线程池
+     */
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate 原定时线程池
+     */
+    public TraceScheduledExecutorService(ScheduledExecutorService delegate) {
+        super(delegate);
+        this.scheduledExecutorService = delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return scheduledExecutorService.schedule(ArgusRequestContext.wrap(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return scheduledExecutorService.schedule(ArgusRequestContext.wrap(callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return scheduledExecutorService.scheduleAtFixedRate(command, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduledExecutorService.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+}
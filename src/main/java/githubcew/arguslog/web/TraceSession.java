@@ -0,0 +1,555 @@
+package githubcew.arguslog.web;
+
+import githubcew.arguslog.common.util.CommonUtil;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调用链追踪会话
+ * <div>
+ *   一个会话对应一次被追踪的 web 请求，持有该请求的调用树根节点、调用深度、调用计数器和开始方法。
+ *   会话在命中追踪开始方法时创建，由 {@link githubcew.arguslog.web.filter.ArgusTraceRequestFilter}
+ *   在请求结束时统一释放，不再依赖全局静态映射。
+ * </div>
+ * <div>
+ *   全局并发会话数受上限控制，超过上限的请求不再记录调用链，并计入拒绝数。
+ * </div>
+ * <div>
+ *   记录时限制调用树大小：连续相同的子调用合并为一个节点（次数、总耗时、最大耗时），
+ *   单次请求节点数超过上限后不再创建新节点，耗时低于最小记录耗时的子树在方法退出时丢弃，
+ *   被丢弃节点的耗时仍包含在父节点的耗时中。
+ * </div>
+ * <div>
+ *   异步任务通过 {@link #fork()} 派生分支会话，分支在工作线程中独立计时，完成后登记到主会话，
+ *   由主会话在请求结束时挂到派生点节点下，调用树只在请求线程上修改。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceSession {
+
+    /**
+     * 当前活跃会话数
+     */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /**
+     * 活跃会话峰值
+     */
+    private static final AtomicInteger PEAK = new AtomicInteger();
+
+    /**
+     * 累计创建会话数
+     */
+    private static final AtomicLong OPENED = new AtomicLong();
+
+    /**
+     * 因超过上限被拒绝的会话数
+     */
+    private static final AtomicLong REJECTED = new AtomicLong();
+
+    /**
+     * 方法签名缓存
+     */
+    private static final Map<Method, String> SIGNATURES = new ConcurrentHashMap<>(256);
+
+    /**
+     * 方法签名缓存上限
+     */
+    private static final int MAX_SIGNATURES = 4096;
+
+    /**
+     * 累计丢弃（超过节点上限）的调用数
+     */
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    /**
+     * 累计裁剪（低于最小记录耗时）的节点数
+     */
+    private static final AtomicLong PRUNED = new AtomicLong();
+
+    /**
+     * 请求id
+     */
+    private final String requestId;
+
+    /**
+     * 开始方法
+     */
+    private final Method startMethod;
+
+    /**
+     * 最大节点数，小于1表示不限制
+     */
+    private final int maxNodes;
+
+    /**
+     * 最小记录耗时（ms）
+     */
+    private final long minTime;
+
+    /**
+     * 当前请求的节点数（主会话和分支共享）
+     */
+    private final AtomicInteger nodeCount;
+
+    /**
+     * 调用计数器（用于区分相同方法的多次调用）
+     */
+    private final Map<String, Integer> invocationCounter = new HashMap<>();
+
+    /**
+     * 是否已释放
+     */
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    /**
+     * 所属主会话，主会话自身为null
+     */
+    private final TraceSession owner;
+
+    /**
+     * 派生当前分支的会话
+     */
+    private final TraceSession forkFrom;
+
+    /**
+     * 派生点节点，分支完成后挂到该节点下
+     */
+    private final ArgusRequestContext.MethodNode forkNode;
+
+    /**
+     * 已完成、待合并的异步分支（仅主会话使用）
+     */
+    private final Queue<TraceSession> completedBranches;
+
+    /**
+     * 分支是否已完成
+     */
+    private volatile boolean completed;
+
+    /**
+     * 调用深度
+     */
+    private int depth;
+
+    /**
+     * 超过节点上限后未记录的调用深度
+     */
+    private int suppressedDepth;
+
+    /**
+     * 调用树根节点
+     */
+    private ArgusRequestContext.MethodNode root;
+
+    /**
+     * 当前节点指针（用于构建树）
+     */
+    private ArgusRequestContext.MethodNode currentNode;
+
+    /**
+     * 构造方法
+     *
+     * @param requestId   请求id
+     * @param startMethod 开始方法
+     * @param maxNodes    最大节点数
+     * @param minTime     最小记录耗时（ms）
+     */
+    private TraceSession(String requestId, Method startMethod, int maxNodes, long minTime) {
+        this.requestId = requestId;
+        this.startMethod = startMethod;
+        this.maxNodes = maxNodes;
+        this.minTime = minTime;
+        this.nodeCount = new AtomicInteger();
+        this.owner = null;
+        this.forkFrom = null;
+        this.forkNode = null;
+        this.completedBranches = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * 分支构造方法
+     *
+     * @param forkFrom 派生会话
+     * @param forkNode 派生点节点
+     */
+    private TraceSession(TraceSession forkFrom, ArgusRequestContext.MethodNode forkNode) {
+        this.requestId = forkFrom.requestId;
+        this.startMethod = forkFrom.startMethod;
+        this.maxNodes = forkFrom.maxNodes;
+        this.minTime = forkFrom.minTime;
+        this.nodeCount = forkFrom.nodeCount;
+        this.owner = forkFrom.owner == null ? forkFrom : forkFrom.owner;
+        this.forkFrom = forkFrom;
+        this.forkNode = forkNode;
+        this.completedBranches = null;
+    }
+
+    /**
+     * 创建会话
+     *
+     * @param requestId   请求id
+     * @param startMethod 开始方法
+     * @param maxSessions 最大并发会话数，小于1表示不限制
+     * @param maxNodes    单次请求最大节点数，小于1表示不限制
+     * @param minTime     最小记录耗时（ms），0表示全部记录
+     * @return 会话，超过上限返回null
+     */
+    public static TraceSession open(String requestId, Method startMethod, int maxSessions, int maxNodes, long minTime) {
+        int active = ACTIVE.incrementAndGet();
+        if (maxSessions > 0 && active > maxSessions) {
+            ACTIVE.decrementAndGet();
+            REJECTED.incrementAndGet();
+            return null;
+        }
+        PEAK.accumulateAndGet(active, Math::max);
+        OPENED.incrementAndGet();
+        return new TraceSession(requestId, startMethod, maxNodes, minTime);
+    }
+
+    /**
+     * 进入方法
+     *
+     * @param method 方法
+     */
+    public void enter(Method method) {
+        depth++;
+        if (suppressedDepth > 0) {
+            suppressedDepth++;
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        // 与上一个兄弟节点是同一方法，合并为一个节点
+        ArgusRequestContext.MethodNode last = currentNode != null ? currentNode.lastChild() : null;
+        if (last != null && !last.isAsync() && method.equals(last.getMethod())) {
+            last.repeat(now);
+            currentNode = last;
+            return;
+        }
+
+        // 超过节点上限，不再创建节点，耗时计入父节点
+        if (root != null && maxNodes > 0 && nodeCount.get() >= maxNodes) {
+            suppressedDepth = 1;
+            DROPPED.incrementAndGet();
+            return;
+        }
+
+        String methodSignature = signatureOf(method);
+        // 更新调用计数器
+        int invocationIndex = invocationCounter.merge(methodSignature, 1, Integer::sum);
+
+        // 创建树节点
+        ArgusRequestContext.MethodNode node = new ArgusRequestContext.MethodNode(
+                methodSignature,
+                0, // 耗时暂为0
+                now,
+                0, // 结束时间暂为0
+                method,
+                invocationIndex
+        );
+        nodeCount.incrementAndGet();
+
+        // 构建树结构
+        if (root == null) {
+            root = node;
+        } else if (currentNode != null) {
+            // 上一个兄弟调用不会再被合并，此时按总耗时丢弃
+            if (last != null && prune(last)) {
+                currentNode.getChildren().remove(currentNode.getChildren().size() - 1);
+            }
+            currentNode.addChild(node);
+        }
+        currentNode = node;
+    }
+
+    /**
+     * 退出方法
+     */
+    public void exit() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        if (suppressedDepth > 0) {
+            suppressedDepth--;
+            return;
+        }
+        if (currentNode == null) {
+            return;
+        }
+
+        // 更新当前节点的耗时信息，并回退到父节点
+        ArgusRequestContext.MethodNode node = currentNode;
+        node.finish(System.currentTimeMillis());
+        ArgusRequestContext.MethodNode parent = node.getParent();
+        currentNode = parent;
+
+        // 整棵树结束后，按合并后的总耗时丢弃剩余低于最小记录耗时的子树
+        if (parent == null) {
+            pruneTree(node);
+        }
+    }
+
+    /**
+     * 合并后总耗时低于最小记录耗时的子树是否丢弃，丢弃时计入统计。
+     * 只在子节点不会再被合并时调用（出现不同的兄弟调用或整棵树结束），
+     * 以免循环中单次耗时很短的调用在合并前被逐个丢弃
+     *
+     * @param child 子节点
+     * @return 是否丢弃
+     */
+    private boolean prune(ArgusRequestContext.MethodNode child) {
+        if (minTime <= 0 || child.isAsync() || child.getDuration() >= minTime) {
+            return false;
+        }
+        int size = countNodes(child);
+        nodeCount.addAndGet(-size);
+        PRUNED.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * 丢弃整棵树中合并后总耗时低于最小记录耗时的子树
+     *
+     * @param node 根节点
+     */
+    private void pruneTree(ArgusRequestContext.MethodNode node) {
+        if (minTime <= 0) {
+            return;
+        }
+        Deque<ArgusRequestContext.MethodNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            ArgusRequestContext.MethodNode current = stack.pop();
+            for (Iterator<ArgusRequestContext.MethodNode> it = current.getChildren().iterator(); it.hasNext(); ) {
+                ArgusRequestContext.MethodNode child = it.next();
+                if (prune(child)) {
+                    it.remove();
+                } else {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取方法签名
+     *
+     * @param method 方法
+     * @return 签名
+     */
+    private static String signatureOf(Method method) {
+        String signature = SIGNATURES.get(method);
+        if (signature == null) {
+            if (SIGNATURES.size() >= MAX_SIGNATURES) {
+                SIGNATURES.clear();
+            }
+            signature = CommonUtil.toSlash(method.getDeclaringClass().getName() + "#" + method.getName());
+            SIGNATURES.put(method, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * 统计子树节点数
+     *
+     * @param node 子树根节点
+     * @return 节点数
+     */
+    private static int countNodes(ArgusRequestContext.MethodNode node) {
+        int count = 0;
+        Deque<ArgusRequestContext.MethodNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            ArgusRequestContext.MethodNode current = stack.pop();
+            count++;
+            for (ArgusRequestContext.MethodNode child : current.getChildren()) {
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 在提交异步任务的线程上派生分支会话
+     *
+     * @return 分支会话，当前不在方法调用中时返回null
+     */
+    public TraceSession fork() {
+        ArgusRequestContext.MethodNode node = currentNode != null ? currentNode : root;
+        if (node == null || released.get()) {
+            return null;
+        }
+        return new TraceSession(this, node);
+    }
+
+    /**
+     * 在工作线程上开始分支，创建异步节点作为分支根节点
+     */
+    public void beginBranch() {
+        Thread thread = Thread.currentThread();
+        ArgusRequestContext.MethodNode node = new ArgusRequestContext.MethodNode(
+                "async#" + thread.getName(),
+                0,
+                System.currentTimeMillis(),
+                0,
+                null,
+                0
+        );
+        node.setAsync(true);
+        node.setThreadName(thread.getName());
+        root = node;
+        currentNode = node;
+    }
+
+    /**
+     * 结束分支，登记到主会话等待合并
+     */
+    public void endBranch() {
+        long now = System.currentTimeMillis();
+        root.setEndTime(now);
+        root.setDuration(now - root.getStartTime());
+        pruneTree(root);
+        depth = 0;
+        suppressedDepth = 0;
+        invocationCounter.clear();
+        currentNode = null;
+        completed = true;
+        if (!owner.released.get()) {
+            owner.completedBranches.offer(this);
+        }
+    }
+
+    /**
+     * 将已完成的异步分支挂到调用树上，需在请求线程上调用
+     */
+    public void mergeBranches() {
+        if (completedBranches == null) {
+            return;
+        }
+        boolean merged = true;
+        // 嵌套分支依赖其派生分支先完成，循环直到没有可合并的分支
+        while (merged) {
+            merged = false;
+            for (Iterator<TraceSession> it = completedBranches.iterator(); it.hasNext(); ) {
+                TraceSession branch = it.next();
+                if (branch.forkFrom == this || branch.forkFrom.completed) {
+                    it.remove();
+                    branch.forkNode.addChild(branch.root);
+                    merged = true;
+                }
+            }
+        }
+        completedBranches.clear();
+    }
+
+    /**
+     * 是否为异步分支
+     *
+     * @return 是否分支
+     */
+    public boolean isBranch() {
+        return owner != null;
+    }
+
+    /**
+     * 释放会话，重复调用无副作用
+     */
+    public void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        if (owner != null) {
+            return;
+        }
+        ACTIVE.decrementAndGet();
+        completedBranches.clear();
+        depth = 0;
+        suppressedDepth = 0;
+        invocationCounter.clear();
+        currentNode = null;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public Method getStartMethod() {
+        return startMethod;
+    }
+
+    public ArgusRequestContext.MethodNode getRoot() {
+        return root;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    /**
+     * 获取当前活跃会话数
+     *
+     * @return 活跃会话数
+     */
+    public static int activeCount() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * 获取活跃会话峰值
+     *
+     * @return 峰值
+     */
+    public static int peakCount() {
+        return PEAK.get();
+    }
+
+    /**
+     * 获取累计创建会话数
+     *
+     * @return 累计数
+     */
+    public static long openedCount() {
+        return OPENED.get();
+    }
+
+    /**
+     * 获取被拒绝的会话数
+     *
+     * @return 拒绝数
+     */
+    public static long rejectedCount() {
+        return REJECTED.get();
+    }
+
+    /**
+     * 获取因超过节点上限未记录的调用数
+     *
+     * @return 丢弃数
+     */
+    public static long droppedCount() {
+        return DROPPED.get();
+    }
+
+    /**
+     * 获取因低于最小记录耗时被裁剪的节点数
+     *
+     * @return 裁剪数
+     */
+    public static long prunedCount() {
+        return PRUNED.get();
+    }
+}
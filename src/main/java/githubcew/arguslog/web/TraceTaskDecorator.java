@@ -0,0 +1,53 @@
+package githubcew.arguslog.web;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 调用链任务装饰器
+ * <div>
+ *   在提交任务的线程上派生追踪分支，使 {@code @Async}、{@code CompletableFuture}、
+ *   {@code TaskExecutor} 中执行的子调用挂到原请求的调用树上。
+ *   可与业务已有的 {@link TaskDecorator} 组合，业务装饰器先执行。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class TraceTaskDecorator implements TaskDecorator {
+
+    /**
+     * 业务原有装饰器
+     */
+    private final TaskDecorator delegate;
+
+    public TraceTaskDecorator() {
+        this(null);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param delegate 业务原有装饰器
+     */
+    public TraceTaskDecorator(TaskDecorator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        Runnable task = delegate == null ? runnable : delegate.decorate(runnable);
+        return ArgusRequestContext.wrap(task);
+    }
+
+    /**
+     * 包装执行器，适用于无法设置装饰器的自定义线程池，{@code ExecutorService} 包装后保留原接口
+     *
+     * @param executor 执行器
+     * @return 包装后的执行器
+     * @see TraceExecutor#wrap(Executor)
+     */
+    public static Executor wrap(Executor executor) {
+        return TraceExecutor.wrap(executor);
+    }
+}
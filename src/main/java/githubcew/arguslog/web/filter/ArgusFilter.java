@@ -9,6 +9,7 @@ import githubcew.arguslog.web.ArgusRequest;
 import githubcew.arguslog.web.ArgusResponse;
 import githubcew.arguslog.web.auth.ArgusAccountAuthenticator;
 import githubcew.arguslog.web.auth.Token;
+import githubcew.arguslog.web.servlet.FlameGraphHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
@@ -57,6 +58,8 @@ public class ArgusFilter implements Filter {
                     handleLogin(httpRequest, httpResponse);
                 } else if (uri.endsWith("/getPublicKey")) {
                     getPublicKey(httpRequest, httpResponse);
+                } else if (uri.endsWith("/flame")) {
+                    FlameGraphHandler.handle(httpRequest, httpResponse);
                 }
                 else {
                     httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -152,6 +155,7 @@ public class ArgusFilter implements Filter {
             Token token = argusResponse.getToken();
             response.addHeader("argus-token", token.getToken());
             response.addHeader("argus-token-expire-time", String.valueOf(token.getExpireTime()));
+            FlameGraphHandler.addTokenCookie(request, response, token);
             response.setStatus(HttpServletResponse.SC_OK);
         } else {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
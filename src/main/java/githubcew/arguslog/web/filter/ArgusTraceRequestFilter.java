@@ -10,10 +10,16 @@ import githubcew.arguslog.monitor.ArgusMethod;
 import githubcew.arguslog.monitor.MonitorInfo;
 import githubcew.arguslog.monitor.MonitorSender;
 import githubcew.arguslog.monitor.outer.OutputWrapper;
+import githubcew.arguslog.monitor.profile.ProfileManager;
+import githubcew.arguslog.monitor.trace.aggregate.TraceAggregateManager;
+import githubcew.arguslog.monitor.trace.flame.FlameGraphStore;
+import githubcew.arguslog.monitor.trace.retain.TraceRetentionManager;
 import githubcew.arguslog.web.ArgusRequestContext;
+import githubcew.arguslog.web.TraceSession;
 import githubcew.arguslog.web.socket.ArgusSocketHandler;
 
 import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -40,20 +46,29 @@ public class ArgusTraceRequestFilter implements Filter {
 
         String requestId = UUID.randomUUID().toString();
         ArgusRequestContext.startRequest(requestId);
+        // 采样分析登记请求线程
+        if (ProfileManager.isActive() && request instanceof HttpServletRequest) {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            ProfileManager.requestStarted(httpRequest.getRequestURI().substring(httpRequest.getContextPath().length()));
+        }
 
         try {
             chain.doFilter(request, response);
         } finally {
 
             try {
-                ArgusRequestContext.MethodNode methodNode = ArgusRequestContext.getMethodNode();
-                Method startMethod = ArgusRequestContext.getStartMethod(requestId);
-                submitTraceTask(methodNode, startMethod);
+                TraceSession session = ArgusRequestContext.getTraceSession();
+                if (!Objects.isNull(session)) {
+                    // 合并已完成的异步分支
+                    session.mergeBranches();
+                    submitTraceTask(session.getRoot(), session.getStartMethod());
+                }
             } catch (Exception e) {
                 // 忽略
             }
-            // 清理上下文
+            // 清理上下文，释放会话
             ArgusRequestContext.clear();
+            ProfileManager.requestEnded();
         }
     }
 
@@ -71,8 +86,17 @@ public class ArgusTraceRequestFilter implements Filter {
             return;
         }
 
+        List<String> userTokens = ArgusCache.getTraceUsersByMethod(new ArgusMethod(method));
+        // 所有用户都不需要该请求时在请求线程直接丢弃，不提交任务
+        if (!isTreeNeeded(userTokens, method, rootNode)) {
+            return;
+        }
+
         monitorSender.submit(() -> {
-            List<String> userTokens = ArgusCache.getTraceUsersByMethod(new ArgusMethod(method));
+            String uri = ArgusCache.getMethodUri(new ArgusMethod(method));
+            boolean output = false;
+            // 相同输出配置的用户共用渲染结果, key: (阈值, 深度, 全类名, 行号索引)
+            Map<List<Object>, String> rendered = new HashMap<>(4);
             for (String token : userTokens) {
                 ArgusUser user = ArgusCache.getUserToken(token);
                 if (Objects.isNull(user) || !user.getSession().isOpen()) {
@@ -84,20 +108,74 @@ public class ArgusTraceRequestFilter implements Filter {
                     continue;
                 }
 
-                String uri = ArgusCache.getMethodUri(new ArgusMethod(method));
-                String tree = ArgusRequestContext.buildTreeString(rootNode, 0, monitorInfo.getTrace(), new ArrayList<>(), new HashMap<>());
+                // 渐进式追踪，展开耗时超过阈值的方法
+                if (!Objects.isNull(monitorInfo.getTrace().getProgressive())) {
+                    monitorInfo.getTrace().getProgressive().observe(rootNode);
+                }
+
+                // 聚合模式，窗口结束时统一输出
+                if (monitorInfo.getTrace().getAggregateWindow() > 0) {
+                    TraceAggregateManager.aggregate(token, method, monitorInfo.getTrace(), rootNode);
+                    continue;
+                }
+
+                MonitorInfo.Trace trace = monitorInfo.getTrace();
+                boolean slow = trace.getSlowThreshold() > 0 && rootNode.getDuration() >= trace.getSlowThreshold();
+                // 尾部保留，窗口结束时输出耗时前 K 的请求
+                if (trace.getTop() > 0) {
+                    TraceRetentionManager.retain(token, method, trace, rootNode, slow);
+                }
+                // 只输出慢请求，其余请求不渲染
+                if (trace.isTailBased() && !slow) {
+                    continue;
+                }
+
+                List<Object> renderKey = Arrays.asList(trace.getColorThreshold(), trace.getMaxDepth(),
+                        trace.isShowFullClassName(), trace.getLineIndex() == null ? new Object() : trace.getLineIndex());
+                String tree = rendered.computeIfAbsent(renderKey, k -> ArgusRequestContext.buildTreeString(rootNode, trace));
                 String methodSignature = CommonUtil.generateSignature(method);
 
-                String output = "Argus TRACE: \n"
+                String message = (slow ? "Argus TRACE (slow >= " + trace.getSlowThreshold() + "ms): \n" : "Argus TRACE: \n")
                         +"uri => " + OutputWrapper.wrapperCopy(uri)
                         + "\nmethod => " + methodSignature
                         + "\ntracing => "
                         + "\n" + tree;
                 argusSocketHandler.send(
                         user.getSession(),
-                        OutputWrapper.formatOutput(ExecuteResult.success(output))
+                        OutputWrapper.formatOutput(ExecuteResult.success(message))
                 );
+                output = true;
+            }
+            // 只保存已输出的请求调用树，供导出火焰图
+            if (output) {
+                FlameGraphStore.putTree(uri, rootNode);
             }
         });
     }
+
+    /**
+     * 是否有用户需要该请求的调用树
+     * <div>
+     *   渐进式、聚合、窗口前 K 的用户需要每个请求；只输出慢请求的用户只需要耗时不低于阈值的请求。
+     * </div>
+     *
+     * @param userTokens 追踪该方法的用户
+     * @param method     开始方法
+     * @param rootNode   根节点
+     * @return 结果
+     */
+    private boolean isTreeNeeded(List<String> userTokens, Method method, ArgusRequestContext.MethodNode rootNode) {
+        for (String token : userTokens) {
+            MonitorInfo monitorInfo = ArgusCache.getTraceMonitorByUser(token, method);
+            if (Objects.isNull(monitorInfo) || Objects.isNull(monitorInfo.getTrace())) {
+                continue;
+            }
+            MonitorInfo.Trace trace = monitorInfo.getTrace();
+            if (!Objects.isNull(trace.getProgressive()) || trace.getAggregateWindow() > 0 || trace.getTop() > 0
+                    || trace.getSlowThreshold() <= 0 || rootNode.getDuration() >= trace.getSlowThreshold()) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
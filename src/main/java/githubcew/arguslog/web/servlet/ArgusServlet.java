@@ -61,6 +61,10 @@ public class ArgusServlet extends HttpServlet {
             }
             response.setStatus(HttpServletResponse.SC_OK);
         }
+        // 火焰图
+        else if (request.getRequestURI().endsWith("/argus/flame")) {
+            FlameGraphHandler.handle(request, response);
+        }
     }
 
     /**
@@ -94,6 +98,7 @@ public class ArgusServlet extends HttpServlet {
                 Token token = argusResponse.getToken();
                 response.addHeader("argus-token", token.getToken());
                 response.addHeader("argus-token-expire-time", String.valueOf(token.getExpireTime()));
+                FlameGraphHandler.addTokenCookie(request, response, token);
                 response.setStatus(HttpServletResponse.SC_OK);
             } else {
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
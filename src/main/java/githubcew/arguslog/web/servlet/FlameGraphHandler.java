@@ -0,0 +1,131 @@
+package githubcew.arguslog.web.servlet;
+
+import githubcew.arguslog.core.cache.ArgusCache;
+import githubcew.arguslog.monitor.trace.aggregate.TraceAggregator;
+import githubcew.arguslog.monitor.trace.flame.FlameGraph;
+import githubcew.arguslog.monitor.trace.flame.FlameGraphStore;
+import githubcew.arguslog.web.ArgusRequestContext;
+import githubcew.arguslog.web.auth.Token;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * 火焰图导出
+ * <div>
+ *   处理 {@code /argus/flame?uri=...}，参数：
+ *   <ul>
+ *     <li>uri：接口路径，必填</li>
+ *     <li>type：single（最近一次请求，默认）、aggregate（最近一个聚合窗口）、profile（最近一次采样分析）</li>
+ *     <li>format：html（默认）、svg、collapsed</li>
+ *     <li>full：true 显示全类名</li>
+ *   </ul>
+ *   需携带未过期的 token：请求头 argus-token，或登录时写入的 argus-token Cookie（HttpOnly，只发送到 /argus/flame）。
+ *   不接受 URL 参数中的 token，避免 token 出现在访问日志和浏览器历史中。
+ * </div>
+ *
+ * @author chenenwei
+ */
+public class FlameGraphHandler {
+
+    /**
+     * token 请求头和 Cookie 名称
+     */
+    private static final String TOKEN_NAME = "argus-token";
+
+    /**
+     * 登录成功后写入 token Cookie，浏览器直接打开火焰图时携带
+     *
+     * @param request  请求
+     * @param response 响应
+     * @param token    token
+     */
+    public static void addTokenCookie(HttpServletRequest request, HttpServletResponse response, Token token) {
+        long maxAge = Math.max(0, (token.getExpireTime() - System.currentTimeMillis()) / 1000);
+        response.addHeader("Set-Cookie", TOKEN_NAME + "=" + token.getToken()
+                + "; Path=" + request.getContextPath() + "/argus/flame"
+                + "; Max-Age=" + maxAge
+                + "; HttpOnly; SameSite=Strict"
+                + (request.isSecure() ? "; Secure" : ""));
+    }
+
+    /**
+     * 处理请求
+     *
+     * @param request  请求
+     * @param response 响应
+     * @throws IOException 异常
+     */
+    public static void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!ArgusCache.hasValidToken(tokenOf(request))) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        String uri = request.getParameter("uri");
+        if (Objects.isNull(uri) || uri.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "uri is required");
+            return;
+        }
+        String type = request.getParameter("type");
+        boolean aggregate = "aggregate".equals(type);
+        boolean profile = "profile".equals(type);
+        boolean showFullClassName = Boolean.parseBoolean(request.getParameter("full"));
+
+        FlameGraph flameGraph;
+        if (profile) {
+            flameGraph = FlameGraphStore.getProfile(uri);
+        } else if (aggregate) {
+            TraceAggregator.Snapshot snapshot = FlameGraphStore.getAggregate(uri);
+            flameGraph = snapshot == null ? null : snapshot.toFlameGraph(showFullClassName);
+        } else {
+            ArgusRequestContext.MethodNode tree = FlameGraphStore.getTree(uri);
+            flameGraph = tree == null ? null : FlameGraph.fromTree(tree, showFullClassName);
+        }
+        if (flameGraph == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "no trace data for " + uri);
+            return;
+        }
+
+        String format = request.getParameter("format");
+        String title = (profile ? "profile " : aggregate ? "aggregate " : "") + uri;
+        response.setCharacterEncoding("UTF-8");
+        if ("collapsed".equals(format)) {
+            response.setContentType("text/plain;charset=UTF-8");
+            flameGraph.writeCollapsed(response.getWriter());
+        } else if ("svg".equals(format)) {
+            response.setContentType("image/svg+xml;charset=UTF-8");
+            flameGraph.writeSvg(response.getWriter(), title);
+        } else {
+            response.setContentType("text/html;charset=UTF-8");
+            Writer writer = response.getWriter();
+            flameGraph.writeHtml(writer, title);
+        }
+    }
+
+    /**
+     * 获取 token，请求头优先，其次 Cookie
+     *
+     * @param request 请求
+     * @return token，没有返回 null
+     */
+    private static String tokenOf(HttpServletRequest request) {
+        String token = request.getHeader(TOKEN_NAME);
+        if (!Objects.isNull(token) && !token.isEmpty()) {
+            return token;
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (TOKEN_NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}